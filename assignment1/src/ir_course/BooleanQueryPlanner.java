@@ -0,0 +1,315 @@
+/*
+ * Query planner for the structured RSS feed search
+ * Created on 2026-10-19
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+
+/**
+ * Compiles the structured input of LuceneSearchApp.search() (terms that must
+ * / must not be in the title and description plus a publication date range)
+ * into a BooleanQuery. The document frequencies of the terms are looked up in
+ * the index so that
+ * <ul>
+ * <li>a required term which is not in the index short circuits the search
+ * (the query can't match anything),</li>
+ * <li>prohibited terms which are not in the index are dropped,</li>
+ * <li>required terms are added rarest first.</li>
+ * </ul>
+ * An entry with several words ("north korea") is a phrase, "north korea~2" a
+ * sloppy phrase, estimated by the document frequency of its rarest word. The
+ * phrases need the positions of their field. With setProximity() the
+ * adjacent words of inTitle (and of inDescription) also add optional span
+ * near clauses, the documents where they are close to each other rank first.
+ * Compiled plans are immutable and are kept in a LRU cache keyed by the
+ * structured input, so a repeated query is only planned once. A planner is
+ * bound to one IndexReader, create a new one when the reader changes.
+ */
+public class BooleanQueryPlanner {
+
+  // Number of compiled plans kept in the cache
+  public static final int DEFAULT_CACHE_SIZE = 1024;
+  // The slop of a sloppy phrase, "north korea~2"
+  private static final Pattern SLOP = Pattern.compile("(.*)~(\\d+)");
+
+  private final IndexReader reader;
+  private final Map<List<Object>, CompiledQuery> plans;
+  // Fields of the reader indexed with positions
+  private final Set<String> positionFields = new HashSet<String>();
+  private int proximitySlop = 0;
+  private float proximityBoost = 0f;
+  // Incremented by setProximity(), the plans of an older generation aren't
+  // cached
+  private long generation = 0;
+
+  /**
+   * A compiled query, either a Query ready to be searched or a plan which is
+   * known to match no documents.
+   */
+  public static class CompiledQuery {
+    private static final CompiledQuery NO_MATCH = new CompiledQuery(null);
+
+    private final Query query;
+
+    private CompiledQuery(Query query) {
+      this.query = query;
+    }
+
+    /**
+     * @return true if the query can't match any document in the index.
+     */
+    public boolean matchesNothing() {
+      return query == null;
+    }
+
+    /**
+     * @return The query to search, null if matchesNothing().
+     */
+    public Query getQuery() {
+      return query;
+    }
+
+    public String toString() {
+      return matchesNothing() ? "[no match]" : query.toString();
+    }
+  }
+
+  public BooleanQueryPlanner(IndexReader reader) {
+    this(reader, DEFAULT_CACHE_SIZE);
+  }
+
+  public BooleanQueryPlanner(IndexReader reader, final int cacheSize) {
+    this.reader = reader;
+    this.plans = new LinkedHashMap<List<Object>, CompiledQuery>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<Object>, CompiledQuery> eldest) {
+        return size() > cacheSize;
+      }
+    };
+    for (FieldInfo field : MultiFields.getMergedFieldInfos(reader)) {
+      if (field.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0) {
+        positionFields.add(field.name);
+      }
+    }
+  }
+
+  /**
+   * Boosts the documents where the adjacent words of inTitle (or
+   * inDescription) are close to each other, clears the cached plans.
+   *
+   * @param slop Maximum number of positions between two adjacent words.
+   * @param boost Boost of every word pair, 0 disables the proximity scoring.
+   */
+  public void setProximity(int slop, float boost) {
+    synchronized (plans) {
+      this.proximitySlop = slop;
+      this.proximityBoost = boost;
+      generation++;
+      plans.clear();
+    }
+  }
+
+  /**
+   * Compiles the structured query, the arguments are the same as in
+   * LuceneSearchApp.search(). Any of them can be null.
+   *
+   * @return The (possibly cached) compiled query.
+   * @throws IOException If the document frequencies couldn't be read.
+   */
+  public CompiledQuery compile(List<String> inTitle, List<String> notInTitle,
+      List<String> inDescription, List<String> notInDescription, String startDate, String endDate)
+          throws IOException {
+    // Copies, the caller is free to modify the lists afterwards.
+    List<Object> key = Arrays.asList(copyOf(inTitle), copyOf(notInTitle), copyOf(inDescription),
+        copyOf(notInDescription), startDate, endDate);
+    int slop;
+    float boost;
+    long planGeneration;
+    synchronized (plans) {
+      CompiledQuery plan = plans.get(key);
+      if (plan != null) {
+        return plan;
+      }
+      slop = proximitySlop;
+      boost = proximityBoost;
+      planGeneration = generation;
+    }
+    CompiledQuery plan = plan(inTitle, notInTitle, inDescription, notInDescription, startDate,
+        endDate, slop, boost);
+    synchronized (plans) {
+      // setProximity() ran meanwhile, the plan has the old settings
+      if (planGeneration == generation) {
+        plans.put(key, plan);
+      }
+    }
+    return plan;
+  }
+
+  private CompiledQuery plan(List<String> inTitle, List<String> notInTitle,
+      List<String> inDescription, List<String> notInDescription, String startDate, String endDate,
+      int slop, float boost) throws IOException {
+    List<Query> required = new ArrayList<Query>();
+    required.addAll(toQueries(inTitle, LuceneSearchApp.TITLE));
+    required.addAll(toQueries(inDescription, LuceneSearchApp.DESC));
+    Set<Query> prohibited = new LinkedHashSet<Query>();
+    prohibited.addAll(toQueries(notInTitle, LuceneSearchApp.TITLE));
+    prohibited.addAll(toQueries(notInDescription, LuceneSearchApp.DESC));
+
+    // Date range, as in the original search a missing bound is open.
+    Long lowerTerm = startDate != null ? toISOEpochDay(startDate) : null;
+    Long upperTerm = endDate != null ? toISOEpochDay(endDate) : null;
+    if (lowerTerm != null && upperTerm != null && lowerTerm > upperTerm) {
+      return CompiledQuery.NO_MATCH;
+    }
+
+    // A required term missing from the index (or also prohibited) means no
+    // document can match, so there is no need to search at all.
+    final Map<Query, Integer> docFreqs = new LinkedHashMap<Query, Integer>();
+    for (Query clause : required) {
+      int df = getDocFreq(clause);
+      if (df == 0 || prohibited.contains(clause)) {
+        return CompiledQuery.NO_MATCH;
+      }
+      docFreqs.put(clause, df);
+    }
+    List<Query> conjunction = new ArrayList<Query>(docFreqs.keySet());
+    Collections.sort(conjunction, (a, b) -> Integer.compare(docFreqs.get(a), docFreqs.get(b)));
+
+    BooleanQuery.Builder boolQuery = new BooleanQuery.Builder();
+    // Rarest terms first, they drive the conjunction.
+    for (Query clause : conjunction) {
+      boolQuery.add(clause, BooleanClause.Occur.MUST);
+    }
+    for (Query clause : prohibited) {
+      // A prohibited term which is in no document can't exclude anything.
+      if (getDocFreq(clause) > 0) {
+        boolQuery.add(clause, BooleanClause.Occur.MUST_NOT);
+      }
+    }
+    if (boost > 0) {
+      addProximity(boolQuery, inTitle, LuceneSearchApp.TITLE, slop, boost);
+      addProximity(boolQuery, inDescription, LuceneSearchApp.DESC, slop, boost);
+    }
+    if (lowerTerm != null || upperTerm != null) {
+      boolQuery.add(NumericRangeQuery.newLongRange(LuceneSearchApp.PUB_DATE, lowerTerm, upperTerm,
+          true, true), BooleanClause.Occur.MUST);
+    } else if (conjunction.isEmpty()) {
+      // Purely negative query, every document is a candidate (the same
+      // documents the open date range used to match).
+      boolQuery.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+    }
+    return new CompiledQuery(boolQuery.build());
+  }
+
+  private List<Query> toQueries(List<String> entries, String field) {
+    List<Query> result = new ArrayList<Query>();
+    if (entries != null) {
+      Set<String> trimmed = new LinkedHashSet<String>();
+      for (String entry : entries) {
+        trimmed.add(entry.trim());
+      }
+      for (String entry : trimmed) {
+        String[] words = entry.split("\\s+");
+        if (words.length == 1) {
+          result.add(new TermQuery(new Term(field, entry)));
+          continue;
+        }
+        if (!positionFields.contains(field)) {
+          throw new IllegalArgumentException(
+              "The phrase \"" + entry + "\" needs the positions of the " + field + " field");
+        }
+        PhraseQuery.Builder phrase = new PhraseQuery.Builder();
+        Matcher sloppy = SLOP.matcher(words[words.length - 1]);
+        if (sloppy.matches()) {
+          words[words.length - 1] = sloppy.group(1);
+          phrase.setSlop(Integer.parseInt(sloppy.group(2)));
+        }
+        for (String word : words) {
+          phrase.add(new Term(field, word));
+        }
+        result.add(phrase.build());
+      }
+    }
+    return result;
+  }
+
+  // A phrase can't be in more documents than its rarest word, any other
+  // query is assumed to match every document
+  private int getDocFreq(Query clause) throws IOException {
+    if (clause instanceof TermQuery) {
+      return reader.docFreq(((TermQuery) clause).getTerm());
+    }
+    if (!(clause instanceof PhraseQuery)) {
+      return reader.maxDoc();
+    }
+    int df = Integer.MAX_VALUE;
+    for (Term term : ((PhraseQuery) clause).getTerms()) {
+      df = Math.min(df, reader.docFreq(term));
+    }
+    return df;
+  }
+
+  private void addProximity(BooleanQuery.Builder boolQuery, List<String> words, String field,
+      int slop, float boost) {
+    if (words == null || !positionFields.contains(field)) {
+      return;
+    }
+    for (int i = 0; i + 1 < words.size(); i++) {
+      String first = words.get(i).trim();
+      String second = words.get(i + 1).trim();
+      // Phrases already have their own positions
+      if (first.contains(" ") || second.contains(" ") || first.equals(second)) {
+        continue;
+      }
+      SpanQuery near = new SpanNearQuery(new SpanQuery[] {new SpanTermQuery(new Term(field, first)),
+          new SpanTermQuery(new Term(field, second))}, slop, true);
+      boolQuery.add(new BoostQuery(near, boost), BooleanClause.Occur.SHOULD);
+    }
+  }
+
+  private static List<String> copyOf(List<String> terms) {
+    return terms == null ? null : new ArrayList<String>(terms);
+  }
+
+  /**
+   * Convert the date string to Number of Days Since Epoch So that range
+   * searches can be done. Uses ISO_DATE format hence the name.
+   */
+  static Long toISOEpochDay(String isoDateStr) {
+    LocalDate localDate = LocalDate.parse(isoDateStr, DateTimeFormatter.ISO_DATE);
+    return localDate.toEpochDay();
+  }
+}
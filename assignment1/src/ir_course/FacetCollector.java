@@ -0,0 +1,192 @@
+/*
+ * Publication date facets for the RSS feed search
+ * Created on 2026-10-19
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Counts the hits per publication day while the hits are collected (wrap it
+ * with the top docs collector in a MultiCollector), so the facets cost no
+ * second query. The days are read from the PUB_DATE doc values (days since
+ * the epoch) into an array indexed by day, the weeks (starting on Monday) are
+ * derived from the day counts.
+ */
+public class FacetCollector extends SimpleCollector {
+
+  private NumericDocValues days;
+  private Bits docsWithDay;
+  // counts[i] is the count of day firstDay + i
+  private int[] counts = new int[0];
+  private long firstDay;
+  private int total;
+
+  /**
+   * Immutable facet counts of a search.
+   */
+  public static class Counts {
+    private final SortedMap<LocalDate, Integer> dayCounts;
+    private final SortedMap<LocalDate, Integer> weekCounts;
+    private final int total;
+
+    private Counts(SortedMap<LocalDate, Integer> dayCounts,
+        SortedMap<LocalDate, Integer> weekCounts, int total) {
+      this.dayCounts = Collections.unmodifiableSortedMap(dayCounts);
+      this.weekCounts = Collections.unmodifiableSortedMap(weekCounts);
+      this.total = total;
+    }
+
+    /**
+     * @return Number of hits per publication day, days without hits are left out.
+     */
+    public SortedMap<LocalDate, Integer> getDayCounts() {
+      return dayCounts;
+    }
+
+    /**
+     * @return Number of hits per week, keyed by the Monday of the week.
+     */
+    public SortedMap<LocalDate, Integer> getWeekCounts() {
+      return weekCounts;
+    }
+
+    /**
+     * @return Number of counted hits.
+     */
+    public int getTotal() {
+      return total;
+    }
+
+    public String toString() {
+      return "[Facets: hits = " + total + ", days = " + dayCounts + ", weeks = " + weekCounts + "]";
+    }
+  }
+
+  @Override
+  protected void doSetNextReader(LeafReaderContext context) throws IOException {
+    days = DocValues.getNumeric(context.reader(), LuceneSearchApp.PUB_DATE);
+    docsWithDay = DocValues.getDocsWithField(context.reader(), LuceneSearchApp.PUB_DATE);
+  }
+
+  @Override
+  public void collect(int doc) throws IOException {
+    total++;
+    if (!docsWithDay.get(doc)) {
+      return;
+    }
+    long day = days.get(doc);
+    if (counts.length == 0) {
+      firstDay = day;
+      counts = new int[64];
+    } else if (day < firstDay) {
+      // Grow to the left, the feeds go back in time
+      int shift = (int) Math.max(firstDay - day, counts.length);
+      int[] grown = new int[counts.length + shift];
+      System.arraycopy(counts, 0, grown, shift, counts.length);
+      counts = grown;
+      firstDay -= shift;
+    } else if (day - firstDay >= counts.length) {
+      int[] grown = new int[(int) Math.max(day - firstDay + 1, 2L * counts.length)];
+      System.arraycopy(counts, 0, grown, 0, counts.length);
+      counts = grown;
+    }
+    counts[(int) (day - firstDay)]++;
+  }
+
+  @Override
+  public boolean needsScores() {
+    return false;
+  }
+
+  /**
+   * @return The counts of the hits collected so far.
+   */
+  public Counts getCounts() {
+    SortedMap<LocalDate, Integer> dayCounts = new TreeMap<LocalDate, Integer>();
+    SortedMap<LocalDate, Integer> weekCounts = new TreeMap<LocalDate, Integer>();
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        LocalDate day = LocalDate.ofEpochDay(firstDay + i);
+        dayCounts.put(day, counts[i]);
+        weekCounts.merge(day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), counts[i],
+            Integer::sum);
+      }
+    }
+    return new Counts(dayCounts, weekCounts, total);
+  }
+
+  /**
+   * Measures the cost of the facets: the same title term queries are searched
+   * with and without faceting (the facet cache is disabled).
+   *
+   * Usage: FacetCollector feed.xml [queries]
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0) {
+      RssFeedParser parser = new RssFeedParser();
+      parser.parse(args[0]);
+      List<RssFeedDocument> docs = parser.getDocuments();
+      int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+      LuceneSearchApp engine = new LuceneSearchApp();
+      engine.index(docs);
+      engine.setVerbose(false);
+      engine.setFacetCacheSize(0);
+
+      // Single title word queries, words drawn from the titles
+      Random random = new Random(42);
+      List<List<String>> queries = new ArrayList<List<String>>();
+      for (int i = 0; i < numQueries; i++) {
+        String[] words = docs.get(random.nextInt(docs.size())).getTitle().toLowerCase()
+            .replaceAll("[^\\p{L}\\p{N}]+", " ").trim().split(" ");
+        List<String> inTitle = new LinkedList<String>();
+        inTitle.add(words[random.nextInt(words.length)]);
+        queries.add(inTitle);
+      }
+
+      long[] plain = new long[numQueries];
+      long[] faceted = new long[numQueries];
+      // Twice, the first round warms up the JIT
+      for (int round = 0; round < 2; round++) {
+        for (int i = 0; i < numQueries; i++) {
+          engine.setFaceting(false);
+          long start = System.nanoTime();
+          engine.search(queries.get(i), null, null, null, null, null);
+          plain[i] = System.nanoTime() - start;
+          engine.setFaceting(true);
+          start = System.nanoTime();
+          engine.search(queries.get(i), null, null, null, null, null);
+          faceted[i] = System.nanoTime() - start;
+        }
+      }
+      long plainSum = 0;
+      long facetedSum = 0;
+      for (int i = 0; i < numQueries; i++) {
+        plainSum += plain[i];
+        facetedSum += faceted[i];
+      }
+      System.out.println(String.format(
+          "%d documents, %d queries : search = %.3f ms, faceted search = %.3f ms (+%.1f%%)",
+          docs.size(), numQueries, plainSum / 1e6 / numQueries, facetedSum / 1e6 / numQueries,
+          100.0 * (facetedSum - plainSum) / plainSum));
+    } else
+      System.out.println(
+          "ERROR: the path of a RSS Feed file has to be passed as a command line argument.");
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Background segment merging for the incrementally ingested RSS index
+ * Created on 2026-10-19
+ */
+package ir_course;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an incrementally ingested index (see LuceneSearchApp.ingest()) fast
+ * to search. Every check looks at the number of segments, the share of
+ * deleted (replaced) documents and the search rate and latency since the
+ * previous check:
+ * <ul>
+ * <li>while the search rate is above the low traffic threshold nothing is
+ * done, the merges wait for a quiet window,</li>
+ * <li>too many deleted documents are reclaimed with forceMergeDeletes(),</li>
+ * <li>too many segments, or slow searches over several segments, are merged
+ * down to half the segment limit.</li>
+ * </ul>
+ * The merges are forced merges of the engine's writer, so they run at the
+ * rate set with LuceneSearchApp.setMergeRateLimit(). The searches go on
+ * during a merge on the previous searcher.
+ */
+public class IndexMaintenanceScheduler implements Closeable {
+
+  private final LuceneSearchApp engine;
+  private final ScheduledExecutorService executor;
+  private int maxSegments = 10;
+  private double maxDeletedRatio = 0.2;
+  private double lowTrafficQps = 5.0;
+  private double maxLatencyMs = 20.0;
+  // Search counters of the engine at the previous check
+  private long lastCheckNanos = System.nanoTime();
+  private long lastSearchCount;
+  private long lastSearchNanos;
+  private volatile String lastAction;
+
+  public IndexMaintenanceScheduler(LuceneSearchApp engine) {
+    this.engine = engine;
+    this.lastSearchCount = engine.getSearchCount();
+    this.lastSearchNanos = engine.getSearchNanos();
+    this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "index-maintenance");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @param maxSegments Number of segments above which the index is merged.
+   * @param maxDeletedRatio Share of deleted documents above which they are
+   *        reclaimed.
+   * @param lowTrafficQps Search rate under which the merges are allowed.
+   * @param maxLatencyMs Mean search latency above which an index with several
+   *        segments is merged.
+   */
+  public void setThresholds(int maxSegments, double maxDeletedRatio, double lowTrafficQps,
+      double maxLatencyMs) {
+    this.maxSegments = maxSegments;
+    this.maxDeletedRatio = maxDeletedRatio;
+    this.lowTrafficQps = lowTrafficQps;
+    this.maxLatencyMs = maxLatencyMs;
+  }
+
+  /**
+   * Checks the index every interval, in the background.
+   *
+   * @param interval Time between two checks.
+   * @param unit Unit of the interval.
+   */
+  public void start(long interval, TimeUnit unit) {
+    executor.scheduleWithFixedDelay(() -> {
+      // Any exception escaping the task would cancel the later checks
+      try {
+        check();
+      } catch (IOException | RuntimeException e) {
+        lastAction = "failed : " + e;
+        System.err.println("Index maintenance " + lastAction);
+      }
+    }, interval, interval, unit);
+  }
+
+  /**
+   * Runs one check, and the merge it calls for.
+   *
+   * @return What was done, null if nothing was.
+   * @throws IOException If the merge failed.
+   */
+  public synchronized String check() throws IOException {
+    long now = System.nanoTime();
+    long searches = engine.getSearchCount() - lastSearchCount;
+    long searchNanos = engine.getSearchNanos() - lastSearchNanos;
+    double qps = searches / Math.max((now - lastCheckNanos) / 1e9, 1e-3);
+    double meanLatencyMs = searches > 0 ? searchNanos / 1e6 / searches : 0.0;
+    lastCheckNanos = now;
+    lastSearchCount += searches;
+    lastSearchNanos += searchNanos;
+
+    if (qps > lowTrafficQps) {
+      return null;
+    }
+    int segments = engine.getSegmentCount();
+    double deletedRatio = engine.getDeletedRatio();
+    String reason;
+    long start = System.nanoTime();
+    if (deletedRatio > maxDeletedRatio) {
+      engine.forceMergeDeletes();
+      reason = String.format("%.0f%% deleted documents", 100 * deletedRatio);
+    } else if (segments > maxSegments || (meanLatencyMs > maxLatencyMs && segments > 1)) {
+      engine.forceMerge(Math.max(1, maxSegments / 2));
+      reason = segments > maxSegments ? segments + " segments"
+          : String.format("%.1f ms mean latency", meanLatencyMs);
+    } else {
+      return null;
+    }
+    lastAction = String.format("merged (%s) : %d -> %d segments in %.1f ms", reason, segments,
+        engine.getSegmentCount(), (System.nanoTime() - start) / 1e6);
+    return lastAction;
+  }
+
+  /**
+   * @return What the last merge did, null if there was none.
+   */
+  public String getLastAction() {
+    return lastAction;
+  }
+
+  /**
+   * Stops the checks, a running merge completes.
+   */
+  public void close() {
+    executor.shutdown();
+  }
+
+  /**
+   * Simulates the polling of the feeds: the items are ingested in small
+   * batches, every poll also returns the previous poll again (replaced
+   * items). The latency of title word queries is measured before and after
+   * the maintenance.
+   *
+   * Usage: IndexMaintenanceScheduler feed.xml [polls]
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0) {
+      RssFeedParser parser = new RssFeedParser();
+      parser.parse(args[0]);
+      List<RssFeedDocument> docs = parser.getDocuments();
+      int polls = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+      LuceneSearchApp engine = new LuceneSearchApp();
+      engine.setVerbose(false);
+      engine.index(new ArrayList<RssFeedDocument>());
+      int batch = Math.max(1, docs.size() / polls);
+      for (int from = 0; from < docs.size(); from += batch) {
+        engine.ingest(docs.subList(Math.max(0, from - batch), Math.min(docs.size(), from + batch)));
+      }
+
+      Random random = new Random(42);
+      List<List<String>> queries = new ArrayList<List<String>>();
+      for (int i = 0; i < 2000; i++) {
+        String[] words = docs.get(random.nextInt(docs.size())).getTitle().toLowerCase()
+            .replaceAll("[^\\p{L}\\p{N}]+", " ").trim().split(" ");
+        List<String> inTitle = new LinkedList<String>();
+        inTitle.add(words[random.nextInt(words.length)]);
+        queries.add(inTitle);
+      }
+      System.out.println(String.format("After %d polls : %d segments, %.1f%% deleted, %.3f ms",
+          polls, engine.getSegmentCount(), 100 * engine.getDeletedRatio(),
+          meanLatencyMs(engine, queries)));
+      IndexMaintenanceScheduler scheduler = new IndexMaintenanceScheduler(engine);
+      scheduler.setThresholds(4, 0.1, Double.MAX_VALUE, 20.0);
+      String action;
+      while ((action = scheduler.check()) != null) {
+        System.out.println(action);
+      }
+      System.out.println(String.format("After maintenance : %d segments, %.1f%% deleted, %.3f ms",
+          engine.getSegmentCount(), 100 * engine.getDeletedRatio(), meanLatencyMs(engine, queries)));
+      engine.forceMerge(1);
+      System.out.println(String.format("Read only (1 segment) : %.3f ms",
+          meanLatencyMs(engine, queries)));
+      scheduler.close();
+      engine.close();
+    } else
+      System.out.println(
+          "ERROR: the path of a RSS Feed file has to be passed as a command line argument.");
+  }
+
+  // Twice, the first round warms up the JIT
+  private static double meanLatencyMs(LuceneSearchApp engine, List<List<String>> queries)
+      throws IOException {
+    long start = 0;
+    for (int round = 0; round < 2; round++) {
+      start = System.nanoTime();
+      for (List<String> inTitle : queries) {
+        engine.search(inTitle, null, null, null, null, null);
+      }
+    }
+    return (System.nanoTime() - start) / 1e6 / queries.size();
+  }
+}
@@ -14,66 +14,144 @@ package ir_course;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.analysis.Analyzer;
 
+import ir_course.BooleanQueryPlanner.CompiledQuery;
+
 public class LuceneSearchApp {
 
   // Create Lucene index in this dir
-  private static String indexDir;
-  // Lucene index reader
-  private static IndexReader reader;
-  // Index searcher
-  private static IndexSearcher searcher;
+  private String indexDir;
+  // Searchers of the current reader, reopened after every index() / ingest()
+  private SearcherManager searcherManager;
   // Index Writer Config
-  private static IndexWriterConfig iwc;
+  private IndexWriterConfig iwc;
   // Index Writer
-  private static IndexWriter writer;
+  private IndexWriter writer;
   // Index Directory
-  private static Directory dir;
+  private Directory dir;
   // Analyzer
-  private static Analyzer analyzer;
+  private Analyzer analyzer;
+  // Merges in the background, forced merges are rate limited
+  private ConcurrentMergeScheduler mergeScheduler;
   // Title String
   public static final String TITLE = "title";
   // Description String
   public static final String DESC = "description";
   // Publish Date string
   public static final String PUB_DATE = "pubDate";
-  // Search result doc numbers
-  private ScoreDoc[] hits;
+  // Item key (title and publication time) for the updates of ingest()
+  public static final String ID = "id";
+  // Rate of the forced merges, see setMergeRateLimit()
+  public static final double DEFAULT_MERGE_MB_PER_SEC = 20.0;
+  // Publication date facets of the last search of each thread, null when
+  // faceting is off
+  private final ThreadLocal<FacetCollector.Counts> facets =
+      new ThreadLocal<FacetCollector.Counts>();
+  private boolean faceting = false;
+  // Facet counts of the frequent queries, keyed by the compiled query
+  private volatile int facetCacheSize = 256;
+  // Print every query before searching it
+  private boolean verbose = true;
+  // Text fields indexed with positions, null for all of them
+  private Set<String> positionFields;
+  // Volatile, the SearcherFactory reads them on the refreshing thread
+  private volatile int proximitySlop = 0;
+  private volatile float proximityBoost = 0f;
+  // Number and total time of the searches, for the maintenance scheduler
+  private final AtomicLong searchCount = new AtomicLong();
+  private final AtomicLong searchNanos = new AtomicLong();
+  // Off-heap copies of the titles by segment name, null when disabled, see
+  // setDocumentStore()
+  private Path documentStoreDir;
+  private final Map<String, DocumentStore> documentStores = new HashMap<String, DocumentStore>();
+  private final ThreadLocal<DocumentStore.Cursor> storeCursors =
+      ThreadLocal.withInitial(DocumentStore::newCursor);
+  // Searches recorded and replayed on the new searchers, see setWarmup()
+  private QueryLog queryLog;
+  private int warmupQueries;
+
+  /**
+   * The searcher of a reader with the planner, the facet cache and the
+   * document stores of that reader, all replaced together when the index
+   * changes.
+   */
+  private static class PlannedSearcher extends IndexSearcher {
+    private final BooleanQueryPlanner planner;
+    private volatile Map<Query, FacetCollector.Counts> facetCache;
+    // By leaf, null if the document store is disabled
+    private final DocumentStore[] stores;
+
+    PlannedSearcher(IndexReader reader, int proximitySlop, float proximityBoost,
+        int facetCacheSize, DocumentStore[] stores) {
+      super(reader);
+      this.stores = stores;
+      planner = new BooleanQueryPlanner(reader);
+      planner.setProximity(proximitySlop, proximityBoost);
+      facetCache = newFacetCache(facetCacheSize);
+    }
+  }
 
   public LuceneSearchApp() throws IOException {
     analyzer = new StandardAnalyzer();
     iwc = new IndexWriterConfig(analyzer);
     iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
+    // Feeds are ingested in small batches: the tiered policy keeps the number
+    // of segments logarithmic and favours the merges reclaiming the items
+    // replaced by ingest().
+    TieredMergePolicy mergePolicy = new TieredMergePolicy();
+    mergePolicy.setReclaimDeletesWeight(3.0);
+    iwc.setMergePolicy(mergePolicy);
+    // The background merges are throttled automatically, the forced ones run
+    // at a fixed rate so they don't starve the searches of IO.
+    mergeScheduler = new ConcurrentMergeScheduler();
+    mergeScheduler.setForceMergeMBPerSec(DEFAULT_MERGE_MB_PER_SEC);
+    iwc.setMergeScheduler(mergeScheduler);
 
     // Assuming the directory where index is stored is the PWD always.
     indexDir = Paths.get("").toAbsolutePath().toString();
@@ -84,89 +162,425 @@ public class LuceneSearchApp {
     writer = new IndexWriter(dir, iwc);
   }
 
+  /**
+   * @param faceting If true search() also counts the hits per publication day
+   *        and week, see getFacets().
+   */
+  public void setFaceting(boolean faceting) {
+    this.faceting = faceting;
+  }
+
+  /**
+   * @param cacheSize Number of queries whose facet counts are cached, 0
+   *        disables the cache.
+   */
+  public void setFacetCacheSize(int cacheSize) throws IOException {
+    this.facetCacheSize = cacheSize;
+    if (searcherManager != null) {
+      PlannedSearcher searcher = (PlannedSearcher) searcherManager.acquire();
+      try {
+        searcher.facetCache = newFacetCache(cacheSize);
+      } finally {
+        searcherManager.release(searcher);
+      }
+    }
+  }
+
+  /**
+   * @return The facet counts of the last search of the calling thread, null
+   *         if faceting is off.
+   */
+  public FacetCollector.Counts getFacets() {
+    return facets.get();
+  }
+
+  /**
+   * Indexes the positions of the given text fields only, the other ones only
+   * get the term frequencies (a smaller index, but no phrases). Must be called
+   * before index().
+   *
+   * @param fields Fields with positions, from {TITLE, DESC}. By default both.
+   */
+  public void setPositionFields(String... fields) {
+    this.positionFields = new HashSet<String>(Arrays.asList(fields));
+  }
+
+  /**
+   * Ranks first the documents where the adjacent required words of a field
+   * are close to each other, see BooleanQueryPlanner.setProximity().
+   *
+   * @param slop Maximum number of positions between two adjacent words.
+   * @param boost Boost of every word pair, 0 disables the proximity scoring.
+   */
+  public void setProximity(int slop, float boost) throws IOException {
+    this.proximitySlop = slop;
+    this.proximityBoost = boost;
+    if (searcherManager != null) {
+      PlannedSearcher searcher = (PlannedSearcher) searcherManager.acquire();
+      try {
+        searcher.planner.setProximity(slop, boost);
+      } finally {
+        searcherManager.release(searcher);
+      }
+    }
+  }
+
+  /**
+   * Keeps an off-heap copy of the titles of every segment (see DocumentStore)
+   * in the given directory, the hits are then hydrated from it instead of
+   * the stored fields. A segment is copied when it is first searched, so
+   * after every ingest() and merge. Must be called before index().
+   *
+   * @param directory Directory of the document store files.
+   */
+  public void setDocumentStore(Path directory) {
+    this.documentStoreDir = directory;
+  }
+
+  /**
+   * Records the searches into the log, and replays its most frequent queries
+   * on every new searcher (after index(), ingest() and the merges) before it
+   * replaces the current one: the JIT, the facet cache, the query cache and
+   * the pages of the index and of the document stores are warm when the
+   * searcher goes live. The reopen takes longer, the searches meanwhile use
+   * the previous searcher. Call it before index() to warm the first searcher
+   * with a log of a previous run (see QueryLog.read()).
+   *
+   * @param log The query log, null to disable the warmup.
+   * @param numQueries Number of the most frequent queries replayed.
+   */
+  public void setWarmup(QueryLog log, int numQueries) {
+    this.queryLog = log;
+    this.warmupQueries = numQueries;
+  }
+
+  /**
+   * @param mbPerSec IO rate of the forced merges (see forceMerge()), in MB/s.
+   */
+  public void setMergeRateLimit(double mbPerSec) {
+    mergeScheduler.setForceMergeMBPerSec(mbPerSec);
+  }
+
+  /**
+   * @param verbose If false search() doesn't print the queries.
+   */
+  public void setVerbose(boolean verbose) {
+    this.verbose = verbose;
+  }
+
+  private static Map<Query, FacetCollector.Counts> newFacetCache(final int cacheSize) {
+    return new LinkedHashMap<Query, FacetCollector.Counts>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Query, FacetCollector.Counts> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
   public void index(List<RssFeedDocument> docs) throws IOException {
+    FieldType titleType = getTextType(TITLE, TextField.TYPE_STORED);
+    FieldType descriptionType = getTextType(DESC, TextField.TYPE_NOT_STORED);
     // implement the Lucene indexing here
     for (RssFeedDocument doc : docs) {
-      // Each RSS Feed Document goes into a luceneDocument
-      Document luceneDoc = new Document();
-      // We add the Title(tokenized), Description(tokenized) and PublicationDate(Days from Epoch) as
-      // Fields in the luceneDocument. NOTE : The title field is stored since we want to retrieve it
-      // later.
-      luceneDoc.add(new TextField(TITLE, doc.getTitle(), Field.Store.YES));
-      luceneDoc.add(new TextField(DESC, new StringReader(doc.getDescription())));
-      luceneDoc.add(new LongField(PUB_DATE,
-          LocalDate.from(doc.getPubDate().toInstant().atZone(ZoneId.of("UTC"))).toEpochDay(),
-          Field.Store.NO));
       // Write the lucene document to the Index
-      writer.addDocument(luceneDoc);
+      writer.addDocument(toLuceneDocument(doc, titleType, descriptionType));
+    }
+    refresh();
+  }
+
+  /**
+   * Adds a new poll of the feeds to the index, the items already in the index
+   * (same title and publication time) are replaced. The new items are
+   * searchable when the method returns.
+   *
+   * @param docs The items of the poll.
+   * @throws IOException If the index couldn't be updated.
+   */
+  public void ingest(List<RssFeedDocument> docs) throws IOException {
+    FieldType titleType = getTextType(TITLE, TextField.TYPE_STORED);
+    FieldType descriptionType = getTextType(DESC, TextField.TYPE_NOT_STORED);
+    for (RssFeedDocument doc : docs) {
+      writer.updateDocument(new Term(ID, getId(doc)),
+          toLuceneDocument(doc, titleType, descriptionType));
+    }
+    refresh();
+  }
+
+  private static String getId(RssFeedDocument doc) {
+    return doc.getTitle() + "|" + doc.getPubDate().getTime();
+  }
+
+  private static Document toLuceneDocument(RssFeedDocument doc, FieldType titleType,
+      FieldType descriptionType) {
+    // Each RSS Feed Document goes into a luceneDocument
+    Document luceneDoc = new Document();
+    // We add the Title(tokenized), Description(tokenized) and PublicationDate(Days from Epoch) as
+    // Fields in the luceneDocument. NOTE : The title field is stored since we want to retrieve it
+    // later.
+    luceneDoc.add(new Field(TITLE, doc.getTitle(), titleType));
+    luceneDoc.add(new Field(DESC, new StringReader(doc.getDescription()), descriptionType));
+    luceneDoc.add(new LongField(PUB_DATE,
+        LocalDate.from(doc.getPubDate().toInstant().atZone(ZoneId.of("UTC"))).toEpochDay(),
+        Field.Store.NO));
+    // The same day as doc values, for the facets
+    luceneDoc.add(new NumericDocValuesField(PUB_DATE,
+        LocalDate.from(doc.getPubDate().toInstant().atZone(ZoneId.of("UTC"))).toEpochDay()));
+    luceneDoc.add(new StringField(ID, getId(doc), Field.Store.NO));
+    return luceneDoc;
+  }
+
+  // Commits (the writer stays open for the next ingest()) and reopens the
+  // searcher near real time, without closing the searchers still in use.
+  private void refresh() throws IOException {
+    writer.commit();
+    if (searcherManager == null) {
+      searcherManager = new SearcherManager(writer, true, new SearcherFactory() {
+        @Override
+        public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader)
+            throws IOException {
+          PlannedSearcher searcher = new PlannedSearcher(reader, proximitySlop, proximityBoost,
+              facetCacheSize, getDocumentStores(reader));
+          warm(searcher);
+          return searcher;
+        }
+      });
+    } else {
+      searcherManager.maybeRefreshBlocking();
+    }
+  }
+
+  // Replays the most frequent queries of the log on a searcher which isn't
+  // published yet, the facets of the calling thread are left as they were.
+  // A query which fails is skipped, the warmup never keeps the searcher from
+  // being published.
+  private void warm(PlannedSearcher searcher) {
+    QueryLog log = queryLog;
+    if (log == null) {
+      return;
+    }
+    FacetCollector.Counts lastFacets = facets.get();
+    try {
+      for (String line : log.getTopQueries(warmupQueries)) {
+        try {
+          Map<String, List<String>> params = QueryLog.parse(line);
+          List<String> startDate = params.get("startDate");
+          List<String> endDate = params.get("endDate");
+          search(searcher, params.get("inTitle"), params.get("notInTitle"),
+              params.get("inDescription"), params.get("notInDescription"),
+              startDate == null ? null : startDate.get(0), endDate == null ? null : endDate.get(0));
+        } catch (IOException | RuntimeException e) {
+          // A malformed line, or a query which doesn't compile or run
+        }
+      }
+    } finally {
+      facets.set(lastFacets);
+    }
+  }
+
+  // The document stores of the segments of the reader, the new segments are
+  // copied and the stores of the segments gone are deleted. The searchers
+  // still using them keep their mapping.
+  private synchronized DocumentStore[] getDocumentStores(IndexReader reader) throws IOException {
+    if (documentStoreDir == null) {
+      return null;
+    }
+    List<LeafReaderContext> leaves = reader.leaves();
+    DocumentStore[] stores = new DocumentStore[leaves.size()];
+    Set<String> segments = new HashSet<String>();
+    for (LeafReaderContext leaf : leaves) {
+      String segment = ((SegmentReader) leaf.reader()).getSegmentName();
+      segments.add(segment);
+      DocumentStore store = documentStores.get(segment);
+      if (store == null) {
+        Path path = documentStoreDir.resolve(segment + ".docs");
+        DocumentStore.write(leaf.reader(), new String[] {TITLE}, path);
+        store = DocumentStore.open(path);
+        documentStores.put(segment, store);
+      }
+      stores[leaf.ord] = store;
+    }
+    for (Iterator<String> segment = documentStores.keySet().iterator(); segment.hasNext();) {
+      String name = segment.next();
+      if (!segments.contains(name)) {
+        Files.deleteIfExists(documentStoreDir.resolve(name + ".docs"));
+        segment.remove();
+      }
+    }
+    return stores;
+  }
+
+  /**
+   * @return The number of segments of the current reader.
+   * @throws IOException If the searcher couldn't be released.
+   */
+  public int getSegmentCount() throws IOException {
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      return searcher.getIndexReader().leaves().size();
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  /**
+   * @return The share of the documents of the current reader which are
+   *         deleted (replaced by ingest()) but still take space in the
+   *         segments.
+   * @throws IOException If the searcher couldn't be released.
+   */
+  public double getDeletedRatio() throws IOException {
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      IndexReader reader = searcher.getIndexReader();
+      return reader.maxDoc() == 0 ? 0.0 : (double) reader.numDeletedDocs() / reader.maxDoc();
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  /**
+   * @return The number of searches so far.
+   */
+  public long getSearchCount() {
+    return searchCount.get();
+  }
+
+  /**
+   * @return The total time of the searches so far, in nanoseconds.
+   */
+  public long getSearchNanos() {
+    return searchNanos.get();
+  }
+
+  /**
+   * Merges the index down to at most maxSegments segments, at the rate of
+   * setMergeRateLimit(), then reopens the searcher. The searches go on
+   * meanwhile.
+   *
+   * @param maxSegments The maximum number of segments, 1 for a read only index.
+   * @throws IOException If the merge failed.
+   */
+  public void forceMerge(int maxSegments) throws IOException {
+    writer.forceMerge(maxSegments);
+    refresh();
+  }
+
+  /**
+   * Merges the segments with deleted documents, then reopens the searcher.
+   *
+   * @throws IOException If the merge failed.
+   */
+  public void forceMergeDeletes() throws IOException {
+    writer.forceMergeDeletes();
+    refresh();
+  }
+
+  /**
+   * Closes the searchers and the writer, the engine can't be used afterwards.
+   *
+   * @throws IOException If the index couldn't be closed.
+   */
+  public void close() throws IOException {
+    if (searcherManager != null) {
+      searcherManager.close();
     }
-    // Closing the Index is Important
     writer.close();
-    // Open the directory and create the searcher which will be used in the search method.s
-    reader = DirectoryReader.open(dir);
-    searcher = new IndexSearcher(reader);
-  }
-
-  private List<Query> getTermQueryFromList(List<String> terms, String field) {
-    // This method just takes lists of terms as a String and a Field name
-    // and creates Term Queries from them. Which is mainly used in constructing the
-    // Query.
-    List<Query> queries = new ArrayList<Query>();
-    if (terms != null) {
-      for (String term : terms) {
-        queries.add(new TermQuery(new Term(field, term)));
+    synchronized (this) {
+      for (Map.Entry<String, DocumentStore> store : documentStores.entrySet()) {
+        store.getValue().close();
+        Files.deleteIfExists(documentStoreDir.resolve(store.getKey() + ".docs"));
       }
+      documentStores.clear();
     }
-    return queries;
+  }
+
+  // The type as it is, or a copy of it without positions if the field isn't
+  // one of the position fields.
+  private FieldType getTextType(String field, FieldType type) {
+    if (positionFields == null || positionFields.contains(field)) {
+      return type;
+    }
+    FieldType withoutPositions = new FieldType(type);
+    withoutPositions.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+    withoutPositions.freeze();
+    return withoutPositions;
   }
 
   public List<String> search(List<String> inTitle, List<String> notInTitle,
       List<String> inDescription, List<String> notInDescription, String startDate, String endDate)
           throws IOException {
 
-    printQuery(inTitle, notInTitle, inDescription, notInDescription, startDate, endDate);
+    if (verbose) {
+      printQuery(inTitle, notInTitle, inDescription, notInDescription, startDate, endDate);
+    }
 
-    List<String> results = new LinkedList<String>();
+    long start = System.nanoTime();
+    PlannedSearcher searcher = (PlannedSearcher) searcherManager.acquire();
+    try {
+      List<String> results = search(searcher, inTitle, notInTitle, inDescription,
+          notInDescription, startDate, endDate);
+      // Only the queries which ran are replayed by the warmup
+      if (queryLog != null) {
+        queryLog.record(QueryLog.toLine(inTitle, notInTitle, inDescription, notInDescription,
+            startDate, endDate));
+      }
+      return results;
+    } finally {
+      searcherManager.release(searcher);
+      searchCount.incrementAndGet();
+      searchNanos.addAndGet(System.nanoTime() - start);
+    }
+  }
 
+  private List<String> search(PlannedSearcher searcher, List<String> inTitle,
+      List<String> notInTitle, List<String> inDescription, List<String> notInDescription,
+      String startDate, String endDate) throws IOException {
+    List<String> results = new LinkedList<String>();
     // implement the Lucene search here
-    // Use a boolean Query to implement multiple queries conjuncted with AND
-    BooleanQuery.Builder boolQuery = new BooleanQuery.Builder();
-    // Add the title Queries to the Boolen Query
-    getTermQueryFromList(inTitle, TITLE).forEach((query) -> {
-      boolQuery.add(query, BooleanClause.Occur.MUST);
-    });
-    getTermQueryFromList(notInTitle, TITLE).forEach((query) -> {
-      boolQuery.add(query, BooleanClause.Occur.MUST_NOT);
-    });
-    // Add the Description Queries to the Boolean Query
-    getTermQueryFromList(inDescription, DESC).forEach((query) -> {
-      boolQuery.add(query, BooleanClause.Occur.MUST);
-    });
-    getTermQueryFromList(notInDescription, DESC).forEach((query) -> {
-      boolQuery.add(query, BooleanClause.Occur.MUST_NOT);
-    });
-    // Construct and add the Date Range Query
-    // Always include the lower and upper range in date search.
-    // If the actual dates a null, it just ends up searching everything.
-    boolean includeLower = true;
-    boolean includeUpper = true;
-    Long lowerTerm = null;
-    Long upperTerm = null;
-    // If start and End Dates are not null get their corresponding day count since epoch
-    if (startDate != null) {
-      lowerTerm = toISOEpochDay(startDate);
+    // The planner turns the structured query into a BooleanQuery with the
+    // rarest required terms first, and tells us when nothing can match.
+    CompiledQuery plan = searcher.planner.compile(inTitle, notInTitle, inDescription,
+        notInDescription, startDate, endDate);
+    if (plan.matchesNothing()) {
+      facets.set(faceting ? new FacetCollector().getCounts() : null);
+      return results;
     }
-    if (endDate != null) {
-      upperTerm = toISOEpochDay(endDate);
-    }
-    NumericRangeQuery<Long> dateQuery =
-        NumericRangeQuery.newLongRange(PUB_DATE, lowerTerm, upperTerm, includeLower, includeUpper);
-    boolQuery.add(dateQuery, BooleanClause.Occur.MUST);
-    // Builds the final Query that goes into the searcher.
-    BooleanQuery q = boolQuery.build();
     // The search cannot have more than the number of docs in index (reader.numDocs)
-    hits = searcher.search(q, reader.numDocs()).scoreDocs;
+    int numDocs = searcher.getIndexReader().numDocs();
+    Map<Query, FacetCollector.Counts> facetCache = searcher.facetCache;
+    FacetCollector.Counts counts = null;
+    if (faceting) {
+      synchronized (facetCache) {
+        counts = facetCache.get(plan.getQuery());
+      }
+    }
+    ScoreDoc[] hits;
+    if (faceting && counts == null) {
+      // One pass, the facets are counted while the hits are collected
+      TopScoreDocCollector topDocs = TopScoreDocCollector.create(numDocs);
+      FacetCollector facetCollector = new FacetCollector();
+      searcher.search(plan.getQuery(), MultiCollector.wrap(topDocs, facetCollector));
+      hits = topDocs.topDocs().scoreDocs;
+      counts = facetCollector.getCounts();
+      synchronized (facetCache) {
+        facetCache.put(plan.getQuery(), counts);
+      }
+    } else {
+      hits = searcher.search(plan.getQuery(), numDocs).scoreDocs;
+    }
+    facets.set(counts);
+    List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+    DocumentStore.Cursor cursor = storeCursors.get();
     for (ScoreDoc hit : hits) {
+      if (searcher.stores != null) {
+        // The title from the store of the segment of the hit
+        int leaf = ReaderUtil.subIndex(hit.doc, leaves);
+        results.add(searcher.stores[leaf].get(hit.doc - leaves.get(leaf).docBase, TITLE, cursor)
+            .toString());
+        continue;
+      }
       // hits just give the document number matching the search
       // retrieve the corresponding document and its title with the searcher
       results.add(searcher.doc(hit.doc).get(TITLE));
@@ -174,13 +588,6 @@ public class LuceneSearchApp {
     return results;
   }
 
-  private Long toISOEpochDay(String isoDateStr) {
-    // Convert the date string to Number of Days Since Epoch So that range searches can be done
-    // Uses ISO_DATE format hence the name
-    LocalDate localDate = LocalDate.parse(isoDateStr, DateTimeFormatter.ISO_DATE);
-    return localDate.toEpochDay();
-  }
-
   public void printQuery(List<String> inTitle, List<String> notInTitle, List<String> inDescription,
       List<String> notInDescription, String startDate, String endDate) {
     System.out.print("Search (");
@@ -229,6 +636,8 @@ public class LuceneSearchApp {
       LuceneSearchApp engine = new LuceneSearchApp();
 
       RssFeedParser parser = new RssFeedParser();
+      // Feeds repeat items across polls, keep only the first copy
+      parser.setDeduplicator(new NearDuplicateDetector());
       parser.parse(args[0]);
       List<RssFeedDocument> docs = parser.getDocuments();
 
@@ -286,6 +695,7 @@ public class LuceneSearchApp {
       notInDescription.add("israel");
       results = engine.search(null, null, null, notInDescription, null, "2011-12-18");
       engine.printResults(results);
+      engine.close();
     } else
       System.out.println(
           "ERROR: the path of a RSS Feed file has to be passed as a command line argument.");
@@ -0,0 +1,239 @@
+/*
+ * Duplicate detection for the RSS feed items
+ * Created on 2026-10-19
+ */
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming duplicate detector for the parsers. A document is an exact
+ * duplicate if its normalised title and body hash to an already seen value,
+ * and a near duplicate if the Jaccard similarity of its word shingles with an
+ * already seen document is estimated (by MinHash) to be at least the
+ * threshold. Candidates are found through LSH band tables, so a document is
+ * only compared with the documents sharing at least one band.
+ *
+ * At most maxDocuments signatures are kept, the oldest ones are evicted
+ * first, so the memory use is bounded whatever the size of the stream.
+ * Documents are only compared within the same scope (e.g. a search task).
+ */
+public class NearDuplicateDetector {
+  private int shingleSize;
+  private int numHashes;
+  private int bands;
+  private int rows;
+  private double threshold;
+  private int maxDocuments;
+
+  // Ring buffer of the kept documents
+  private int[][] signatures;
+  private long[] exactHashes;
+  private long[][] bandKeys;
+  private int next = 0;
+  private int size = 0;
+  // exact hash -> slot, band key -> slots
+  private Map<Long, Integer> exactTable = new HashMap<Long, Integer>();
+  private Map<Long, List<Integer>> bandTables = new HashMap<Long, List<Integer>>();
+
+  private int exactDuplicates = 0;
+  private int nearDuplicates = 0;
+
+  /**
+   * Detector with 3-word shingles, 64 hashes in 16 bands, a 0.8 similarity
+   * threshold and at most 100000 kept signatures.
+   */
+  public NearDuplicateDetector() {
+    this(3, 64, 16, 0.8, 100000);
+  }
+
+  /**
+   * @param shingleSize
+   *            Number of words in a shingle.
+   * @param numHashes
+   *            Length of the MinHash signatures.
+   * @param bands
+   *            Number of LSH bands, must divide numHashes. More bands find
+   *            more candidates at lower similarities.
+   * @param threshold
+   *            Estimated Jaccard similarity from which a document is a near
+   *            duplicate, in (0, 1].
+   * @param maxDocuments
+   *            Maximum number of signatures kept.
+   */
+  public NearDuplicateDetector(int shingleSize, int numHashes, int bands, double threshold, int maxDocuments) {
+    if (shingleSize < 1 || bands < 1 || numHashes % bands != 0 || threshold <= 0 || threshold > 1
+        || maxDocuments < 1) {
+      throw new IllegalArgumentException("Invalid duplicate detection parameters");
+    }
+    this.shingleSize = shingleSize;
+    this.numHashes = numHashes;
+    this.bands = bands;
+    this.rows = numHashes / bands;
+    this.threshold = threshold;
+    this.maxDocuments = maxDocuments;
+    this.signatures = new int[maxDocuments][];
+    this.exactHashes = new long[maxDocuments];
+    this.bandKeys = new long[maxDocuments][];
+  }
+
+  /**
+   * Checks a document against the documents seen so far, a document which
+   * is not a duplicate is remembered.
+   *
+   * @param scope
+   *            Documents are only compared within a scope, may be null.
+   * @param title
+   *            Title of the document.
+   * @param body
+   *            Body (description, abstract) of the document, may be null.
+   * @return true if the document is an exact or near duplicate.
+   */
+  public synchronized boolean isDuplicate(String scope, String title, String body) {
+    long scopeHash = hash(scope == null ? "" : scope, 0x9E3779B97F4A7C15L);
+    String[] words = normalise(title + " " + (body == null ? "" : body));
+
+    long exactHash = hash(String.join(" ", words), scopeHash);
+    if (exactTable.containsKey(exactHash)) {
+      exactDuplicates++;
+      return true;
+    }
+
+    int[] signature = signature(words);
+    long[] keys = new long[bands];
+    for (int band = 0; band < bands; band++) {
+      long key = scopeHash ^ (band * 0xC2B2AE3D27D4EB4FL);
+      for (int row = 0; row < rows; row++) {
+        key = mix(key ^ signature[band * rows + row]);
+      }
+      keys[band] = key;
+      List<Integer> candidates = bandTables.get(key);
+      if (candidates != null) {
+        for (int slot : candidates) {
+          if (similarity(signature, signatures[slot]) >= threshold) {
+            nearDuplicates++;
+            return true;
+          }
+        }
+      }
+    }
+    add(exactHash, signature, keys);
+    return false;
+  }
+
+  private void add(long exactHash, int[] signature, long[] keys) {
+    int slot = next;
+    if (size == maxDocuments) {
+      evict(slot);
+    } else {
+      size++;
+    }
+    signatures[slot] = signature;
+    exactHashes[slot] = exactHash;
+    bandKeys[slot] = keys;
+    exactTable.put(exactHash, slot);
+    for (long key : keys) {
+      List<Integer> slots = bandTables.get(key);
+      if (slots == null) {
+        slots = new ArrayList<Integer>(1);
+        bandTables.put(key, slots);
+      }
+      slots.add(slot);
+    }
+    next = (next + 1) % maxDocuments;
+  }
+
+  private void evict(int slot) {
+    exactTable.remove(exactHashes[slot]);
+    for (long key : bandKeys[slot]) {
+      List<Integer> slots = bandTables.get(key);
+      slots.remove(Integer.valueOf(slot));
+      if (slots.isEmpty()) {
+        bandTables.remove(key);
+      }
+    }
+  }
+
+  private static String[] normalise(String text) {
+    String normalised = text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    return normalised.isEmpty() ? new String[0] : normalised.split(" ");
+  }
+
+  private int[] signature(String[] words) {
+    int[] signature = new int[numHashes];
+    long[] minima = new long[numHashes];
+    Arrays.fill(minima, Long.MAX_VALUE);
+    int shingles = Math.max(1, words.length - shingleSize + 1);
+    for (int start = 0; start < shingles; start++) {
+      long shingle = 0x84222325CBF29CE4L;
+      for (int i = start; i < Math.min(words.length, start + shingleSize); i++) {
+        shingle = hash(words[i], shingle);
+      }
+      for (int i = 0; i < numHashes; i++) {
+        // One hash function per signature position, by seeding the mix
+        long value = mix(shingle + (i + 1) * 0x9E3779B97F4A7C15L) & Long.MAX_VALUE;
+        if (value < minima[i]) {
+          minima[i] = value;
+        }
+      }
+    }
+    for (int i = 0; i < numHashes; i++) {
+      signature[i] = (int) minima[i];
+    }
+    return signature;
+  }
+
+  private static double similarity(int[] a, int[] b) {
+    int equal = 0;
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] == b[i]) {
+        equal++;
+      }
+    }
+    return equal / (double) a.length;
+  }
+
+  // FNV-1a over the characters, continuing from the given hash
+  private static long hash(String text, long hash) {
+    for (int i = 0; i < text.length(); i++) {
+      hash ^= text.charAt(i);
+      hash *= 0x100000001B3L;
+    }
+    return mix(hash);
+  }
+
+  // Finaliser of MurmurHash3
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB93FE1A85A93L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * @return Number of exact duplicates seen so far.
+   */
+  public int getExactDuplicates() {
+    return exactDuplicates;
+  }
+
+  /**
+   * @return Number of near duplicates seen so far.
+   */
+  public int getNearDuplicates() {
+    return nearDuplicates;
+  }
+
+  @Override
+  public String toString() {
+    return "[Duplicates: Exact = " + exactDuplicates + ", Near = " + nearDuplicates + ", Kept Signatures = "
+        + size + "]";
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Log of the searched queries, replayed to warm up the new searchers
+ * Created on 2026-10-19
+ */
+package ir_course;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Counts of the searched queries, see LuceneSearchApp.setWarmup(). A query is
+ * kept as the URL encoded parameters of SearchServer's /search
+ * ("inTitle=...&startDate=..."). A log file line is the count of a query and
+ * the query, the query strings of a server access log (without counts) can
+ * also be replayed as they are. The number of distinct queries is bounded:
+ * when the log is full, the counts are halved and the queries seen once are
+ * dropped, the frequent ones stay. The methods are thread safe.
+ */
+public class QueryLog {
+  private final int maxQueries;
+  // query -> number of searches, in first search order
+  private final Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+
+  /**
+   * @param maxQueries Maximum number of distinct queries kept.
+   */
+  public QueryLog(int maxQueries) {
+    this.maxQueries = maxQueries;
+  }
+
+  /**
+   * Reads a log file, one "count&lt;TAB&gt;query" line per query (see write()),
+   * a line without a count is one search of the query, blank lines are
+   * skipped.
+   *
+   * @param path The log file.
+   * @param maxQueries Maximum number of distinct queries kept.
+   * @return The log, with the counts of the file.
+   * @throws IOException If the file couldn't be read.
+   */
+  public static QueryLog read(Path path, int maxQueries) throws IOException {
+    QueryLog log = new QueryLog(maxQueries);
+    try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String query = line.trim();
+        int count = 1;
+        int tab = line.indexOf('\t');
+        if (tab > 0) {
+          try {
+            count = Integer.parseInt(line.substring(0, tab));
+            query = line.substring(tab + 1).trim();
+          } catch (NumberFormatException e) {
+            // Not a count, the tab is part of the query
+          }
+        }
+        if (!query.isEmpty() && count > 0) {
+          log.add(query, count);
+        }
+      }
+    }
+    return log;
+  }
+
+  /**
+   * Writes the queries, the most frequent first, one "count&lt;TAB&gt;query"
+   * line per query, so the file grows with the distinct queries and read()
+   * gives back the same counts.
+   *
+   * @param path The log file.
+   * @throws IOException If the file couldn't be written.
+   */
+  public void write(Path path) throws IOException {
+    List<Map.Entry<String, Integer>> entries;
+    synchronized (this) {
+      entries = new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+    }
+    // Stable, the ties keep their first search order
+    Collections.sort(entries, (a, b) -> b.getValue() - a.getValue());
+    try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, Integer> entry : entries) {
+        out.write(entry.getValue() + "\t" + entry.getKey());
+        out.newLine();
+      }
+    }
+  }
+
+  /**
+   * @return The query as a log line, the parameters of LuceneSearchApp.search()
+   *         URL encoded.
+   */
+  public static String toLine(List<String> inTitle, List<String> notInTitle,
+      List<String> inDescription, List<String> notInDescription, String startDate,
+      String endDate) {
+    StringBuilder line = new StringBuilder();
+    appendParameter(line, "inTitle", inTitle);
+    appendParameter(line, "notInTitle", notInTitle);
+    appendParameter(line, "inDescription", inDescription);
+    appendParameter(line, "notInDescription", notInDescription);
+    appendParameter(line, "startDate",
+        startDate == null ? null : Collections.singletonList(startDate));
+    appendParameter(line, "endDate", endDate == null ? null : Collections.singletonList(endDate));
+    return line.toString();
+  }
+
+  private static void appendParameter(StringBuilder line, String name, List<String> values) {
+    if (values == null) {
+      return;
+    }
+    try {
+      for (String value : values) {
+        line.append(line.length() > 0 ? "&" : "").append(name).append('=')
+            .append(URLEncoder.encode(value, "UTF-8"));
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * @param line A log line, see toLine().
+   * @return The values of every parameter of the query.
+   */
+  public static Map<String, List<String>> parse(String line) {
+    return SearchServer.parseParameters(line);
+  }
+
+  /**
+   * @param line A searched query, see toLine().
+   */
+  public void record(String line) {
+    add(line, 1);
+  }
+
+  private synchronized void add(String line, int searches) {
+    Integer count = counts.get(line);
+    if (count == null && counts.size() >= maxQueries) {
+      decay();
+    }
+    counts.put(line, count == null ? searches : count + searches);
+  }
+
+  // Halves the counts, the queries seen once go
+  private void decay() {
+    for (Iterator<Map.Entry<String, Integer>> entries = counts.entrySet().iterator();
+        entries.hasNext();) {
+      Map.Entry<String, Integer> entry = entries.next();
+      if (entry.getValue() <= 1) {
+        entries.remove();
+      } else {
+        entry.setValue(entry.getValue() / 2);
+      }
+    }
+  }
+
+  /**
+   * @param n Number of queries.
+   * @return The n most frequent queries, the most frequent first.
+   */
+  public List<String> getTopQueries(int n) {
+    List<Map.Entry<String, Integer>> entries;
+    synchronized (this) {
+      entries = new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+    }
+    Collections.sort(entries, (a, b) -> b.getValue() - a.getValue());
+    List<String> top = new ArrayList<String>();
+    for (Map.Entry<String, Integer> entry : entries.subList(0, Math.min(n, entries.size()))) {
+      top.add(entry.getKey());
+    }
+    return top;
+  }
+
+  /**
+   * @return The number of distinct queries.
+   */
+  public synchronized int size() {
+    return counts.size();
+  }
+
+  /**
+   * Simulates the start of a server with a query log: indexes most of the
+   * feed and ingests the rest (a reopen), and after each of them measures
+   * the first searches of a Zipf distributed traffic against the steady
+   * state. Run it in a fresh JVM with and without warmup to see the JIT
+   * compilation cost too.
+   *
+   * Usage: QueryLog feed.xml [warmup queries]
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0) {
+      RssFeedParser parser = new RssFeedParser();
+      parser.parse(args[0]);
+      List<RssFeedDocument> docs = parser.getDocuments();
+      int warmupQueries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+      // Title word queries, a fourth of them restricted to the week of the
+      // item the word comes from
+      Random random = new Random(42);
+      List<String> distinct = new ArrayList<String>();
+      for (int i = 0; i < 500; i++) {
+        RssFeedDocument doc = docs.get(random.nextInt(docs.size()));
+        String[] words = doc.getTitle().toLowerCase().replaceAll("[^\\p{L}\\p{N}]+", " ").trim()
+            .split(" ");
+        List<String> inTitle = new LinkedList<String>();
+        inTitle.add(words[random.nextInt(words.length)]);
+        String startDate = null;
+        String endDate = null;
+        if (i % 4 == 0) {
+          LocalDate day = doc.getPubDate().toInstant().atZone(ZoneId.of("UTC")).toLocalDate();
+          startDate = day.minusDays(3).toString();
+          endDate = day.plusDays(3).toString();
+        }
+        distinct.add(toLine(inTitle, null, null, null, startDate, endDate));
+      }
+      // Zipf : the query of rank r is searched in proportion to 1 / r
+      double[] cumulative = new double[distinct.size()];
+      for (int r = 0; r < cumulative.length; r++) {
+        cumulative[r] = (r == 0 ? 0 : cumulative[r - 1]) + 1.0 / (r + 1);
+      }
+      List<String> traffic = new ArrayList<String>();
+      for (int i = 0; i < 20000; i++) {
+        int r = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+        traffic.add(distinct.get(r < 0 ? -r - 1 : r));
+      }
+      // The log of the previous run of the server
+      QueryLog log = new QueryLog(10000);
+      for (String line : traffic.subList(0, 10000)) {
+        log.record(line);
+      }
+
+      LuceneSearchApp engine = new LuceneSearchApp();
+      engine.setVerbose(false);
+      engine.setFaceting(true);
+      engine.setWarmup(log, warmupQueries);
+      int split = docs.size() * 9 / 10;
+      long start = System.nanoTime();
+      engine.index(docs.subList(0, split));
+      double indexMs = (System.nanoTime() - start) / 1e6;
+      String afterIndex = measure(engine, traffic.subList(10000, 10200));
+      start = System.nanoTime();
+      engine.ingest(docs.subList(split, docs.size()));
+      double ingestMs = (System.nanoTime() - start) / 1e6;
+      String afterIngest = measure(engine, traffic.subList(10200, 10400));
+      String steady = measure(engine, traffic.subList(10400, 20000));
+      System.out.println(String.format("warmup with the top %d of %d logged queries", warmupQueries,
+          log.size()));
+      System.out.println(String.format("  index()  %7.1f ms, then %s", indexMs, afterIndex));
+      System.out.println(String.format("  ingest() %7.1f ms, then %s", ingestMs, afterIngest));
+      System.out.println(String.format("  steady state : %s", steady));
+      engine.close();
+    } else
+      System.out.println(
+          "ERROR: the path of a RSS Feed file has to be passed as a command line argument.");
+  }
+
+  // Mean and max latency of the searches
+  private static String measure(LuceneSearchApp engine, List<String> lines) throws IOException {
+    long total = 0;
+    long max = 0;
+    for (String line : lines) {
+      Map<String, List<String>> params = parse(line);
+      long start = System.nanoTime();
+      engine.search(params.get("inTitle"), null, null, null, getFirst(params, "startDate"),
+          getFirst(params, "endDate"));
+      long nanos = System.nanoTime() - start;
+      total += nanos;
+      max = Math.max(max, nanos);
+    }
+    return String.format("%d searches : mean %.3f ms, max %.3f ms", lines.size(),
+        total / 1e6 / lines.size(), max / 1e6);
+  }
+
+  private static String getFirst(Map<String, List<String>> params, String name) {
+    List<String> values = params.get(name);
+    return values == null ? null : values.get(0);
+  }
+}
@@ -34,6 +34,9 @@ public class RssFeedParser extends DefaultHandler {
 	
 	private RssFeedDocument currentDoc;
 	
+	// optional, drops duplicate items while parsing
+	private NearDuplicateDetector deduplicator;
+	
 	public RssFeedParser() {
 		this.docs = new LinkedList<RssFeedDocument>();
 		
@@ -64,6 +67,12 @@ public class RssFeedParser extends DefaultHandler {
 		return this.docs;
 	}
 	
+	// items which are (near) duplicates of an earlier item are dropped, e.g.
+	// the same story seen in several polls of the feed
+	public void setDeduplicator(NearDuplicateDetector deduplicator) {
+		this.deduplicator = deduplicator;
+	}
+	
 	
 	// methods for the SAX parser below
 	
@@ -83,7 +92,8 @@ public class RssFeedParser extends DefaultHandler {
 	public void endElement(String uri, String localName, String qName)  {
 		if (qName.equals("item")) {
 			this.item = false;
-			if (this.currentDoc.getTitle() != null)
+			if (this.currentDoc.getTitle() != null && (this.deduplicator == null
+					|| !this.deduplicator.isDuplicate(null, this.currentDoc.getTitle(), this.currentDoc.getDescription())))
 				docs.add(this.currentDoc);
 		}
 		else if (qName.equals("title"))
@@ -0,0 +1,147 @@
+/*
+ * Generator for synthetic RSS feeds of any size
+ * Created on 2026-10-19
+ */
+package ir_course;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates RSS feeds with the schema of bbc_rss_feed.xml (readable by
+ * RssFeedParser). The word distributions and lengths of the titles and
+ * descriptions and the publication dates are sampled from a source feed. The
+ * output is deterministic for a given source feed and seed.
+ */
+public class RssFeedScaler {
+
+  private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+  private final Words titleWords = new Words();
+  private final Words descriptionWords = new Words();
+  private final List<Integer> titleLengths = new ArrayList<Integer>();
+  private final List<Integer> descriptionLengths = new ArrayList<Integer>();
+  private final List<Date> pubDates = new ArrayList<Date>();
+
+  /**
+   * Unigram distribution, sampled by a binary search over the cumulative counts.
+   */
+  private static class Words {
+    private final Map<String, Integer> counts = new HashMap<String, Integer>();
+    private String[] words;
+    private long[] cumulative;
+
+    int add(String text) {
+      int length = 0;
+      for (String word : (text == null ? "" : text).split("\\s+")) {
+        if (!word.isEmpty()) {
+          counts.merge(word, 1, Integer::sum);
+          length++;
+        }
+      }
+      return length;
+    }
+
+    void freeze() {
+      words = counts.keySet().toArray(new String[counts.size()]);
+      Arrays.sort(words);
+      cumulative = new long[words.length];
+      long sum = 0;
+      for (int i = 0; i < words.length; i++) {
+        sum += counts.get(words[i]);
+        cumulative[i] = sum;
+      }
+    }
+
+    String text(int length, Random random) {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < length; i++) {
+        long draw = (long) (random.nextDouble() * cumulative[cumulative.length - 1]);
+        int index = Arrays.binarySearch(cumulative, draw + 1);
+        text.append(i > 0 ? " " : "").append(words[index >= 0 ? index : -index - 1]);
+      }
+      return text.toString();
+    }
+  }
+
+  public RssFeedScaler(List<RssFeedDocument> source) {
+    for (RssFeedDocument doc : source) {
+      titleLengths.add(Math.max(1, titleWords.add(doc.getTitle())));
+      descriptionLengths.add(Math.max(1, descriptionWords.add(doc.getDescription())));
+      if (doc.getPubDate() != null) {
+        pubDates.add(doc.getPubDate());
+      }
+    }
+    if (titleWords.counts.isEmpty() || descriptionWords.counts.isEmpty() || pubDates.isEmpty()) {
+      throw new IllegalArgumentException("The source feed has no usable items");
+    }
+    titleWords.freeze();
+    descriptionWords.freeze();
+  }
+
+  /**
+   * Writes a feed of numItems generated items.
+   *
+   * @param path Output file.
+   * @param numItems Number of items to generate.
+   * @param historyDays The publication dates of the source are shifted back by a random number of
+   *        whole days in [0, historyDays), 0 keeps the date distribution of the source.
+   * @param seed Random seed.
+   * @throws IOException If the feed couldn't be written.
+   */
+  public void generate(String path, long numItems, int historyDays, long seed) throws IOException {
+    Random random = new Random(seed);
+    DateFormat formatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+    formatter.setTimeZone(TimeZone.getTimeZone("GMT"));
+    try (Writer out = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8), 1 << 16)) {
+      out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rss version=\"2.0\">\n  <channel>\n");
+      for (long i = 0; i < numItems; i++) {
+        String title = titleWords.text(titleLengths.get(random.nextInt(titleLengths.size())), random);
+        String description = descriptionWords
+            .text(descriptionLengths.get(random.nextInt(descriptionLengths.size())), random);
+        long pubDate = pubDates.get(random.nextInt(pubDates.size())).getTime();
+        if (historyDays > 0) {
+          pubDate -= random.nextInt(historyDays) * DAY_MILLIS;
+        }
+        out.write("    <item>\n      <title>" + escape(title) + "</title>\n      <description>"
+            + escape(description) + "</description>\n      <pubDate>"
+            + formatter.format(new Date(pubDate)) + "</pubDate>\n    </item>\n");
+      }
+      out.write("  </channel>\n</rss>\n");
+    }
+  }
+
+  private static String escape(String text) {
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length > 2) {
+      RssFeedParser parser = new RssFeedParser();
+      parser.parse(args[0]);
+      RssFeedScaler scaler = new RssFeedScaler(parser.getDocuments());
+      int historyDays = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+      long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+      scaler.generate(args[1], Long.parseLong(args[2]), historyDays, seed);
+      System.out.println("Generated " + args[2] + " items into " + args[1]);
+    } else
+      System.out.println(
+          "ERROR: Usage: RssFeedScaler source.xml output.xml numItems [historyDays] [seed]");
+  }
+}
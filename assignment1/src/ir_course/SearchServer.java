@@ -0,0 +1,321 @@
+/*
+ * Embedded HTTP/JSON server for the RSS feed search
+ * Created on 2026-10-19
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the structured search of LuceneSearchApp over HTTP with JSON
+ * responses, using the HTTP server of the JDK:
+ * <ul>
+ * <li>GET /search?inTitle=kim&amp;inTitle=korea&amp;notInDescription=iraq&amp;
+ * startDate=2011-12-18&amp;endDate=2011-12-18, every parameter of
+ * LuceneSearchApp.search() is optional and can be repeated,</li>
+ * <li>GET /stats, the request counters.</li>
+ * </ul>
+ * The handlers never wait for a search: they run the admission control (at
+ * most maxConcurrent searches running or queued, the other requests get a 503
+ * at once), hand the search to a pool of one thread per core and return. A
+ * timer answers 504 to the requests whose search isn't done within the
+ * timeout, a search whose request already timed out is skipped. So many
+ * concurrent requests only cost their connections, not a thread each. The
+ * handlers run on virtual threads when the JVM has them (Java 21), on a few
+ * platform threads otherwise.
+ */
+public class SearchServer {
+
+  private final LuceneSearchApp engine;
+  private final HttpServer server;
+  private final ExecutorService handlers;
+  private final ExecutorService searches;
+  private final ScheduledExecutorService timer;
+  private final Semaphore admission;
+  private final long timeoutMs;
+  private final boolean virtualThreads;
+  private final AtomicLong served = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong timedOut = new AtomicLong();
+
+  /**
+   * @param engine The engine to search, index() must have been called.
+   * @param port The port to listen on, 0 for any free port.
+   * @param maxConcurrent Maximum number of searches running or waiting.
+   * @param timeoutMs Time after which a request is answered 504.
+   * @throws IOException If the port couldn't be bound.
+   */
+  public SearchServer(LuceneSearchApp engine, int port, int maxConcurrent, long timeoutMs)
+      throws IOException {
+    this.engine = engine;
+    this.admission = new Semaphore(maxConcurrent);
+    this.timeoutMs = timeoutMs;
+    ExecutorService virtual = newVirtualThreadExecutor();
+    this.virtualThreads = virtual != null;
+    this.handlers = virtual != null ? virtual : Executors.newFixedThreadPool(4, daemon("handler"));
+    this.searches = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+        daemon("search"));
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemon("timeout"));
+    // The timeouts cancelled by the searches answered in time leave the queue
+    timer.setRemoveOnCancelPolicy(true);
+    this.timer = timer;
+    server = HttpServer.create(new InetSocketAddress(port), 1024);
+    server.setExecutor(handlers);
+    server.createContext("/search", this::search);
+    server.createContext("/stats", this::stats);
+  }
+
+  // Executors.newVirtualThreadPerTaskExecutor() through reflection, the code
+  // is compiled for Java 8. Null if the JVM has no virtual threads.
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  private static ThreadFactory daemon(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stops listening, the searches running are abandoned.
+   */
+  public void stop() {
+    server.stop(0);
+    handlers.shutdownNow();
+    searches.shutdownNow();
+    timer.shutdownNow();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void search(HttpExchange exchange) throws IOException {
+    Map<String, List<String>> params;
+    try {
+      params = parseParameters(exchange.getRequestURI().getRawQuery());
+    } catch (IllegalArgumentException e) {
+      send(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+      return;
+    }
+    if (!admission.tryAcquire()) {
+      rejected.incrementAndGet();
+      send(exchange, 503, "{\"error\":\"overloaded\"}");
+      return;
+    }
+    long start = System.nanoTime();
+    AtomicBoolean answered = new AtomicBoolean();
+    // Answers 504 unless the search answers first and cancels it
+    ScheduledFuture<?> timeout = timer.schedule(() -> {
+      if (answered.compareAndSet(false, true)) {
+        timedOut.incrementAndGet();
+        send(exchange, 504, "{\"error\":\"timeout\"}");
+      }
+    }, timeoutMs, TimeUnit.MILLISECONDS);
+    try {
+      searches.execute(() -> {
+        try {
+          if (answered.get()) {
+            return;
+          }
+          String response;
+          int status = 200;
+          try {
+            List<String> results = engine.search(params.get("inTitle"), params.get("notInTitle"),
+                params.get("inDescription"), params.get("notInDescription"),
+                getFirst(params, "startDate"), getFirst(params, "endDate"));
+            response = "{\"count\":" + results.size() + ",\"tookMs\":"
+                + String.format("%.3f", (System.nanoTime() - start) / 1e6) + ",\"results\":"
+                + toJson(results) + "}";
+          } catch (IllegalArgumentException | DateTimeParseException e) {
+            status = 400;
+            response = "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}";
+          } catch (IOException e) {
+            status = 500;
+            response = "{\"error\":" + quote(e.toString()) + "}";
+          }
+          if (answered.compareAndSet(false, true)) {
+            timeout.cancel(false);
+            served.incrementAndGet();
+            send(exchange, status, response);
+          }
+        } finally {
+          admission.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      timeout.cancel(false);
+      admission.release();
+      if (answered.compareAndSet(false, true)) {
+        send(exchange, 503, "{\"error\":\"stopping\"}");
+      }
+    }
+  }
+
+  private void stats(HttpExchange exchange) {
+    send(exchange, 200,
+        "{\"served\":" + served.get() + ",\"rejected\":" + rejected.get() + ",\"timedOut\":"
+            + timedOut.get() + ",\"available\":" + admission.availablePermits()
+            + ",\"virtualThreads\":" + virtualThreads + "}");
+  }
+
+  private static void send(HttpExchange exchange, int status, String json) {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    try {
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } catch (IOException e) {
+      // The client went away
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * @param rawQuery The URL encoded query string, may be null.
+   * @return The values of every parameter, in order.
+   */
+  static Map<String, List<String>> parseParameters(String rawQuery) {
+    Map<String, List<String>> params = new HashMap<String, List<String>>();
+    if (rawQuery == null || rawQuery.isEmpty()) {
+      return params;
+    }
+    try {
+      for (String pair : rawQuery.split("&")) {
+        int equals = pair.indexOf('=');
+        String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+        String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+        params.computeIfAbsent(name, n -> new ArrayList<String>()).add(value);
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+    return params;
+  }
+
+  private static String getFirst(Map<String, List<String>> params, String name) {
+    List<String> values = params.get(name);
+    return values == null ? null : values.get(0);
+  }
+
+  private static String toJson(List<String> values) {
+    StringBuilder json = new StringBuilder("[");
+    for (String value : values) {
+      json.append(json.length() > 1 ? "," : "").append(quote(value));
+    }
+    return json.append("]").toString();
+  }
+
+  static String quote(String value) {
+    StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+    for (char c : value.toCharArray()) {
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    return json.append('"').toString();
+  }
+
+  /**
+   * Usage: SearchServer feed.xml [port] [maxConcurrent] [timeoutMs] [queryLog]
+   *
+   * With a query log file, the searcher is warmed up with the most frequent
+   * queries of the log, and the log of this run is written back to the file
+   * on exit for the next start.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0) {
+      RssFeedParser parser = new RssFeedParser();
+      parser.setDeduplicator(new NearDuplicateDetector());
+      parser.parse(args[0]);
+      LuceneSearchApp engine = new LuceneSearchApp();
+      if (args.length > 4) {
+        Path logPath = Paths.get(args[4]);
+        QueryLog log = Files.exists(logPath) ? QueryLog.read(logPath, 10000) : new QueryLog(10000);
+        engine.setWarmup(log, 200);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+          try {
+            log.write(logPath);
+          } catch (IOException e) {
+            System.out.println("Couldn't write the query log : " + e);
+          }
+        }));
+      }
+      engine.index(parser.getDocuments());
+      engine.setVerbose(false);
+      int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+      int maxConcurrent = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+      long timeoutMs = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+      SearchServer server = new SearchServer(engine, port, maxConcurrent, timeoutMs);
+      server.start();
+      System.out.println("Listening on http://localhost:" + server.getPort() + "/search"
+          + (server.virtualThreads ? " (virtual threads)" : ""));
+    } else
+      System.out.println(
+          "ERROR: the path of a RSS Feed file has to be passed as a command line argument.");
+  }
+}
@@ -31,11 +31,29 @@ import org.apache.lucene.search.similarities.Similarity;
  *
  */
 public class Configuration {
+	// Positions between two values of a field, more than any phrase slop
+	private static final int POSITION_INCREMENT_GAP = 100;
 
 	private boolean removeStopWords = false;
 	private String stemmer = "";
 	private String similarity = "";
 	private Similarity usedSim = null;
+	// Field weights for the multi-field (BM25F style) ranking mode, 0 means
+	// that only the abstract_text field is searched.
+	private int titleWeight = 0;
+	private int abstractWeight = 0;
+	// Two pass retrieval with pseudo relevance feedback (RM3)
+	private boolean relevanceFeedback = false;
+	// Share of the hashed vector similarity in the hybrid score, 0 means
+	// lexical ranking only.
+	private float vectorWeight = 0f;
+	// Boost of the documents where adjacent query terms are close to each
+	// other, 0 means the term order is ignored.
+	private float proximityBoost = 0f;
+	private int proximitySlop = 0;
+	// Maximum number of cached stems per analysis thread, 0 means every token
+	// goes through the stemmer.
+	private int stemCacheSize = 0;
 
 	/**
 	 * Specify the configurations as Constants.*
@@ -57,15 +75,52 @@ public class Configuration {
 		this.similarity = similarity;
 	}
 
+	/**
+	 * Multi-field configuration, title and abstract_text are both used for
+	 * ranking. The weights are integer term frequency multipliers, the title
+	 * and abstract are indexed into a single Constants.TITLE_ABSTRACT field
+	 * where every title token counts titleWeight times and every abstract
+	 * token abstractWeight times. Scoring that field with BM25 is BM25F with a
+	 * shared length normalisation, and it needs only one pass over the
+	 * combined postings instead of a disjunction of per-field queries.
+	 * 
+	 * @param stopWords
+	 *            from {Constants.REMOVE_STOP_WORDS,
+	 *            Constants.NO_REMOVE_STOP_WORDS}
+	 * @param stemmer
+	 *            from {Constants.PORTER_STEMMER, Constants.ENGLISH_STEMMER,
+	 *            Constants.ENGLISH_MIN_STEMMER, Constants.K_STEMMER}
+	 * @param similarity
+	 *            from {Constants.BM25, Constants.TFIDF}
+	 * @param titleWeight
+	 *            Weight of the title field (>= 1).
+	 * @param abstractWeight
+	 *            Weight of the abstract_text field (>= 1).
+	 */
+	public Configuration(String stopWords, String stemmer, String similarity, int titleWeight, int abstractWeight) {
+		this(stopWords, stemmer, similarity);
+		if (titleWeight < 1 || abstractWeight < 1) {
+			throw new IllegalArgumentException("Field weights must be >= 1, got title = " + titleWeight
+					+ ", abstract = " + abstractWeight);
+		}
+		this.titleWeight = titleWeight;
+		this.abstractWeight = abstractWeight;
+	}
+
 	/**
 	 * Generates an Analyzer with the given stemming method and StopWord (Remove
-	 * or Not) as specified in the Constructor.
+	 * or Not) as specified in the Constructor. The Analyzer keeps the
+	 * components of each thread and reuses them for every document and query
+	 * of the thread, the stop word set is a CharArraySet looked up on the term
+	 * buffer, and with setStemCache() the Snowball stemmers are behind a
+	 * StemCacheFilter.
 	 * 
 	 * @param StemmingMethod
 	 * @param removeStopWords
 	 * @return Analyzer
 	 */
 	private Analyzer BuildSnowballAnalyzer(String StemmingMethod, boolean removeStopWords) {
+		final int stemCacheSize = this.stemCacheSize;
 		Analyzer analyzer = new Analyzer() {
 			@Override
 			protected TokenStreamComponents createComponents(String fieldName) {
@@ -78,25 +133,139 @@ public class Configuration {
 					result = new StopFilter(result, EnglishAnalyzer.getDefaultStopSet());
 				}
 				// Use the specified Stemming Method
-				if (StemmingMethod == Constants.PORTER_STEMMER) {
-					result = new SnowballFilter(result, new org.tartarus.snowball.ext.PorterStemmer());
-				} else if (StemmingMethod == Constants.K_STEMMER) {
-					result = new KStemFilter(result);
-				} else if (StemmingMethod == Constants.ENG_MIN_STEMMER) {
-					result = new EnglishMinimalStemFilter(result);
-				} else if (StemmingMethod == Constants.ENGLISH_STEMMER) {
-					result = new SnowballFilter(result, new org.tartarus.snowball.ext.EnglishStemmer());
+				if (stemCacheSize > 0 && (StemmingMethod == Constants.PORTER_STEMMER
+						|| StemmingMethod == Constants.ENGLISH_STEMMER)) {
+					result = new StemCacheFilter(result, input -> stem(StemmingMethod, input), stemCacheSize);
+				} else {
+					result = stem(StemmingMethod, result);
 				}
 				return new TokenStreamComponents(source, result);
 			}
+
+			// The values of a multi-valued field (the copies of
+			// Constants.TITLE_ABSTRACT) are never adjacent
+			@Override
+			public int getPositionIncrementGap(String fieldName) {
+				return POSITION_INCREMENT_GAP;
+			}
 		};
 		return analyzer;
 	}
 
+	private static TokenStream stem(String StemmingMethod, TokenStream result) {
+		if (StemmingMethod == Constants.PORTER_STEMMER) {
+			result = new SnowballFilter(result, new org.tartarus.snowball.ext.PorterStemmer());
+		} else if (StemmingMethod == Constants.K_STEMMER) {
+			result = new KStemFilter(result);
+		} else if (StemmingMethod == Constants.ENG_MIN_STEMMER) {
+			result = new EnglishMinimalStemFilter(result);
+		} else if (StemmingMethod == Constants.ENGLISH_STEMMER) {
+			result = new SnowballFilter(result, new org.tartarus.snowball.ext.EnglishStemmer());
+		}
+		return result;
+	}
+
 	public boolean isStopWordUsed() {
 		return removeStopWords;
 	}
 
+	/**
+	 * @return true if title and abstract_text are ranked together through the
+	 *         Constants.TITLE_ABSTRACT field.
+	 */
+	public boolean isMultiField() {
+		return titleWeight > 0;
+	}
+
+	/**
+	 * @return The field queries are parsed against.
+	 */
+	public String getSearchField() {
+		return isMultiField() ? Constants.TITLE_ABSTRACT : Constants.ABSTRACT_TEXT;
+	}
+
+	/**
+	 * @param relevanceFeedback
+	 *            If true the queries are expanded with pseudo relevance
+	 *            feedback (RM3), see RelevanceFeedback.
+	 */
+	public void setRelevanceFeedback(boolean relevanceFeedback) {
+		this.relevanceFeedback = relevanceFeedback;
+	}
+
+	public boolean isRelevanceFeedbackUsed() {
+		return relevanceFeedback;
+	}
+
+	/**
+	 * @param vectorWeight
+	 *            Weight in [0, 1] of the vector similarity in the hybrid
+	 *            lexical + vector score, see VectorIndex. 0 disables the
+	 *            vector search.
+	 */
+	public void setVectorWeight(float vectorWeight) {
+		if (vectorWeight < 0 || vectorWeight > 1) {
+			throw new IllegalArgumentException("Vector weight must be in [0, 1] : " + vectorWeight);
+		}
+		this.vectorWeight = vectorWeight;
+	}
+
+	public float getVectorWeight() {
+		return vectorWeight;
+	}
+
+	/**
+	 * @param slop
+	 *            Maximum number of positions allowed between two adjacent
+	 *            query terms, 0 means they must be next to each other.
+	 * @param boost
+	 *            Weight of each matching term pair relative to the original
+	 *            query, see ProximityQueries. 0 disables the proximity
+	 *            scoring.
+	 */
+	public void setProximity(int slop, float boost) {
+		if (slop < 0 || boost < 0) {
+			throw new IllegalArgumentException("Proximity slop and boost must be >= 0 : " + slop + ", " + boost);
+		}
+		this.proximitySlop = slop;
+		this.proximityBoost = boost;
+	}
+
+	public int getProximitySlop() {
+		return proximitySlop;
+	}
+
+	public float getProximityBoost() {
+		return proximityBoost;
+	}
+
+	public int getTitleWeight() {
+		return titleWeight;
+	}
+
+	public int getAbstractWeight() {
+		return abstractWeight;
+	}
+
+	/**
+	 * @param maxEntries
+	 *            Maximum number of stems cached by each analysis thread, see
+	 *            StemCacheFilter. 0 disables the cache. Only the Snowball
+	 *            stemmers (Porter, English) are cached, KStem has its own
+	 *            cache and the minimal English stemmer is cheaper than a
+	 *            lookup. Call it before getAnalyzer().
+	 */
+	public void setStemCache(int maxEntries) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException("Stem cache size must be >= 0 : " + maxEntries);
+		}
+		this.stemCacheSize = maxEntries;
+	}
+
+	public int getStemCache() {
+		return stemCacheSize;
+	}
+
 	/**
 	 * @return The Lucene Similarity object as specified in the constructor
 	 */
@@ -121,6 +290,11 @@ public class Configuration {
 	@Override
 	public String toString() {
 		return "[Configuration: Removing Stop Words = " + removeStopWords + ", Stemmer = " + stemmer + ", Similarity = "
-				+ similarity + "]";
+				+ similarity + (isMultiField()
+						? ", Field Weights = title:" + titleWeight + " abstract_text:" + abstractWeight : "")
+				+ (relevanceFeedback ? ", Feedback = RM3" : "")
+				+ (vectorWeight > 0 ? ", Vector Weight = " + vectorWeight : "")
+				+ (proximityBoost > 0 ? ", Proximity = slop:" + proximitySlop + " boost:" + proximityBoost : "")
+				+ (stemCacheSize > 0 ? ", Stem Cache = " + stemCacheSize : "") + "]";
 	}
 }
\ No newline at end of file
@@ -25,4 +25,6 @@ public class Constants {
 	public static final String ABSTRACT_TEXT = "abstract_text";
 	public static final String TITLE = "title";
 	public static final String RELEVANCE = "relevance";
+	public static final String TITLE_ABSTRACT = "title_abstract";
+	public static final String SEARCH_TASK_NUMBER = "search_task_number";
 }
@@ -0,0 +1,388 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic document collections of any size with the schema of
+ * corpus_part2.xml. The statistics of the source collection are learned per
+ * (search_task_number, relevance) class: the share of documents in the class,
+ * the query of the task, the word distributions of the titles and abstracts
+ * and their length distributions. A generated document first draws its class
+ * and then its words, so the search task and relevance label distribution is
+ * kept and relevant documents still use the vocabulary of relevant documents.
+ *
+ * The output is deterministic for a given source collection and seed. It is
+ * written as XML (readable by DocumentCollectionParser) or as a binary
+ * snapshot which is much faster to load, see readCorpus().
+ */
+public class CorpusScaler {
+	// First bytes of a binary snapshot
+	private static final int SNAPSHOT_MAGIC = 0x49524353;
+	private static final int SNAPSHOT_VERSION = 1;
+
+	private List<DocumentClass> classes = new ArrayList<DocumentClass>();
+	private long[] cumulativeClassCounts;
+
+	/**
+	 * Documents sharing a search task number and a relevance label.
+	 */
+	private static class DocumentClass {
+		int searchTaskNumber;
+		boolean relevant;
+		String query;
+		int count = 0;
+		WordDistribution titleWords = new WordDistribution();
+		WordDistribution abstractWords = new WordDistribution();
+		LengthDistribution titleLengths = new LengthDistribution();
+		LengthDistribution abstractLengths = new LengthDistribution();
+	}
+
+	/**
+	 * Unigram distribution, sampled by a binary search over the cumulative
+	 * counts.
+	 */
+	private static class WordDistribution {
+		private Map<String, Integer> counts = new HashMap<String, Integer>();
+		private String[] words;
+		private long[] cumulative;
+
+		void add(String word) {
+			counts.merge(word, 1, Integer::sum);
+		}
+
+		void freeze() {
+			// Sorted so that the sampling doesn't depend on the HashMap order
+			words = counts.keySet().toArray(new String[counts.size()]);
+			Arrays.sort(words);
+			cumulative = new long[words.length];
+			long sum = 0;
+			for (int i = 0; i < words.length; i++) {
+				sum += counts.get(words[i]);
+				cumulative[i] = sum;
+			}
+			counts = null;
+		}
+
+		String sample(Random random) {
+			return words[CorpusScaler.sample(cumulative, random)];
+		}
+	}
+
+	/**
+	 * Empirical distribution of the number of words in a field.
+	 */
+	private static class LengthDistribution {
+		private int[] lengths = new int[16];
+		private int count = 0;
+
+		void add(int length) {
+			if (count == lengths.length) {
+				lengths = Arrays.copyOf(lengths, count * 2);
+			}
+			lengths[count++] = length;
+		}
+
+		int sample(Random random) {
+			return lengths[random.nextInt(count)];
+		}
+	}
+
+	/**
+	 * Learns the statistics of the given collection.
+	 *
+	 * @param source
+	 *            The collection to imitate, e.g. the documents of
+	 *            corpus_part2.xml
+	 */
+	public CorpusScaler(List<DocumentInCollection> source) {
+		if (source.isEmpty()) {
+			throw new IllegalArgumentException("Can't scale an empty collection");
+		}
+		// LinkedHashMap, the class order (and so the output) follows the source
+		Map<String, DocumentClass> byKey = new LinkedHashMap<String, DocumentClass>();
+		for (DocumentInCollection doc : source) {
+			String key = doc.getSearchTaskNumber() + ":" + doc.isRelevant();
+			DocumentClass docClass = byKey.get(key);
+			if (docClass == null) {
+				docClass = new DocumentClass();
+				docClass.searchTaskNumber = doc.getSearchTaskNumber();
+				docClass.relevant = doc.isRelevant();
+				docClass.query = doc.getQuery();
+				byKey.put(key, docClass);
+			}
+			docClass.count++;
+			docClass.titleLengths.add(addWords(docClass.titleWords, doc.getTitle()));
+			docClass.abstractLengths.add(addWords(docClass.abstractWords, doc.getAbstractText()));
+		}
+		classes.addAll(byKey.values());
+		cumulativeClassCounts = new long[classes.size()];
+		long sum = 0;
+		for (int i = 0; i < classes.size(); i++) {
+			DocumentClass docClass = classes.get(i);
+			docClass.titleWords.freeze();
+			docClass.abstractWords.freeze();
+			sum += docClass.count;
+			cumulativeClassCounts[i] = sum;
+		}
+	}
+
+	private static int addWords(WordDistribution distribution, String text) {
+		int length = 0;
+		if (text != null) {
+			for (String word : text.split("\\s+")) {
+				if (!word.isEmpty()) {
+					distribution.add(word);
+					length++;
+				}
+			}
+		}
+		// Never generate an empty field
+		if (length == 0) {
+			distribution.add("untitled");
+			length = 1;
+		}
+		return length;
+	}
+
+	/**
+	 * Index of the first cumulative count above a random draw.
+	 */
+	private static int sample(long[] cumulative, Random random) {
+		long draw = (long) (random.nextDouble() * cumulative[cumulative.length - 1]);
+		int index = Arrays.binarySearch(cumulative, draw + 1);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	private static String generateText(WordDistribution words, int length, Random random) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append(i > 0 ? " " : "").append(words.sample(random));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Generates documents one at a time and hands them to the writer, so the
+	 * collection is never materialised.
+	 *
+	 * @param numDocs
+	 *            Number of documents to generate.
+	 * @param seed
+	 *            Random seed.
+	 * @param writer
+	 *            Receives the generated documents.
+	 * @throws IOException
+	 *             If the writer fails.
+	 */
+	public void generate(long numDocs, long seed, CorpusWriter writer) throws IOException {
+		Random random = new Random(seed);
+		for (long i = 0; i < numDocs; i++) {
+			DocumentClass docClass = classes.get(sample(cumulativeClassCounts, random));
+			String title = generateText(docClass.titleWords, docClass.titleLengths.sample(random), random);
+			String abstractText = generateText(docClass.abstractWords, docClass.abstractLengths.sample(random),
+					random);
+			writer.write(new DocumentInCollection(title, abstractText, docClass.searchTaskNumber, docClass.query,
+					docClass.relevant));
+		}
+	}
+
+	/**
+	 * Generates a collection into a list, for small collections and tests.
+	 */
+	public List<DocumentInCollection> generate(int numDocs, long seed) {
+		final List<DocumentInCollection> docs = new ArrayList<DocumentInCollection>(numDocs);
+		try {
+			generate(numDocs, seed, doc -> docs.add(doc));
+		} catch (IOException e) {
+			// Can't happen, the list writer doesn't do IO
+			throw new IllegalStateException(e);
+		}
+		return docs;
+	}
+
+	/**
+	 * Receives the generated documents.
+	 */
+	public interface CorpusWriter {
+		void write(DocumentInCollection doc) throws IOException;
+	}
+
+	/**
+	 * Writes documents in the corpus_part2.xml format.
+	 */
+	public static class XmlCorpusWriter implements CorpusWriter, Closeable {
+		private Writer out;
+
+		public XmlCorpusWriter(String path) throws IOException {
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8),
+					1 << 16);
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<results>\n");
+		}
+
+		@Override
+		public void write(DocumentInCollection doc) throws IOException {
+			out.write("  <item>\n    <title>");
+			out.write(escape(doc.getTitle()));
+			out.write("</title>\n\t<abstract>");
+			out.write(escape(doc.getAbstractText()));
+			out.write("</abstract>\n\t<search_task_number>");
+			out.write(Integer.toString(doc.getSearchTaskNumber()));
+			out.write("</search_task_number>\n\t<query>");
+			out.write(escape(doc.getQuery()));
+			out.write("</query>\n\t<relevance>");
+			out.write(doc.isRelevant() ? "1" : "0");
+			out.write("</relevance>\n  </item>\n");
+		}
+
+		private static String escape(String text) {
+			if (text == null) {
+				return "";
+			}
+			return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.write("</results>\n");
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes documents in a binary snapshot format: a header followed by
+	 * length prefixed UTF-8 fields, terminated by a record with task -1.
+	 */
+	public static class SnapshotCorpusWriter implements CorpusWriter, Closeable {
+		private DataOutputStream out;
+
+		public SnapshotCorpusWriter(String path) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+		}
+
+		@Override
+		public void write(DocumentInCollection doc) throws IOException {
+			out.writeInt(doc.getSearchTaskNumber());
+			out.writeBoolean(doc.isRelevant());
+			writeString(doc.getTitle());
+			writeString(doc.getAbstractText());
+			writeString(doc.getQuery());
+		}
+
+		private void writeString(String text) throws IOException {
+			byte[] bytes = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.writeInt(-1);
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a binary snapshot written by SnapshotCorpusWriter.
+	 *
+	 * @param path
+	 *            Path of the snapshot.
+	 * @return The documents of the snapshot.
+	 * @throws IOException
+	 *             If the file couldn't be read or isn't a snapshot.
+	 */
+	public static List<DocumentInCollection> readSnapshot(String path) throws IOException {
+		List<DocumentInCollection> docs = new ArrayList<DocumentInCollection>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+				throw new IOException("Not a corpus snapshot : " + path);
+			}
+			int searchTaskNumber;
+			while ((searchTaskNumber = in.readInt()) != -1) {
+				boolean relevant = in.readBoolean();
+				String title = readString(in);
+				String abstractText = readString(in);
+				String query = readString(in);
+				docs.add(new DocumentInCollection(title, abstractText, searchTaskNumber, query, relevant));
+			}
+		} catch (EOFException e) {
+			throw new IOException("Truncated corpus snapshot : " + path, e);
+		}
+		return docs;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Loads a collection from XML (DocumentCollectionParser) or, if the path
+	 * ends with ".bin", from a binary snapshot.
+	 *
+	 * @param path
+	 *            Path of the collection.
+	 * @return The documents of the collection.
+	 * @throws IOException
+	 *             If the snapshot couldn't be read.
+	 */
+	public static List<DocumentInCollection> readCorpus(String path) throws IOException {
+		if (path.endsWith(".bin")) {
+			return readSnapshot(path);
+		}
+		DocumentCollectionParser parser = new DocumentCollectionParser();
+		parser.parse(path);
+		return parser.getDocuments();
+	}
+
+	/**
+	 * Usage: CorpusScaler source.xml output.(xml|bin) numDocs [seed]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 2) {
+			long numDocs = Long.parseLong(args[2]);
+			long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+			CorpusScaler scaler = new CorpusScaler(readCorpus(args[0]));
+
+			long start = System.nanoTime();
+			if (args[1].endsWith(".bin")) {
+				try (SnapshotCorpusWriter writer = new SnapshotCorpusWriter(args[1])) {
+					scaler.generate(numDocs, seed, writer);
+				}
+			} else {
+				try (XmlCorpusWriter writer = new XmlCorpusWriter(args[1])) {
+					scaler.generate(numDocs, seed, writer);
+				}
+			}
+			System.out.println("Generated " + numDocs + " documents into " + args[1] + " in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		} else
+			System.out.println("ERROR: Usage: CorpusScaler source.xml output.(xml|bin) numDocs [seed]");
+	}
+}
@@ -33,6 +33,9 @@ public class DocumentCollectionParser extends DefaultHandler {
 	private String currentText;
 	private DocumentInCollection currentDoc;
 	
+	// optional, drops duplicate items while parsing
+	private NearDuplicateDetector deduplicator;
+	
 	public DocumentCollectionParser() {
 		this.docs = new LinkedList<DocumentInCollection>();
 		
@@ -63,6 +66,12 @@ public class DocumentCollectionParser extends DefaultHandler {
 		return this.docs;
 	}
 	
+	// items which are (near) duplicates of an earlier item of the same search
+	// task are dropped, documents of different tasks are never compared
+	public void setDeduplicator(NearDuplicateDetector deduplicator) {
+		this.deduplicator = deduplicator;
+	}
+	
 	
 	// methods for the SAX parser below
 	
@@ -88,7 +97,9 @@ public class DocumentCollectionParser extends DefaultHandler {
 		this.currentText = this.currentText.trim();
 		if (qName.equals("item")) {
 			this.item = false;
-			if (this.currentDoc.getTitle() != null)
+			if (this.currentDoc.getTitle() != null && (this.deduplicator == null
+					|| !this.deduplicator.isDuplicate(String.valueOf(this.currentDoc.getSearchTaskNumber()),
+							this.currentDoc.getTitle(), this.currentDoc.getAbstractText())))
 				docs.add(this.currentDoc);
 		}
 		else if (qName.equals("title")) {
@@ -12,6 +12,9 @@ public class DocumentInCollection {
 	private int searchTaskNumber;
 	private String query;
 	private boolean relevant;
+	// Set by the search engine for the first results page, null otherwise
+	private String highlightedTitle;
+	private String snippet;
 	
 	public DocumentInCollection() {
 		this(null, null, 0, null, false);
@@ -65,6 +68,22 @@ public class DocumentInCollection {
 		this.relevant = relevant;
 	}
 
+	public String getHighlightedTitle() {
+		return highlightedTitle;
+	}
+
+	public void setHighlightedTitle(String highlightedTitle) {
+		this.highlightedTitle = highlightedTitle;
+	}
+
+	public String getSnippet() {
+		return snippet;
+	}
+
+	public void setSnippet(String snippet) {
+		this.snippet = snippet;
+	}
+
 	public String toString() {
 		return "Title: "+title+"\n abstract: "+abstractText+"\n search task number: "+searchTaskNumber+"\n query: "+query+"\n relevant: "+relevant;
 	}
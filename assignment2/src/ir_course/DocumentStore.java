@@ -0,0 +1,358 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.codecs.compressing.CompressionMode;
+import org.apache.lucene.codecs.compressing.Compressor;
+import org.apache.lucene.codecs.compressing.Decompressor;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRefBuilder;
+
+/**
+ * Off heap copy of stored text fields, for the hydration of the hits without
+ * the Document, Field and String objects of IndexReader.document(). The
+ * documents are grouped into blocks of about BLOCK_SIZE bytes compressed with
+ * LZ4 (Lucene's CompressionMode.FAST), the file is memory mapped. File
+ * layout:
+ *
+ * <pre>
+ * header : magic, version, numDocs, numFields, field names (length prefixed UTF-8)
+ * blocks : rawLength, LZ4 compressed bytes (the UTF-8 values of the documents, in order)
+ * table  : per document, long blockPosition, int start in the block, int[numFields] lengths
+ * footer : long table position
+ * </pre>
+ *
+ * The values are read through a Cursor, which holds the decoding buffers of
+ * one thread and keeps the last decompressed block.
+ */
+public class DocumentStore implements Closeable {
+	private static final int MAGIC = 0x49524453;
+	private static final int VERSION = 1;
+	// Uncompressed size of a block : smaller blocks are faster to read one
+	// document from, larger ones compress better
+	private static final int BLOCK_SIZE = 4096;
+
+	private int numDocs;
+	private String[] fields;
+	private int entrySize;
+	private long tablePosition;
+	private MappedByteBuffer buffer;
+	// Set by close(), read by the threads of the searches
+	private volatile boolean closed = false;
+
+	/**
+	 * Writes the stored values of the given fields of every document of the
+	 * reader, the deleted ones included.
+	 *
+	 * @param reader
+	 *            Reader of the index.
+	 * @param fieldNames
+	 *            Stored fields to copy, a missing value is stored empty.
+	 * @param path
+	 *            File to write.
+	 * @throws IOException
+	 *             If the stored fields couldn't be read, the file written or
+	 *             if it would be over 2 GB.
+	 */
+	public static void write(IndexReader reader, String[] fieldNames, Path path) throws IOException {
+		int maxDoc = reader.maxDoc();
+		Set<String> fieldSet = new HashSet<String>(Arrays.asList(fieldNames));
+		long[] blockPositions = new long[maxDoc];
+		int[] starts = new int[maxDoc];
+		int[] lengths = new int[maxDoc * fieldNames.length];
+		Compressor compressor = CompressionMode.FAST.newCompressor();
+		try (OutputStream file = Files.newOutputStream(path);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(maxDoc);
+			out.writeInt(fieldNames.length);
+			for (String field : fieldNames) {
+				byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			ByteArrayOutputStream block = new ByteArrayOutputStream(2 * BLOCK_SIZE);
+			for (int doc = 0; doc < maxDoc; doc++) {
+				if (block.size() >= BLOCK_SIZE) {
+					writeBlock(out, block, compressor);
+				}
+				blockPositions[doc] = checkPosition(out.size(), path);
+				starts[doc] = block.size();
+				Document document = reader.document(doc, fieldSet);
+				for (int f = 0; f < fieldNames.length; f++) {
+					String value = document.get(fieldNames[f]);
+					byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+					lengths[doc * fieldNames.length + f] = bytes.length;
+					block.write(bytes);
+				}
+			}
+			writeBlock(out, block, compressor);
+			long tablePosition = out.size();
+			// The end of the file, checked before the table is written
+			checkPosition(tablePosition + (long) maxDoc * (12 + 4 * fieldNames.length) + 8, path);
+			for (int doc = 0; doc < maxDoc; doc++) {
+				out.writeLong(blockPositions[doc]);
+				out.writeInt(starts[doc]);
+				for (int f = 0; f < fieldNames.length; f++) {
+					out.writeInt(lengths[doc * fieldNames.length + f]);
+				}
+			}
+			out.writeLong(tablePosition);
+		}
+	}
+
+	// The file is mapped as one buffer, so its positions are ints.
+	// DataOutputStream.size() stops at Integer.MAX_VALUE instead of
+	// overflowing, which this rejects too.
+	private static long checkPosition(long position, Path path) throws IOException {
+		if (position >= Integer.MAX_VALUE) {
+			throw new IOException("Document store over 2 GB, the limit of the mapping : " + path);
+		}
+		return position;
+	}
+
+	private static void writeBlock(DataOutputStream out, ByteArrayOutputStream block, Compressor compressor)
+			throws IOException {
+		if (block.size() == 0) {
+			return;
+		}
+		out.writeInt(block.size());
+		compressor.compress(block.toByteArray(), 0, block.size(), new OutputStreamDataOutput(out));
+		block.reset();
+	}
+
+	/**
+	 * Memory maps a document store written by write().
+	 *
+	 * @param path
+	 *            The document store file.
+	 * @return The opened document store.
+	 * @throws IOException
+	 *             If the file couldn't be mapped or isn't a document store.
+	 */
+	public static DocumentStore open(Path path) throws IOException {
+		DocumentStore store = new DocumentStore();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			store.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer in = store.buffer.duplicate();
+		if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+			throw new IOException("Not a document store : " + path);
+		}
+		store.numDocs = in.getInt();
+		store.fields = new String[in.getInt()];
+		for (int f = 0; f < store.fields.length; f++) {
+			byte[] bytes = new byte[in.getInt()];
+			in.get(bytes);
+			store.fields[f] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		store.entrySize = 12 + 4 * store.fields.length;
+		store.tablePosition = store.buffer.getLong(store.buffer.capacity() - 8);
+		return store;
+	}
+
+	/**
+	 * @return Number of documents (the maxDoc of the index).
+	 */
+	public int getNumDocs() {
+		return numDocs;
+	}
+
+	/**
+	 * @return The size of the file in bytes.
+	 */
+	public long getSizeInBytes() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * @param docId
+	 *            The document.
+	 * @param field
+	 *            One of the stored fields.
+	 * @param cursor
+	 *            The buffers of the calling thread.
+	 * @return The value of the field, a view on the buffers of the cursor
+	 *         which is valid until the next read of the same field with the
+	 *         same cursor.
+	 * @throws IllegalStateException
+	 *             If the store is closed.
+	 * @throws IOException
+	 *             If the block is corrupt.
+	 */
+	public CharSequence get(int docId, String field, Cursor cursor) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("The document store is closed");
+		}
+		int f = getFieldIndex(field);
+		int entry = (int) (tablePosition + (long) entrySize * docId);
+		long blockPosition = buffer.getLong(entry);
+		int start = buffer.getInt(entry + 8);
+		for (int i = 0; i < f; i++) {
+			start += buffer.getInt(entry + 12 + 4 * i);
+		}
+		int length = buffer.getInt(entry + 12 + 4 * f);
+		if (cursor.store != this) {
+			cursor.input.buffer = buffer.duplicate();
+			cursor.store = this;
+			cursor.blockPosition = -1;
+		}
+		if (cursor.blockPosition != blockPosition || cursor.decoded < start + length) {
+			// Decompresses the block up to the end of the value
+			cursor.input.buffer.position((int) blockPosition + 4);
+			cursor.decompressor.decompress(cursor.input, buffer.getInt((int) blockPosition), 0, start + length,
+					cursor.block);
+			cursor.blockPosition = blockPosition;
+			cursor.decoded = start + length;
+		}
+		if (cursor.values.length <= f) {
+			cursor.values = Arrays.copyOf(cursor.values, fields.length);
+		}
+		if (cursor.values[f] == null) {
+			cursor.values[f] = new CharsRefBuilder();
+		}
+		cursor.values[f].copyUTF8Bytes(cursor.block.bytes, start, length);
+		return cursor.values[f].get();
+	}
+
+	private int getFieldIndex(String field) {
+		for (int f = 0; f < fields.length; f++) {
+			if (fields[f].equals(field)) {
+				return f;
+			}
+		}
+		throw new IllegalArgumentException("Field not in the document store : " + field);
+	}
+
+	/**
+	 * @return A new cursor, it can read any store but only from one thread.
+	 */
+	public static Cursor newCursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Closes the store, the reads afterwards fail. The mapping is released
+	 * when the store is garbage collected, so a read racing with close()
+	 * still reads a valid mapping.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Measures the hydration of the top 100 hits of the synthetic queries
+	 * from the stored fields and from the document store: latency, and bytes
+	 * allocated per query by the searching thread.
+	 *
+	 * Usage: DocumentStore corpus.(xml|bin) [queries]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+			List<String> queries = LoadGenerator.syntheticQueries(docs, numQueries, 3, 42);
+			Configuration config = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+					.getThreadMXBean();
+			long threadId = Thread.currentThread().getId();
+			for (boolean stored : new boolean[] { false, true }) {
+				LuceneSearchApp engine = new LuceneSearchApp(config);
+				Path storePath = Files.createTempFile("documents", ".store");
+				storePath.toFile().deleteOnExit();
+				if (stored) {
+					engine.enableDocumentStore(storePath);
+				}
+				engine.index(docs);
+				engine.setVerbose(false);
+				LatencyStats latencies = new LatencyStats();
+				long allocated = 0;
+				// Twice, the first round warms up the JIT
+				for (int round = 0; round < 2; round++) {
+					long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+					for (String query : queries) {
+						long start = System.nanoTime();
+						List<DocumentInCollection> results = engine.search(query, 100);
+						for (DocumentInCollection result : results) {
+							result.getTitle();
+						}
+						latencies.record(System.nanoTime() - start);
+					}
+					allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+					if (round == 0) {
+						latencies = new LatencyStats();
+					}
+				}
+				System.out.println(String.format("%-16s : %.1f KB allocated per query, search %s",
+						stored ? "document store" : "stored fields", allocated / 1e3 / queries.size(), latencies));
+				if (stored) {
+					System.out.println(String.format("document store   : %.1f KB for %d documents",
+							Files.size(storePath) / 1e3, docs.size()));
+				}
+				engine.close();
+			}
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+
+	/**
+	 * The decoding buffers of one thread, reused by every read.
+	 */
+	public static class Cursor {
+		private Decompressor decompressor = CompressionMode.FAST.newDecompressor();
+		private MappedInput input = new MappedInput();
+		private BytesRef block = new BytesRef();
+		private CharsRefBuilder[] values = new CharsRefBuilder[0];
+		// The block in the buffer and its decompressed length
+		private DocumentStore store;
+		private long blockPosition = -1;
+		private int decoded;
+
+		private Cursor() {
+		}
+	}
+
+	// Lucene input over a duplicate of the mapping owned by a cursor
+	private static class MappedInput extends DataInput {
+		private ByteBuffer buffer;
+
+		@Override
+		public byte readByte() {
+			return buffer.get();
+		}
+
+		@Override
+		public void readBytes(byte[] b, int offset, int len) {
+			buffer.get(b, offset, len);
+		}
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Ranking metrics of a query computed in one pass over the relevance of the
+ * ranked results: average precision, reciprocal rank, R-precision, P@k and
+ * nDCG@k for the configured cutoffs, and the 11 point interpolated precision
+ * (0 at the recall levels which weren't reached, so it is defined at partial
+ * recall, unlike SearchResultStats.getElevenPointPR()). The relevance is
+ * binary, as in RelevanceJudgments.
+ *
+ * The metrics of a query are written into a double[] (see getNames() for the
+ * order), and an Aggregate collects them across the queries in a primitive
+ * array. An EvaluationMetrics is immutable and can be shared by threads.
+ */
+public class EvaluationMetrics {
+	/**
+	 * Index of the average precision.
+	 */
+	public static final int AP = 0;
+	/**
+	 * Index of the reciprocal rank of the first relevant result.
+	 */
+	public static final int RR = 1;
+	/**
+	 * Index of the precision at rank R, R being the number of relevant
+	 * documents.
+	 */
+	public static final int R_PRECISION = 2;
+	private static final int RECALL_LEVELS = 11;
+
+	private int[] cutoffs;
+	private String[] names;
+	// discounts[i] = 1 / log2(i + 2), the DCG discount of rank i + 1
+	private double[] discounts;
+
+	/**
+	 * @param cutoffs
+	 *            The ranks k of the P@k and nDCG@k metrics, e.g. 5, 10, 20.
+	 */
+	public EvaluationMetrics(int... cutoffs) {
+		this.cutoffs = cutoffs.clone();
+		Arrays.sort(this.cutoffs);
+		List<String> names = new ArrayList<String>(Arrays.asList("AP", "RR", "R-prec"));
+		for (int k : this.cutoffs) {
+			if (k <= 0) {
+				throw new IllegalArgumentException("Invalid cutoff : " + k);
+			}
+			names.add("P@" + k);
+		}
+		for (int k : this.cutoffs) {
+			names.add("nDCG@" + k);
+		}
+		for (int level = 0; level < RECALL_LEVELS; level++) {
+			names.add(String.format("iP@%.1f", level / 10.0));
+		}
+		this.names = names.toArray(new String[names.size()]);
+		int maxCutoff = this.cutoffs.length == 0 ? 0 : this.cutoffs[this.cutoffs.length - 1];
+		discounts = new double[maxCutoff];
+		for (int i = 0; i < maxCutoff; i++) {
+			discounts[i] = 1 / (Math.log(i + 2) / Math.log(2));
+		}
+	}
+
+	/**
+	 * @return The names of the metrics, in the order of evaluate().
+	 */
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	/**
+	 * @return Index of P@k in the metrics.
+	 */
+	public int getPrecisionIndex(int k) {
+		return 3 + getCutoffIndex(k);
+	}
+
+	/**
+	 * @return Index of nDCG@k in the metrics.
+	 */
+	public int getNdcgIndex(int k) {
+		return 3 + cutoffs.length + getCutoffIndex(k);
+	}
+
+	/**
+	 * @return Index of the interpolated precision at the recall level / 10.
+	 */
+	public int getInterpolatedPrecisionIndex(int level) {
+		if (level < 0 || level >= RECALL_LEVELS) {
+			throw new IllegalArgumentException("Invalid recall level : " + level);
+		}
+		return 3 + 2 * cutoffs.length + level;
+	}
+
+	private int getCutoffIndex(int k) {
+		int index = Arrays.binarySearch(cutoffs, k);
+		if (index < 0) {
+			throw new IllegalArgumentException("Not a configured cutoff : " + k);
+		}
+		return index;
+	}
+
+	/**
+	 * @return A new array for the metrics of a query.
+	 */
+	public double[] newValues() {
+		return new double[names.length];
+	}
+
+	/**
+	 * Computes the metrics of a query in one pass over the ranked results.
+	 *
+	 * @param relevant
+	 *            Relevance of the ranked results, relevant[0] being the top
+	 *            result.
+	 * @param length
+	 *            Number of results in relevant.
+	 * @param relevantInCorpus
+	 *            Number of documents relevant to the query in the collection,
+	 *            R.
+	 * @param values
+	 *            The array receiving the metrics, see newValues().
+	 * @return values.
+	 */
+	public double[] evaluate(boolean[] relevant, int length, int relevantInCorpus, double[] values) {
+		Arrays.fill(values, 0);
+		if (relevantInCorpus <= 0) {
+			// Nothing to find, every metric is 0 (as in trec_eval)
+			return values;
+		}
+		int iP = getInterpolatedPrecisionIndex(0);
+		int hits = 0;
+		int cutoff = 0;
+		double precisionSum = 0;
+		double dcg = 0;
+		for (int rank = 1; rank <= length; rank++) {
+			if (relevant[rank - 1]) {
+				hits++;
+				double precision = (double) hits / rank;
+				precisionSum += precision;
+				if (hits == 1) {
+					values[RR] = 1.0 / rank;
+				}
+				if (rank <= discounts.length) {
+					dcg += discounts[rank - 1];
+				}
+				// The interpolated precision at a recall level is the best
+				// precision at this recall or above
+				for (int level = Math.min(RECALL_LEVELS - 1, 10 * hits / relevantInCorpus); level >= 0
+						&& values[iP + level] < precision; level--) {
+					values[iP + level] = precision;
+				}
+			}
+			if (rank == relevantInCorpus) {
+				values[R_PRECISION] = (double) hits / relevantInCorpus;
+			}
+			while (cutoff < cutoffs.length && cutoffs[cutoff] == rank) {
+				setCutoffValues(values, cutoff++, hits, dcg, relevantInCorpus);
+			}
+		}
+		// The ranking is shorter than the last cutoffs or than R
+		while (cutoff < cutoffs.length) {
+			setCutoffValues(values, cutoff++, hits, dcg, relevantInCorpus);
+		}
+		if (length < relevantInCorpus) {
+			values[R_PRECISION] = (double) hits / relevantInCorpus;
+		}
+		values[AP] = precisionSum / relevantInCorpus;
+		return values;
+	}
+
+	private void setCutoffValues(double[] values, int cutoff, int hits, double dcg, int relevantInCorpus) {
+		int k = cutoffs[cutoff];
+		values[3 + cutoff] = (double) hits / k;
+		double idealDcg = 0;
+		for (int i = 0; i < Math.min(k, relevantInCorpus); i++) {
+			idealDcg += discounts[i];
+		}
+		values[3 + cutoffs.length + cutoff] = dcg / idealDcg;
+	}
+
+	/**
+	 * Metrics of several queries, kept per query in one primitive array.
+	 * Adding is thread safe.
+	 */
+	public class Aggregate {
+		private double[] rows = new double[64 * names.length];
+		private int count = 0;
+
+		/**
+		 * @param values
+		 *            The metrics of a query, from evaluate().
+		 */
+		public synchronized void add(double[] values) {
+			if ((count + 1) * names.length > rows.length) {
+				rows = Arrays.copyOf(rows, rows.length * 2);
+			}
+			System.arraycopy(values, 0, rows, count * names.length, names.length);
+			count++;
+		}
+
+		/**
+		 * @return The number of queries.
+		 */
+		public synchronized int getCount() {
+			return count;
+		}
+
+		/**
+		 * @param metric
+		 *            Index of the metric.
+		 * @return The mean of the metric over the queries (e.g. the MAP for
+		 *         AP), 0 if there are none.
+		 */
+		public synchronized double getMean(int metric) {
+			double sum = 0;
+			for (int q = 0; q < count; q++) {
+				sum += rows[q * names.length + metric];
+			}
+			return count == 0 ? 0 : sum / count;
+		}
+
+		/**
+		 * @param metric
+		 *            Index of the metric.
+		 * @return The value of the metric for every query, in order (e.g.
+		 *         for SignificanceTests).
+		 */
+		public synchronized double[] getValues(int metric) {
+			double[] values = new double[count];
+			for (int q = 0; q < count; q++) {
+				values[q] = rows[q * names.length + metric];
+			}
+			return values;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder("[Mean Metrics: Queries = " + getCount());
+			for (int metric = 0; metric < names.length; metric++) {
+				out.append(String.format(", %s = %.4f", names[metric], getMean(metric)));
+			}
+			return out.append("]").toString();
+		}
+	}
+
+	/**
+	 * @return A new empty aggregate of these metrics.
+	 */
+	public Aggregate newAggregate() {
+		return new Aggregate();
+	}
+
+	/**
+	 * Evaluates synthetic rankings (relevant results more likely at the top)
+	 * with SearchResultStats and with EvaluationMetrics, prints the time per
+	 * query of both and the largest difference of their average precisions
+	 * at full recall.
+	 *
+	 * Usage: EvaluationMetrics [queries] [ranking length]
+	 */
+	public static void main(String[] args) {
+		int numQueries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int length = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		Random random = new Random(42);
+		boolean[][] rankings = new boolean[numQueries][length];
+		int[] relevantCounts = new int[numQueries];
+		for (int q = 0; q < numQueries; q++) {
+			for (int rank = 0; rank < length; rank++) {
+				rankings[q][rank] = random.nextDouble() < 0.5 * Math.exp(-rank / (length / 10.0));
+				relevantCounts[q] += rankings[q][rank] ? 1 : 0;
+			}
+		}
+		EvaluationMetrics metrics = new EvaluationMetrics(5, 10, 20, 100);
+		// Twice, the first round warms up the JIT
+		for (int round = 0; round < 2; round++) {
+			long start = System.nanoTime();
+			double[] statsAP = new double[numQueries];
+			for (int q = 0; q < numQueries; q++) {
+				List<DocumentInCollection> results = new ArrayList<DocumentInCollection>(length);
+				for (boolean relevant : rankings[q]) {
+					results.add(new DocumentInCollection(null, null, 0, null, relevant));
+				}
+				SearchResultStats stats = new SearchResultStats(results, relevantCounts[q]);
+				statsAP[q] = stats.getAverage_precision();
+			}
+			double statsMs = (System.nanoTime() - start) / 1e6;
+
+			start = System.nanoTime();
+			Aggregate aggregate = metrics.newAggregate();
+			double[] values = metrics.newValues();
+			for (int q = 0; q < numQueries; q++) {
+				aggregate.add(metrics.evaluate(rankings[q], length, relevantCounts[q], values));
+			}
+			double metricsMs = (System.nanoTime() - start) / 1e6;
+			if (round == 1) {
+				double[] ap = aggregate.getValues(AP);
+				double maxDiff = 0;
+				for (int q = 0; q < numQueries; q++) {
+					maxDiff = Math.max(maxDiff, Math.abs(ap[q] - statsAP[q]));
+				}
+				System.out.println(String.format(
+						"%d queries x %d results : SearchResultStats %.1f us per query (AP, 11 point PR), "
+								+ "EvaluationMetrics %.1f us per query (%d metrics), max AP difference %.2e",
+						numQueries, length, statsMs * 1e3 / numQueries, metricsMs * 1e3 / numQueries,
+						metrics.names.length, maxDiff));
+				System.out.println(aggregate);
+			}
+		}
+	}
+}
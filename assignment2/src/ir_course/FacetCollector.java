@@ -0,0 +1,210 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Counts the hits per search task, and the relevant hits per search task,
+ * while the hits are collected (wrap it with the top docs collector in a
+ * MultiCollector), so the facets cost no second query. The task numbers are
+ * read once per reader from the search_task_number doc values into an array
+ * (see loadTasks()), random doc values reads per hit being several times
+ * slower on a RAMDirectory. The hits are also marked in a bitmap of words,
+ * which is intersected with the RelevanceJudgments once at the end (a bit
+ * count per word and task) instead of looking up every hit.
+ *
+ * The collector still visits every hit of the query, while a 10 hit page
+ * alone mostly compares scores, so the engine counts the facets only on
+ * request, see LuceneSearchApp.search(queryString, maxHits, withFacets).
+ */
+public class FacetCollector extends SimpleCollector {
+	private RelevanceJudgments judgments;
+	private int[] taskByDoc;
+	private int docBase;
+	// Bits of the hits with a task, by doc id
+	private long[] hits;
+	// Indexed by task number
+	private int[] taskCounts = new int[8];
+	private int total = 0;
+
+	/**
+	 * Immutable facet counts of a search.
+	 */
+	public static class Counts {
+		private SortedMap<Integer, Integer> taskCounts;
+		private SortedMap<Integer, Integer> relevantCounts;
+		private int total;
+
+		private Counts(SortedMap<Integer, Integer> taskCounts, SortedMap<Integer, Integer> relevantCounts,
+				int total) {
+			this.taskCounts = Collections.unmodifiableSortedMap(taskCounts);
+			this.relevantCounts = Collections.unmodifiableSortedMap(relevantCounts);
+			this.total = total;
+		}
+
+		/**
+		 * @return Number of hits per search task number, tasks without hits
+		 *         are left out.
+		 */
+		public SortedMap<Integer, Integer> getTaskCounts() {
+			return taskCounts;
+		}
+
+		/**
+		 * @return Number of relevant hits per search task number, for the
+		 *         tasks in getTaskCounts().
+		 */
+		public SortedMap<Integer, Integer> getRelevantCounts() {
+			return relevantCounts;
+		}
+
+		/**
+		 * @return Number of counted hits.
+		 */
+		public int getTotal() {
+			return total;
+		}
+
+		@Override
+		public String toString() {
+			return "[Facets: Hits = " + total + ", Per Task = " + taskCounts + ", Relevant Per Task = "
+					+ relevantCounts + "]";
+		}
+	}
+
+	/**
+	 * @param judgments
+	 *            The relevance judgments, keyed by doc id.
+	 * @param taskByDoc
+	 *            The search task numbers of the reader, see loadTasks().
+	 */
+	public FacetCollector(RelevanceJudgments judgments, int[] taskByDoc) {
+		this.judgments = judgments;
+		this.taskByDoc = taskByDoc;
+		this.hits = new long[(taskByDoc.length + 63) >>> 6];
+	}
+
+	/**
+	 * Reads the search task numbers of all the documents of a reader.
+	 *
+	 * @param reader
+	 *            The reader.
+	 * @return The task numbers by doc id, -1 for a document without one.
+	 * @throws IOException
+	 *             If the doc values couldn't be read.
+	 */
+	public static int[] loadTasks(IndexReader reader) throws IOException {
+		int[] taskByDoc = new int[reader.maxDoc()];
+		for (LeafReaderContext leaf : reader.leaves()) {
+			NumericDocValues tasks = DocValues.getNumeric(leaf.reader(), Constants.SEARCH_TASK_NUMBER);
+			Bits docsWithTask = DocValues.getDocsWithField(leaf.reader(), Constants.SEARCH_TASK_NUMBER);
+			for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+				taskByDoc[leaf.docBase + doc] = docsWithTask.get(doc) ? (int) tasks.get(doc) : -1;
+			}
+		}
+		return taskByDoc;
+	}
+
+	@Override
+	protected void doSetNextReader(LeafReaderContext context) throws IOException {
+		docBase = context.docBase;
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		total++;
+		int id = docBase + doc;
+		int task = taskByDoc[id];
+		if (task < 0) {
+			return;
+		}
+		if (task >= taskCounts.length) {
+			taskCounts = Arrays.copyOf(taskCounts, Math.max(task + 1, 2 * taskCounts.length));
+		}
+		taskCounts[task]++;
+		hits[id >>> 6] |= 1L << id;
+	}
+
+	@Override
+	public boolean needsScores() {
+		return false;
+	}
+
+	/**
+	 * @return The counts of the hits collected so far.
+	 */
+	public Counts getCounts() {
+		SortedMap<Integer, Integer> tasksWithHits = new TreeMap<Integer, Integer>();
+		SortedMap<Integer, Integer> relevantWithHits = new TreeMap<Integer, Integer>();
+		for (int task = 0; task < taskCounts.length; task++) {
+			if (taskCounts[task] > 0) {
+				tasksWithHits.put(task, taskCounts[task]);
+				relevantWithHits.put(task, judgments.getRelevantCount(task, hits));
+			}
+		}
+		return new Counts(tasksWithHits, relevantWithHits, total);
+	}
+
+	/**
+	 * Measures the cost of the facets: the same synthetic queries are searched
+	 * with and without faceting, for a 10 hit page (the facet cache is
+	 * disabled).
+	 *
+	 * Usage: FacetCollector corpus.(xml|bin) [queries]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+			List<String> queries = LoadGenerator.syntheticQueries(docs, numQueries, 3, 42);
+			LuceneSearchApp engine = new LuceneSearchApp(
+					new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25));
+			engine.index(docs);
+			engine.setVerbose(false);
+			engine.setFacetCacheSize(0);
+
+			long[] plain = new long[numQueries];
+			long[] faceted = new long[numQueries];
+			// Twice, the first round warms up the JIT
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < numQueries; i++) {
+					long start = System.nanoTime();
+					engine.search(queries.get(i), 10, false);
+					plain[i] = System.nanoTime() - start;
+					start = System.nanoTime();
+					engine.search(queries.get(i), 10, true);
+					faceted[i] = System.nanoTime() - start;
+				}
+			}
+			long plainSum = 0;
+			long facetedSum = 0;
+			for (int i = 0; i < numQueries; i++) {
+				plainSum += plain[i];
+				facetedSum += faceted[i];
+			}
+			System.out.println(engine.getFacets());
+			System.out.println(String.format(
+					"%d documents, %d queries : search = %.3f ms, faceted search = %.3f ms (+%.1f%%)", docs.size(),
+					numQueries, plainSum / 1e6 / numQueries, facetedSum / 1e6 / numQueries,
+					100.0 * (facetedSum - plainSum) / plainSum));
+			engine.close();
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+}
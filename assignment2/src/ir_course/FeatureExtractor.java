@@ -0,0 +1,138 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Computes the re-ranking features of a batch of hits. Term frequencies and
+ * lengths come from the forward index and the collection statistics (document
+ * frequencies, average lengths) are looked up once per batch, so no text is
+ * analysed per hit.
+ */
+public class FeatureExtractor {
+	public static final String[] FEATURE_NAMES = { "first stage score", "BM25 abstract", "TFIDF abstract",
+			"BM25 title", "title coverage", "log abstract length", "title length" };
+	public static final int NUM_FEATURES = FEATURE_NAMES.length;
+
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+
+	private IndexReader reader;
+	private ForwardIndex forwardIndex;
+	private double avgAbstractLength;
+	private double avgTitleLength;
+
+	/**
+	 * The features of a batch of hits, one row per hit.
+	 */
+	public static class Batch {
+		public int[] docIds;
+		public double[][] features;
+	}
+
+	/**
+	 * @param reader
+	 *            Reader of the index the hits come from.
+	 * @param forwardIndex
+	 *            Forward index with the title and abstract_text fields.
+	 * @throws IOException
+	 *             If the field statistics couldn't be read.
+	 */
+	public FeatureExtractor(IndexReader reader, ForwardIndex forwardIndex) throws IOException {
+		this.reader = reader;
+		this.forwardIndex = forwardIndex;
+		this.avgAbstractLength = getAverageLength(Constants.ABSTRACT_TEXT);
+		this.avgTitleLength = getAverageLength(Constants.TITLE);
+	}
+
+	private double getAverageLength(String field) throws IOException {
+		Terms terms = MultiFields.getTerms(reader, field);
+		if (terms == null || terms.getDocCount() <= 0) {
+			return 1.0;
+		}
+		return terms.getSumTotalTermFreq() / (double) terms.getDocCount();
+	}
+
+	/**
+	 * Extracts the features of the first k hits, stopping early when the
+	 * deadline is reached.
+	 *
+	 * @param queryTerms
+	 *            The analysed query terms.
+	 * @param hits
+	 *            The first stage hits, best first.
+	 * @param k
+	 *            Maximum number of hits to extract features for.
+	 * @param deadlineNanos
+	 *            System.nanoTime() after which no more hits are processed.
+	 * @return The features of the processed hits, a prefix of the hits.
+	 * @throws IOException
+	 *             If the document frequencies couldn't be read.
+	 */
+	public Batch extract(String[] queryTerms, ScoreDoc[] hits, int k, long deadlineNanos) throws IOException {
+		int numDocs = reader.numDocs();
+		double[] abstractIdf = new double[queryTerms.length];
+		double[] titleIdf = new double[queryTerms.length];
+		for (int t = 0; t < queryTerms.length; t++) {
+			abstractIdf[t] = idf(numDocs, reader.docFreq(new Term(Constants.ABSTRACT_TEXT, queryTerms[t])));
+			titleIdf[t] = idf(numDocs, reader.docFreq(new Term(Constants.TITLE, queryTerms[t])));
+		}
+
+		int n = Math.min(k, hits.length);
+		int[] docIds = new int[n];
+		double[][] features = new double[n][];
+		int processed = 0;
+		for (; processed < n; processed++) {
+			// Checking the clock every 16 hits is enough
+			if ((processed & 15) == 0 && processed > 0 && System.nanoTime() > deadlineNanos) {
+				break;
+			}
+			int doc = hits[processed].doc;
+			double abstractLength = forwardIndex.getLength(Constants.ABSTRACT_TEXT, doc);
+			double titleLength = forwardIndex.getLength(Constants.TITLE, doc);
+			double[] row = new double[NUM_FEATURES];
+			row[0] = hits[processed].score;
+			int titleMatches = 0;
+			for (int t = 0; t < queryTerms.length; t++) {
+				int abstractTf = forwardIndex.getFreq(Constants.ABSTRACT_TEXT, doc, queryTerms[t]);
+				int titleTf = forwardIndex.getFreq(Constants.TITLE, doc, queryTerms[t]);
+				row[1] += bm25(abstractTf, abstractLength, avgAbstractLength, abstractIdf[t]);
+				row[2] += Math.sqrt(abstractTf) * abstractIdf[t] * abstractIdf[t]
+						/ Math.sqrt(Math.max(1, abstractLength));
+				row[3] += bm25(titleTf, titleLength, avgTitleLength, titleIdf[t]);
+				titleMatches += titleTf > 0 ? 1 : 0;
+			}
+			row[4] = queryTerms.length == 0 ? 0 : titleMatches / (double) queryTerms.length;
+			row[5] = Math.log(1 + abstractLength);
+			row[6] = titleLength;
+			docIds[processed] = doc;
+			features[processed] = row;
+		}
+		Batch batch = new Batch();
+		batch.docIds = Arrays.copyOf(docIds, processed);
+		batch.features = Arrays.copyOf(features, processed);
+		return batch;
+	}
+
+	private static double idf(int numDocs, int docFreq) {
+		return Math.log(1 + (numDocs - docFreq + 0.5) / (docFreq + 0.5));
+	}
+
+	private static double bm25(int tf, double length, double avgLength, double idf) {
+		if (tf == 0) {
+			return 0;
+		}
+		return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Forward index: for every document and field the ids and frequencies of its
+ * analysed terms, so per hit feature extraction (feedback, re-ranking,
+ * duplicate detection...) is an array read instead of re-analysing the text.
+ *
+ * It is built by inverting the postings of an index into a file, which is
+ * then memory mapped. The term entries of a document are sorted by term id,
+ * term ids are the positions of the terms in the (sorted) term dictionary of
+ * the field. File layout, per field after a header:
+ *
+ * <pre>
+ * name, numTerms, terms (length prefixed UTF-8)
+ * long[numDocs + 1] offsets (index of the first entry of each document)
+ * int[2 * numEntries] entries (termId, freq)
+ * </pre>
+ */
+public class ForwardIndex implements Closeable {
+	private static final int MAGIC = 0x49524649;
+	private static final int VERSION = 1;
+
+	private int numDocs;
+	private Map<String, FieldData> fields = new HashMap<String, FieldData>();
+	private MappedByteBuffer buffer;
+
+	private static class FieldData {
+		String[] terms;
+		Map<String, Integer> termIds;
+		long offsetsPosition;
+		long entriesPosition;
+	}
+
+	/**
+	 * Writes the forward index of the given fields of the reader.
+	 *
+	 * @param reader
+	 *            Reader of the index to invert.
+	 * @param fieldNames
+	 *            Fields to include, fields without terms are stored empty.
+	 * @param path
+	 *            File to write.
+	 * @throws IOException
+	 *             If the postings couldn't be read or the file written.
+	 */
+	public static void write(IndexReader reader, String[] fieldNames, Path path) throws IOException {
+		int maxDoc = reader.maxDoc();
+		try (OutputStream file = Files.newOutputStream(path);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(maxDoc);
+			out.writeInt(fieldNames.length);
+			for (String field : fieldNames) {
+				writeBytes(out, field.getBytes(StandardCharsets.UTF_8));
+				Terms terms = MultiFields.getTerms(reader, field);
+				// First pass : the term dictionary and the number of entries
+				// of every document.
+				long[] offsets = new long[maxDoc + 1];
+				int numTerms = 0;
+				PostingsEnum postings = null;
+				if (terms != null) {
+					TermsEnum termsEnum = terms.iterator();
+					while (termsEnum.next() != null) {
+						numTerms++;
+						postings = termsEnum.postings(postings, PostingsEnum.NONE);
+						for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings
+								.nextDoc()) {
+							offsets[doc + 1]++;
+						}
+					}
+				}
+				out.writeInt(numTerms);
+				if (terms != null) {
+					TermsEnum termsEnum = terms.iterator();
+					BytesRef term;
+					while ((term = termsEnum.next()) != null) {
+						writeBytes(out, Arrays.copyOfRange(term.bytes, term.offset, term.offset + term.length));
+					}
+				}
+				for (int doc = 0; doc < maxDoc; doc++) {
+					offsets[doc + 1] += offsets[doc];
+				}
+				for (long offset : offsets) {
+					out.writeLong(offset);
+				}
+				// Second pass : the entries, in doc order. Iterating the terms
+				// in order keeps the entries of a document sorted by term id.
+				int numEntries = (int) offsets[maxDoc];
+				int[] entries = new int[2 * numEntries];
+				long[] next = new long[maxDoc];
+				System.arraycopy(offsets, 0, next, 0, maxDoc);
+				if (terms != null) {
+					TermsEnum termsEnum = terms.iterator();
+					int termId = 0;
+					while (termsEnum.next() != null) {
+						postings = termsEnum.postings(postings, PostingsEnum.FREQS);
+						for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings
+								.nextDoc()) {
+							int entry = (int) next[doc]++;
+							entries[2 * entry] = termId;
+							entries[2 * entry + 1] = postings.freq();
+						}
+						termId++;
+					}
+				}
+				for (int value : entries) {
+					out.writeInt(value);
+				}
+			}
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Memory maps a forward index written by write().
+	 *
+	 * @param path
+	 *            The forward index file.
+	 * @return The opened forward index.
+	 * @throws IOException
+	 *             If the file couldn't be mapped or isn't a forward index.
+	 */
+	public static ForwardIndex open(Path path) throws IOException {
+		ForwardIndex index = new ForwardIndex();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// NOTE : a single mapping, so the file is limited to 2GB.
+			index.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer in = index.buffer.duplicate();
+		if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+			throw new IOException("Not a forward index : " + path);
+		}
+		index.numDocs = in.getInt();
+		int numFields = in.getInt();
+		for (int f = 0; f < numFields; f++) {
+			String name = readString(in);
+			FieldData data = new FieldData();
+			data.terms = new String[in.getInt()];
+			data.termIds = new HashMap<String, Integer>(data.terms.length * 2);
+			for (int t = 0; t < data.terms.length; t++) {
+				data.terms[t] = readString(in);
+				data.termIds.put(data.terms[t], t);
+			}
+			data.offsetsPosition = in.position();
+			long numEntries = in.getLong((int) data.offsetsPosition + 8 * index.numDocs);
+			data.entriesPosition = data.offsetsPosition + 8L * (index.numDocs + 1);
+			in.position((int) (data.entriesPosition + 8 * numEntries));
+			index.fields.put(name, data);
+		}
+		return index;
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private FieldData getField(String field) {
+		FieldData data = fields.get(field);
+		if (data == null) {
+			throw new IllegalArgumentException("Field not in the forward index : " + field);
+		}
+		return data;
+	}
+
+	private int getFirstEntry(FieldData data, int docId) {
+		return (int) buffer.getLong((int) (data.offsetsPosition + 8L * docId));
+	}
+
+	/**
+	 * @return Number of documents (the maxDoc of the inverted index).
+	 */
+	public int getNumDocs() {
+		return numDocs;
+	}
+
+	/**
+	 * @return Number of distinct terms of the document in the field.
+	 */
+	public int getTermCount(String field, int docId) {
+		FieldData data = getField(field);
+		return getFirstEntry(data, docId + 1) - getFirstEntry(data, docId);
+	}
+
+	/**
+	 * @return The id of the i-th (by term id) term of the document.
+	 */
+	public int getTermId(String field, int docId, int i) {
+		FieldData data = getField(field);
+		return buffer.getInt((int) (data.entriesPosition + 8L * (getFirstEntry(data, docId) + i)));
+	}
+
+	/**
+	 * @return The frequency of the i-th (by term id) term of the document.
+	 */
+	public int getFreq(String field, int docId, int i) {
+		FieldData data = getField(field);
+		return buffer.getInt((int) (data.entriesPosition + 8L * (getFirstEntry(data, docId) + i) + 4));
+	}
+
+	/**
+	 * @return Number of tokens of the document in the field.
+	 */
+	public int getLength(String field, int docId) {
+		FieldData data = getField(field);
+		int first = getFirstEntry(data, docId);
+		int last = getFirstEntry(data, docId + 1);
+		int length = 0;
+		for (int entry = first; entry < last; entry++) {
+			length += buffer.getInt((int) (data.entriesPosition + 8L * entry + 4));
+		}
+		return length;
+	}
+
+	/**
+	 * @return The frequency of the term in the document, 0 if absent.
+	 */
+	public int getFreq(String field, int docId, String term) {
+		FieldData data = getField(field);
+		Integer termId = data.termIds.get(term);
+		if (termId == null) {
+			return 0;
+		}
+		// Binary search, the entries of a document are sorted by term id
+		int low = getFirstEntry(data, docId);
+		int high = getFirstEntry(data, docId + 1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = buffer.getInt((int) (data.entriesPosition + 8L * mid));
+			if (midId < termId) {
+				low = mid + 1;
+			} else if (midId > termId) {
+				high = mid - 1;
+			} else {
+				return buffer.getInt((int) (data.entriesPosition + 8L * mid + 4));
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The term with the given id in the field.
+	 */
+	public String getTerm(String field, int termId) {
+		return getField(field).terms[termId];
+	}
+
+	/**
+	 * @return Number of terms in the dictionary of the field.
+	 */
+	public int getNumTerms(String field) {
+		return getField(field).terms.length;
+	}
+
+	/**
+	 * @return true if the field is in the forward index.
+	 */
+	public boolean hasField(String field) {
+		return fields.containsKey(field);
+	}
+
+	@Override
+	public void close() {
+		// The mapping is released when the buffer is garbage collected.
+		buffer = null;
+		fields.clear();
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.Accountable;
+
+/**
+ * Where the bytes of an index go: the size of the index files by structure
+ * (terms dictionary, postings, positions, norms, stored fields...), the
+ * statistics of every field and the heap used by the directory (all of it
+ * for a RAMDirectory) and by the reader. See LuceneSearchApp.inspectIndex()
+ * and LuceneSearchApp.setLowMemory().
+ */
+public class IndexInspector {
+	// Index file extensions by structure, in report order
+	private static final String[][] STRUCTURES = { { "terms dictionary", "tim", "tip" },
+			{ "postings", "doc" }, { "positions", "pos" }, { "offsets", "pay" }, { "norms", "nvd", "nvm" },
+			{ "stored fields", "fdt", "fdx" }, { "term vectors", "tvd", "tvx" }, { "doc values", "dvd", "dvm" } };
+
+	private IndexInspector() {
+	}
+
+	/**
+	 * @param dir
+	 *            The directory of the index.
+	 * @param reader
+	 *            A reader of the last commit of the index.
+	 * @return The report of the index.
+	 * @throws IOException
+	 *             If the index couldn't be read.
+	 */
+	public static Report inspect(Directory dir, IndexReader reader) throws IOException {
+		Report report = new Report();
+		for (String[] structure : STRUCTURES) {
+			report.fileBytes.put(structure[0], 0L);
+		}
+		report.fileBytes.put("other", 0L);
+		for (SegmentCommitInfo segment : SegmentInfos.readLatestCommit(dir)) {
+			if (segment.info.getUseCompoundFile()) {
+				// The files of the segment are inside the compound file
+				try (Directory compound = segment.info.getCodec().compoundFormat().getCompoundReader(dir,
+						segment.info, IOContext.READ)) {
+					for (String file : compound.listAll()) {
+						report.fileBytes.merge(getStructure(file), compound.fileLength(file), Long::sum);
+					}
+				}
+			} else {
+				for (String file : segment.files()) {
+					report.fileBytes.merge(getStructure(file), dir.fileLength(file), Long::sum);
+				}
+			}
+		}
+
+		Map<String, FieldStats> fields = new LinkedHashMap<String, FieldStats>();
+		for (LeafReaderContext context : reader.leaves()) {
+			LeafReader leaf = context.reader();
+			for (FieldInfo info : leaf.getFieldInfos()) {
+				FieldStats stats = fields.computeIfAbsent(info.name, FieldStats::new);
+				stats.indexOptions = info.getIndexOptions();
+				stats.norms |= info.hasNorms();
+				stats.vectors |= info.hasVectors();
+				Terms terms = leaf.terms(info.name);
+				if (terms != null) {
+					// Summed over the segments, a term in several of them is
+					// counted several times
+					stats.terms += terms.size();
+					stats.postings += terms.getSumDocFreq();
+					if (terms.hasPositions()) {
+						stats.positions += terms.getSumTotalTermFreq();
+					}
+				}
+			}
+			for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+				leaf.document(doc, new StoredFieldVisitor() {
+					@Override
+					public Status needsField(FieldInfo fieldInfo) {
+						return Status.YES;
+					}
+
+					@Override
+					public void stringField(FieldInfo fieldInfo, byte[] value) {
+						fields.get(fieldInfo.name).storedBytes += value.length;
+					}
+
+					@Override
+					public void binaryField(FieldInfo fieldInfo, byte[] value) {
+						fields.get(fieldInfo.name).storedBytes += value.length;
+					}
+				});
+			}
+			if (leaf instanceof Accountable) {
+				report.readerHeapBytes += ((Accountable) leaf).ramBytesUsed();
+			}
+		}
+		report.fields.addAll(fields.values());
+		report.directoryHeapBytes = dir instanceof Accountable ? ((Accountable) dir).ramBytesUsed() : 0;
+		return report;
+	}
+
+	private static String getStructure(String file) {
+		String extension = file.substring(file.lastIndexOf('.') + 1);
+		for (String[] structure : STRUCTURES) {
+			for (int i = 1; i < structure.length; i++) {
+				if (structure[i].equals(extension)) {
+					return structure[0];
+				}
+			}
+		}
+		return "other";
+	}
+
+	/**
+	 * The statistics of one field.
+	 */
+	public static class FieldStats {
+		private String name;
+		private IndexOptions indexOptions;
+		private boolean norms;
+		private boolean vectors;
+		private long terms;
+		private long postings;
+		private long positions;
+		private long storedBytes;
+
+		private FieldStats(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Number of distinct terms.
+		 */
+		public long getTerms() {
+			return terms;
+		}
+
+		/**
+		 * @return Number of (term, document) postings.
+		 */
+		public long getPostings() {
+			return postings;
+		}
+
+		/**
+		 * @return Number of positions, 0 if the field has none.
+		 */
+		public long getPositions() {
+			return positions;
+		}
+
+		/**
+		 * @return Size of the stored values, before compression.
+		 */
+		public long getStoredBytes() {
+			return storedBytes;
+		}
+
+		public boolean hasNorms() {
+			return norms;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-18s %-40s %-5s %-7s %8d terms %9d postings %10d positions %9d stored bytes", name,
+					indexOptions, norms ? "norms" : "", vectors ? "vectors" : "", terms, postings, positions,
+					storedBytes);
+		}
+	}
+
+	/**
+	 * The report of an index, see inspect().
+	 */
+	public static class Report {
+		private Map<String, Long> fileBytes = new LinkedHashMap<String, Long>();
+		private List<FieldStats> fields = new ArrayList<FieldStats>();
+		private long directoryHeapBytes;
+		private long readerHeapBytes;
+
+		/**
+		 * @return The size of the index files by structure, e.g. "postings"
+		 *         or "norms".
+		 */
+		public Map<String, Long> getFileBytes() {
+			return fileBytes;
+		}
+
+		public long getTotalFileBytes() {
+			return fileBytes.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		public List<FieldStats> getFields() {
+			return fields;
+		}
+
+		/**
+		 * @return The heap used by the directory, the whole index for a
+		 *         RAMDirectory, 0 if the directory doesn't account for it.
+		 */
+		public long getDirectoryHeapBytes() {
+			return directoryHeapBytes;
+		}
+
+		/**
+		 * @return The heap used by the reader on top of the directory: terms
+		 *         index, norms and doc values loaded in memory...
+		 */
+		public long getReaderHeapBytes() {
+			return readerHeapBytes;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder report = new StringBuilder(String.format(
+					"files %.1f KB, directory heap %.1f KB, reader heap %.1f KB%n", getTotalFileBytes() / 1e3,
+					directoryHeapBytes / 1e3, readerHeapBytes / 1e3));
+			for (Map.Entry<String, Long> structure : fileBytes.entrySet()) {
+				if (structure.getValue() > 0) {
+					report.append(String.format("  %-16s %10.1f KB%n", structure.getKey(), structure.getValue() / 1e3));
+				}
+			}
+			for (FieldStats field : fields) {
+				report.append("  ").append(field).append(System.lineSeparator());
+			}
+			return report.toString();
+		}
+	}
+
+	/**
+	 * Indexes the corpus with every configuration variant, by default and in
+	 * the low memory mode, and prints the report of each index, the search
+	 * latency and the number of queries whose top 10 changed in the low memory
+	 * mode.
+	 *
+	 * Usage: IndexInspector corpus.(xml|bin) [queries]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+			List<String> queries = LoadGenerator.syntheticQueries(docs, numQueries, 3, 42);
+
+			List<Configuration> configs = new ArrayList<Configuration>();
+			configs.add(new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25));
+			configs.add(new Configuration(Constants.NO_REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.TFIDF));
+			configs.add(new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25, 2, 1));
+			Configuration rm3 = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			rm3.setRelevanceFeedback(true);
+			configs.add(rm3);
+			Configuration proximity = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			proximity.setProximity(2, 0.5f);
+			configs.add(proximity);
+
+			for (Configuration config : configs) {
+				List<List<String>> topTitles = new ArrayList<List<String>>();
+				for (boolean lowMemory : new boolean[] { false, true }) {
+					LuceneSearchApp engine = new LuceneSearchApp(config);
+					engine.setLowMemory(lowMemory);
+					engine.index(docs);
+					engine.setVerbose(false);
+					LatencyStats latencies = new LatencyStats();
+					List<String> titles = new ArrayList<String>();
+					// Twice, the first round warms up the JIT
+					for (int round = 0; round < 2; round++) {
+						for (String query : queries) {
+							long start = System.nanoTime();
+							List<DocumentInCollection> results = engine.search(query, 10);
+							if (round == 1) {
+								latencies.record(System.nanoTime() - start);
+								titles.add(results.stream().map(DocumentInCollection::getTitle)
+										.collect(Collectors.joining("\n")));
+							}
+						}
+					}
+					topTitles.add(titles);
+					System.out.println(config + (lowMemory ? " low memory" : ""));
+					System.out.print(engine.inspectIndex());
+					System.out.println("  search " + latencies);
+					engine.close();
+				}
+				System.out.println(String.format("  top 10 changed for %d of %d queries%n",
+						countChanged(topTitles.get(0), topTitles.get(1)), queries.size()));
+			}
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+
+	private static int countChanged(List<String> before, List<String> after) {
+		int changed = 0;
+		for (int i = 0; i < before.size(); i++) {
+			changed += before.get(i).equals(after.get(i)) ? 0 : 1;
+		}
+		return changed;
+	}
+}
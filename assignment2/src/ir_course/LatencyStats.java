@@ -0,0 +1,124 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples (in nanoseconds) and reports percentiles. Samples
+ * are kept in a primitive array, recording is thread safe. With a window only
+ * the last samples are kept (a ring buffer), so a long running process holds
+ * and sorts a bounded number of them.
+ */
+public class LatencyStats {
+	private long[] samples;
+	// Number of kept samples
+	private int size = 0;
+	// Number of recorded samples, the oldest ones may be gone
+	private long count = 0;
+	// Maximum number of kept samples, 0 keeps every sample
+	private final int window;
+
+	public LatencyStats() {
+		this(0);
+	}
+
+	/**
+	 * @param window
+	 *            Number of the most recent samples the statistics are
+	 *            computed from, 0 for all the samples.
+	 */
+	public LatencyStats(int window) {
+		if (window < 0) {
+			throw new IllegalArgumentException("Negative window : " + window);
+		}
+		this.window = window;
+		this.samples = new long[window > 0 ? window : 1024];
+	}
+
+	/**
+	 * @param nanos
+	 *            A latency sample in nanoseconds.
+	 */
+	public synchronized void record(long nanos) {
+		if (window > 0 && size == window) {
+			// Overwrites the oldest sample
+			samples[(int) (count % window)] = nanos;
+		} else {
+			if (size == samples.length) {
+				samples = Arrays.copyOf(samples, size * 2);
+			}
+			samples[size++] = nanos;
+		}
+		count++;
+	}
+
+	/**
+	 * @return The number of recorded samples, including the ones out of the
+	 *         window.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @param percentile
+	 *            Percentile in [0, 100], e.g. 99.9
+	 * @return The latency at the given percentile in milliseconds, 0 if
+	 *         nothing was recorded.
+	 */
+	public double getPercentileMs(double percentile) {
+		return getPercentilesMs(percentile)[0];
+	}
+
+	/**
+	 * Sorts the samples (of the window) once for all the requested
+	 * percentiles.
+	 *
+	 * @param percentiles
+	 *            Percentiles in [0, 100].
+	 * @return The latencies in milliseconds, in the order of the arguments.
+	 */
+	public double[] getPercentilesMs(double... percentiles) {
+		long[] sorted;
+		synchronized (this) {
+			sorted = Arrays.copyOf(samples, size);
+		}
+		Arrays.sort(sorted);
+		double[] result = new double[percentiles.length];
+		if (sorted.length == 0) {
+			return result;
+		}
+		for (int i = 0; i < percentiles.length; i++) {
+			// Nearest rank method
+			int rank = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length);
+			result[i] = sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))] / 1e6;
+		}
+		return result;
+	}
+
+	/**
+	 * @return The mean latency of the samples (of the window) in milliseconds.
+	 */
+	public synchronized double getMeanMs() {
+		if (size == 0) {
+			return 0.0;
+		}
+		double sum = 0.0;
+		for (int i = 0; i < size; i++) {
+			sum += samples[i];
+		}
+		return sum / size / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		double[] p = getPercentilesMs(50, 99, 99.9);
+		return "[Latency: Samples = " + getCount() + ", Mean = " + String.format("%.3f", getMeanMs()) + " ms, p50 = "
+				+ String.format("%.3f", p[0]) + " ms, p99 = " + String.format("%.3f", p[1]) + " ms, p999 = "
+				+ String.format("%.3f", p[2]) + " ms]";
+	}
+}
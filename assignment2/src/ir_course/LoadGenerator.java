@@ -0,0 +1,234 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays queries against LuceneSearchApp.search() at a target rate and
+ * reports the latency distribution, the throughput and the GC activity.
+ *
+ * The load is open-loop: query i is scheduled at start + i / qps regardless
+ * of how long the previous queries took, and its latency is measured from
+ * that scheduled time. When the client threads can't keep up the waiting time
+ * shows up in the latencies instead of silently lowering the offered load. The
+ * searches which throw are counted as errors, not in the latencies.
+ */
+public class LoadGenerator {
+	private LuceneSearchApp engine;
+	private List<String> queries;
+	private double targetQps;
+	private int threads;
+	private int maxHits;
+
+	/**
+	 * @param engine
+	 *            An engine whose index() has already been called.
+	 * @param queries
+	 *            The queries to replay, they are used round robin.
+	 * @param targetQps
+	 *            Offered load in queries per second.
+	 * @param threads
+	 *            Number of client threads executing the searches.
+	 * @param maxHits
+	 *            maxHits passed to LuceneSearchApp.search().
+	 */
+	public LoadGenerator(LuceneSearchApp engine, List<String> queries, double targetQps, int threads, int maxHits) {
+		if (queries.isEmpty()) {
+			throw new IllegalArgumentException("No queries to replay");
+		}
+		this.engine = engine;
+		this.queries = queries;
+		this.targetQps = targetQps;
+		this.threads = threads;
+		this.maxHits = maxHits;
+	}
+
+	/**
+	 * Runs the load for the given duration and prints the report.
+	 *
+	 * @param durationSeconds
+	 *            How long queries are issued.
+	 * @return The latencies of the completed queries, the failed ones are
+	 *         only counted.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the clients to finish.
+	 */
+	public LatencyStats run(double durationSeconds) throws InterruptedException {
+		final LatencyStats latencies = new LatencyStats();
+		final AtomicInteger completed = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		ExecutorService clients = Executors.newFixedThreadPool(threads);
+		long gcCountBefore = getGcCount();
+		long gcTimeBefore = getGcTimeMs();
+
+		long intervalNanos = (long) (1e9 / targetQps);
+		long totalQueries = (long) (durationSeconds * targetQps);
+		long start = System.nanoTime();
+		for (long i = 0; i < totalQueries; i++) {
+			final long scheduled = start + i * intervalNanos;
+			final String query = queries.get((int) (i % queries.size()));
+			long wait = scheduled - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			clients.execute(() -> {
+				try {
+					engine.search(query, maxHits);
+				} catch (RuntimeException e) {
+					if (errors.incrementAndGet() == 1) {
+						System.out.println("First error : " + e);
+					}
+					return;
+				}
+				latencies.record(System.nanoTime() - scheduled);
+				completed.incrementAndGet();
+			});
+		}
+		clients.shutdown();
+		clients.awaitTermination(1, TimeUnit.HOURS);
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println("----------------------------------------------------------------------");
+		System.out.println("Load: target = " + targetQps + " qps, threads = " + threads + ", queries = "
+				+ totalQueries);
+		System.out.println("Throughput = " + String.format("%.1f", completed.get() / elapsedSeconds) + " qps, errors = "
+				+ errors.get());
+		System.out.println(latencies);
+		System.out.println("GC: collections = " + (getGcCount() - gcCountBefore) + ", total pause = "
+				+ (getGcTimeMs() - gcTimeBefore) + " ms");
+		return latencies;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long getGcTimeMs() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * Reads a query log, one query per line. Empty lines are skipped.
+	 *
+	 * @param path
+	 *            Path of the query log.
+	 * @return The queries in the order of the log.
+	 * @throws IOException
+	 *             If the log couldn't be read.
+	 */
+	public static List<String> readQueryLog(String path) throws IOException {
+		List<String> queries = new ArrayList<String>();
+		for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+			if (!line.trim().isEmpty()) {
+				queries.add(line.trim());
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * Generates queries by sampling words from the titles and abstracts, so
+	 * that the query terms follow the term distribution of the corpus. The
+	 * word occurrences are streamed through a reservoir of count x
+	 * termsPerQuery words, so the memory doesn't grow with the corpus.
+	 *
+	 * @param docs
+	 *            The document collection.
+	 * @param count
+	 *            Number of queries to generate.
+	 * @param termsPerQuery
+	 *            Number of words in every query.
+	 * @param seed
+	 *            Random seed, the same seed gives the same queries.
+	 * @return The generated queries.
+	 */
+	public static List<String> syntheticQueries(List<DocumentInCollection> docs, int count, int termsPerQuery,
+			long seed) {
+		Random random = new Random(seed);
+		// Uniform sample of the word occurrences (reservoir sampling)
+		int capacity = Math.max(1, count * termsPerQuery);
+		List<String> vocabulary = new ArrayList<String>(capacity);
+		long seen = 0;
+		for (DocumentInCollection doc : docs) {
+			for (String text : new String[] { doc.getTitle(), doc.getAbstractText() }) {
+				for (String word : text.toLowerCase().split("[^a-z]+")) {
+					// Skip the short words, mostly stop words
+					if (word.length() <= 3) {
+						continue;
+					}
+					seen++;
+					if (vocabulary.size() < capacity) {
+						vocabulary.add(word);
+					} else {
+						long slot = (long) (random.nextDouble() * seen);
+						if (slot < capacity) {
+							vocabulary.set((int) slot, word);
+						}
+					}
+				}
+			}
+		}
+		List<String> queries = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder query = new StringBuilder();
+			for (int j = 0; j < termsPerQuery; j++) {
+				query.append(j > 0 ? " " : "").append(vocabulary.get(random.nextInt(vocabulary.size())));
+			}
+			queries.add(query.toString());
+		}
+		return queries;
+	}
+
+	/**
+	 * Usage: LoadGenerator corpus.(xml|bin) [qps] [threads] [seconds] [queryLog]
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0) {
+			double qps = args.length > 1 ? Double.parseDouble(args[1]) : 200;
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+			double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 10;
+
+			// XML or a binary snapshot written by CorpusScaler
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			List<String> queries = args.length > 4 ? readQueryLog(args[4]) : syntheticQueries(docs, 1000, 3, 42);
+
+			LuceneSearchApp engine = new LuceneSearchApp(
+					new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25));
+			engine.index(docs);
+			engine.setVerbose(false);
+			engine.printConfig();
+			System.out.println("Indexed " + docs.size() + " documents, replaying " + queries.size() + " queries");
+
+			// Short warmup so that the report isn't dominated by the JIT
+			new LoadGenerator(engine, queries, qps, threads, 10).run(Math.min(2, seconds));
+			new LoadGenerator(engine, queries, qps, threads, 10).run(seconds);
+			engine.close();
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+}
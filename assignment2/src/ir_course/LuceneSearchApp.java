@@ -13,27 +13,47 @@
 package ir_course;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMDirectory;
 
@@ -58,7 +78,71 @@ public class LuceneSearchApp {
 	private Analyzer analyzer;
 	// Stores all the configuration related to a task
 	private Configuration config;
+	// Ground truth relevance, kept outside of the index
+	private RelevanceJudgments judgments;
+	// Query expansion, null if the configuration doesn't use feedback
+	private RelevanceFeedback feedback;
+	// Optional per document term ids / frequencies, see enableForwardIndex()
+	private Path forwardIndexPath;
+	private ForwardIndex forwardIndex;
+	// Optional off heap copy of title and abstract_text for the hydration,
+	// see enableDocumentStore()
+	private Path documentStorePath;
+	private DocumentStore documentStore;
+	private ThreadLocal<DocumentStore.Cursor> storeCursors = ThreadLocal.withInitial(DocumentStore::newCursor);
+	// Optional second stage, needs the forward index
+	private Reranker reranker;
+	private FeatureExtractor featureExtractor;
+	// Highlighted snippets of the first results, see setSnippetPageSize()
+	private int snippetPageSize = 0;
+	private SnippetGenerator snippets;
+	// Search task / relevance counts of the hits, see setFaceting()
+	private boolean faceting = false;
+	private ThreadLocal<FacetCollector.Counts> facets = new ThreadLocal<FacetCollector.Counts>();
+	private Map<Query, FacetCollector.Counts> facetCache = newFacetCache(256);
+	// The judgments and their version the cached counts were computed with
+	private RelevanceJudgments facetJudgments;
+	private long facetJudgmentsVersion;
+	// Hashed document vectors for the hybrid ranking, see Configuration
+	private VectorIndex vectorIndex;
+	// Number of nearest neighbours added to the lexical hits
+	private static final int VECTOR_CANDIDATES = 100;
+	// Hits of a warmup search, a first page
+	private static final int WARMUP_HITS = 10;
+	// Spelling corrections and completions, see setSuggestions()
+	private boolean suggestions = false;
+	private QuerySuggester suggester;
+	// Text fields indexed with positions, null for all, see
+	// setPositionFields()
+	private Set<String> positionFields;
+	// No norms outside of the searched field, see setLowMemory()
+	private boolean lowMemory = false;
+	// Search task numbers by doc id, read from the doc values by index()
+	private int[] taskByDoc;
+	// Searches recorded and replayed by index(), see setWarmup()
+	private QueryLog queryLog;
+	private int warmupQueries;
 	private static final Integer RECOMMENDER_SYSTEM_TASK = 2;
+	// Text field types with term vectors, used by the relevance feedback
+	private static final FieldType TEXT_WITH_VECTORS = new FieldType(TextField.TYPE_NOT_STORED);
+	private static final FieldType STORED_TEXT_WITH_VECTORS = new FieldType(TextField.TYPE_STORED);
+	// Stored text fields with offsets in the postings, used by the snippets
+	private static final FieldType STORED_TEXT_WITH_OFFSETS = new FieldType(TextField.TYPE_STORED);
+
+	static {
+		TEXT_WITH_VECTORS.setStoreTermVectors(true);
+		TEXT_WITH_VECTORS.freeze();
+		STORED_TEXT_WITH_VECTORS.setStoreTermVectors(true);
+		STORED_TEXT_WITH_VECTORS.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+		STORED_TEXT_WITH_VECTORS.freeze();
+		STORED_TEXT_WITH_OFFSETS.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+		STORED_TEXT_WITH_OFFSETS.freeze();
+	}
+	// Print the parsed query and the hit count on every search
+	private boolean verbose = true;
+	// Clause level timing of search(), see setProfiling()
+	private boolean profiling = false;
+	private ThreadLocal<QueryProfiler.Profile> profiles = new ThreadLocal<QueryProfiler.Profile>();
 
 	/**
 	 * @param config
@@ -73,9 +157,278 @@ public class LuceneSearchApp {
 
 		iwc = new IndexWriterConfig(analyzer);
 		iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
+		// Only merges adjacent segments, so the doc ids stay in indexing order
+		// and can be used as keys into the RelevanceJudgments.
+		iwc.setMergePolicy(new LogByteSizeMergePolicy());
 
 		dir = new RAMDirectory();
 		writer = new IndexWriter(dir, iwc);
+		if (config.isRelevanceFeedbackUsed()) {
+			feedback = new RelevanceFeedback();
+		}
+	}
+
+	/**
+	 * @param verbose
+	 *            If false search() doesn't print anything, e.g. when running
+	 *            under load.
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Records the time of the stages of search() (parse, expansion, search,
+	 * re-ranking, hydration, snippets), and for the search stage the time and
+	 * number of iterations and score computations of every query clause, see
+	 * QueryProfiler. The profiled searches are slower, when profiling is off
+	 * the cost is one test per stage.
+	 * 
+	 * @param profiling
+	 *            If true search() records a profile, printed if verbose.
+	 */
+	public void setProfiling(boolean profiling) {
+		this.profiling = profiling;
+	}
+
+	/**
+	 * @return The profile of the last search of the calling thread, null if
+	 *         profiling is off.
+	 */
+	public QueryProfiler.Profile getProfile() {
+		return profiles.get();
+	}
+
+	/**
+	 * Replaces the relevance judgments used to label the search results, by
+	 * default they are taken from the indexed documents.
+	 * 
+	 * @param judgments
+	 *            Judgments keyed by the position of the documents in the list
+	 *            given to index().
+	 */
+	public void setRelevanceJudgments(RelevanceJudgments judgments) {
+		this.judgments = judgments;
+		facetCache.clear();
+	}
+
+	/**
+	 * @return The relevance judgments used to label the search results.
+	 */
+	public RelevanceJudgments getRelevanceJudgments() {
+		return judgments;
+	}
+
+	/**
+	 * @return The configuration the engine was created with.
+	 */
+	public Configuration getConfiguration() {
+		return config;
+	}
+
+	/**
+	 * Writes a forward index of title, abstract_text (and the searched field)
+	 * when index() is called. Must be called before index().
+	 * 
+	 * @param path
+	 *            File the forward index is written to and mapped from.
+	 */
+	public void enableForwardIndex(Path path) {
+		this.forwardIndexPath = path;
+	}
+
+	/**
+	 * Writes an off heap copy of title and abstract_text when index() is
+	 * called, the hits are then hydrated from it instead of the stored fields:
+	 * the title is decoded with reusable buffers and the abstract only when
+	 * getAbstractText() is called. Must be called before index().
+	 * 
+	 * @param path
+	 *            File the document store is written to and mapped from.
+	 */
+	public void enableDocumentStore(Path path) {
+		this.documentStorePath = path;
+	}
+
+	/**
+	 * @return The forward index, null if it isn't enabled.
+	 */
+	public ForwardIndex getForwardIndex() {
+		return forwardIndex;
+	}
+
+	/**
+	 * Re-ranks the top hits of every search with the given model, only used
+	 * when the forward index is enabled.
+	 * 
+	 * @param reranker
+	 *            The re-ranker, null to disable re-ranking.
+	 */
+	public void setReranker(Reranker reranker) {
+		this.reranker = reranker;
+	}
+
+	/**
+	 * Highlights the query terms in the title and in an abstract passage of
+	 * the first results of every search, see
+	 * DocumentInCollection.getSnippet().
+	 * 
+	 * @param pageSize
+	 *            Number of results with snippets, 0 disables the snippets.
+	 */
+	public void setSnippetPageSize(int pageSize) {
+		this.snippetPageSize = pageSize;
+	}
+
+	/**
+	 * Counting the facets visits every hit of the query, which is about 20%
+	 * slower than collecting a 10 hit page on 100k documents, so it is off by
+	 * default. A request can also ask for them with search(queryString,
+	 * maxHits, true).
+	 * 
+	 * @param faceting
+	 *            If true search(queryString, maxHits) and searchPage() also
+	 *            count all the hits per search task and the relevant hits per
+	 *            search task, see getFacets().
+	 */
+	public void setFaceting(boolean faceting) {
+		this.faceting = faceting;
+	}
+
+	/**
+	 * @param cacheSize
+	 *            Number of queries whose facet counts are cached, 0 disables
+	 *            the cache.
+	 */
+	public void setFacetCacheSize(int cacheSize) {
+		facetCache = newFacetCache(cacheSize);
+	}
+
+	private static Map<Query, FacetCollector.Counts> newFacetCache(final int cacheSize) {
+		return Collections.synchronizedMap(new LinkedHashMap<Query, FacetCollector.Counts>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Query, FacetCollector.Counts> eldest) {
+				return size() > cacheSize;
+			}
+		});
+	}
+
+	/**
+	 * Builds the vocabulary of title and abstract_text when index() is
+	 * called, for suggest() and complete(). A search without any hit then
+	 * prints a "did you mean" query. Must be called before index().
+	 * 
+	 * @param suggestions
+	 *            If true the suggestions are enabled.
+	 */
+	public void setSuggestions(boolean suggestions) {
+		this.suggestions = suggestions;
+	}
+
+	/**
+	 * Indexes the positions of the given text fields only, the other ones
+	 * only get the term frequencies, and no field gets offsets, which makes
+	 * the index smaller and faster to build. Phrases and proximity scoring
+	 * need the positions of the searched field, the snippets need the offsets
+	 * (without them they fall back to the start of the abstract). Must be
+	 * called before index().
+	 * 
+	 * @param fields
+	 *            Fields with positions, from {Constants.TITLE,
+	 *            Constants.ABSTRACT_TEXT, Constants.TITLE_ABSTRACT}. By
+	 *            default all of them, with offsets.
+	 */
+	public void setPositionFields(String... fields) {
+		this.positionFields = new HashSet<String>(Arrays.asList(fields));
+	}
+
+	/**
+	 * Indexes only what the configuration searches with: the norms of the
+	 * searched field only (the other fields are never scored), no offsets (the
+	 * snippets fall back to the start of the abstract) and, unless
+	 * setPositionFields() was called, the positions of the searched field
+	 * only when the proximity scoring uses them. The ranking doesn't change,
+	 * but phrase queries on fields without positions fail. Must be called
+	 * before index().
+	 * 
+	 * @param lowMemory
+	 *            If true the index is built in the low memory mode.
+	 */
+	public void setLowMemory(boolean lowMemory) {
+		this.lowMemory = lowMemory;
+	}
+
+	/**
+	 * @return The report of the index files, fields and heap usage, see
+	 *         IndexInspector.
+	 * @throws IOException
+	 *             If the index couldn't be read.
+	 */
+	public IndexInspector.Report inspectIndex() throws IOException {
+		return IndexInspector.inspect(dir, reader);
+	}
+
+	/**
+	 * @return The size of the index files in bytes.
+	 * @throws IOException
+	 *             If the directory couldn't be listed.
+	 */
+	public long getIndexSizeInBytes() throws IOException {
+		long size = 0;
+		for (String file : dir.listAll()) {
+			size += dir.fileLength(file);
+		}
+		return size;
+	}
+
+	/**
+	 * Records the searches into the log, and makes index() replay its most
+	 * frequent queries before returning, so that the first searches find the
+	 * JIT, the query cache, the facet cache, the relevance feedback
+	 * expansions and the pages of the index warm. Call it before index(), with
+	 * the log of a previous run (see QueryLog.read()) to warm up a restart.
+	 * 
+	 * @param log
+	 *            The query log, null to disable the warmup.
+	 * @param numQueries
+	 *            Number of the most frequent queries replayed.
+	 */
+	public void setWarmup(QueryLog log, int numQueries) {
+		this.queryLog = log;
+		this.warmupQueries = numQueries;
+	}
+
+	/**
+	 * @return The facet counts of the last search of the calling thread, null
+	 *         if faceting is off.
+	 */
+	public FacetCollector.Counts getFacets() {
+		return facets.get();
+	}
+
+	/**
+	 * @return The vector index, null if the configuration doesn't use vectors.
+	 */
+	public VectorIndex getVectorIndex() {
+		return vectorIndex;
+	}
+
+	/**
+	 * @return The query expansion stage, null if the configuration doesn't use
+	 *         relevance feedback.
+	 */
+	public RelevanceFeedback getRelevanceFeedback() {
+		return feedback;
+	}
+
+	/**
+	 * @return True if searchPage() can be used: the configuration uses neither
+	 *         the relevance feedback, nor the vector fusion, nor a re-ranker.
+	 */
+	public boolean isPaginated() {
+		return feedback == null && vectorIndex == null && reranker == null;
 	}
 
 	/**
@@ -93,29 +446,557 @@ public class LuceneSearchApp {
 	 * @param maxHits
 	 *            The maximum number of search results to return.
 	 * @return Search results as a List of DocumentInCollection objects.
+	 * @throws IllegalArgumentException
+	 *             If the query couldn't be parsed.
+	 * @throws UncheckedIOException
+	 *             If the index couldn't be read.
 	 */
 	public List<DocumentInCollection> search(String queryString, int maxHits) {
+		return search(queryString, maxHits, faceting);
+	}
+
+	/**
+	 * Searches the index, counting the facets of this search or not whatever
+	 * setFaceting() is.
+	 * 
+	 * @param queryString
+	 *            The Query string to process.
+	 * @param maxHits
+	 *            The maximum number of search results to return.
+	 * @param withFacets
+	 *            If true the hits per search task and the relevant hits per
+	 *            search task are counted, see getFacets().
+	 * @return Search results as a List of DocumentInCollection objects.
+	 * @throws IllegalArgumentException
+	 *             If the query couldn't be parsed.
+	 * @throws UncheckedIOException
+	 *             If the index couldn't be read.
+	 */
+	public List<DocumentInCollection> search(String queryString, int maxHits, boolean withFacets) {
+		return search(queryString, maxHits, withFacets, false);
+	}
+
+	// A warmup search isn't printed, profiled nor recorded, the settings of
+	// the concurrent searches are left alone
+	private List<DocumentInCollection> search(String queryString, int maxHits, boolean withFacets,
+			boolean warmup) {
+		boolean verbose = this.verbose && !warmup;
+		QueryLog queryLog = warmup ? null : this.queryLog;
 		List<DocumentInCollection> results = new LinkedList<DocumentInCollection>();
+		QueryProfiler.Profile profile = profiling && !warmup ? new QueryProfiler.Profile(queryString) : null;
+		long stageStart = System.nanoTime();
 		try {
-			QueryParser parser = new QueryParser(Constants.ABSTRACT_TEXT, analyzer);
-			Query query = parser.parse(queryString);
-			System.out.println(query);
-			TopDocs hits = searcher.search(query, maxHits);
-			System.out.println("Search Hits :" + hits.totalHits);
+			Query query = parseQuery(queryString);
+			// Terms of the original query, the expansion terms aren't features,
+			// aren't highlighted and aren't embedded
+			String[] queryTerms = reranker != null || snippetPageSize > 0 || vectorIndex != null
+					? getQueryTerms(query) : null;
+			if (profile != null) {
+				stageStart = profile.addStage("parse", stageStart);
+			}
+			query = rewrite(query, queryString);
+			if (profile != null) {
+				stageStart = profile.addStage("expand", stageStart);
+			}
+			TopDocs hits = collect(profile != null ? new QueryProfiler(reader, config.getSimilarity(), profile)
+					: searcher, query, maxHits, withFacets);
+			if (profile != null) {
+				stageStart = profile.addStage("search", stageStart);
+				profiles.set(profile);
+			}
+			if (verbose) {
+				System.out.println(query);
+				System.out.println("Search Hits :" + hits.totalHits);
+				if (hits.totalHits == 0 && suggester != null) {
+					String suggestion = suggest(queryString);
+					if (suggestion != null) {
+						System.out.println("Did you mean : " + suggestion);
+					}
+				}
+			}
 			ScoreDoc[] scoreDocs = hits.scoreDocs;
-			for (int n = 0; n < scoreDocs.length; ++n) {
-				int docid = scoreDocs[n].doc;
-				Document doc = searcher.doc(docid);
-				results.add(new DocumentInCollection(doc.get(Constants.TITLE), doc.get(Constants.ABSTRACT_TEXT),
-						RECOMMENDER_SYSTEM_TASK, queryString, Boolean.parseBoolean(doc.get(Constants.RELEVANCE))));
+			if (vectorIndex != null) {
+				scoreDocs = fuse(scoreDocs, queryTerms, maxHits);
+			}
+			if (reranker != null && featureExtractor != null) {
+				scoreDocs = reranker.rerank(featureExtractor, queryTerms, scoreDocs);
+			}
+			if (profile != null && (vectorIndex != null || reranker != null)) {
+				stageStart = profile.addStage("rerank", stageStart);
+			}
+			addResults(results, scoreDocs, queryString);
+			if (profile != null) {
+				stageStart = profile.addStage("hydrate", stageStart);
+			}
+			if (snippetPageSize > 0) {
+				addSnippets(results, scoreDocs, queryTerms);
+				if (profile != null) {
+					stageStart = profile.addStage("snippets", stageStart);
+				}
 			}
-			reader.close();
+			if (profile != null && verbose) {
+				System.out.print(profile);
+			}
+			// Only the queries which ran are replayed by the warmup
+			if (queryLog != null) {
+				queryLog.record(queryString);
+			}
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Couldn't parse : " + queryString, e);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Couldn't search : " + queryString, e);
+		}
+
+		return results;
+	}
 
+	/**
+	 * Explains the scores of the top hits of a query, e.g. to see why a
+	 * configuration ranks a document first. The query is the one search()
+	 * runs, with the relevance feedback and the proximity boost, the vector
+	 * fusion and the re-ranking are not explained.
+	 * 
+	 * @param queryString
+	 *            The Query string to process.
+	 * @param topK
+	 *            Number of top hits to explain.
+	 * @return The explanations of the top hits, in rank order.
+	 * @throws IllegalArgumentException
+	 *             If the query couldn't be parsed.
+	 * @throws UncheckedIOException
+	 *             If the index couldn't be read.
+	 */
+	public List<Explanation> explain(String queryString, int topK) {
+		try {
+			Query query = rewrite(parseQuery(queryString), queryString);
+			List<Explanation> explanations = new ArrayList<Explanation>();
+			for (ScoreDoc hit : searcher.search(query, topK).scoreDocs) {
+				explanations.add(searcher.explain(query, hit.doc));
+			}
+			return explanations;
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Couldn't parse : " + queryString, e);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Couldn't explain : " + queryString, e);
+		}
+	}
+
+	/**
+	 * Ranks the hits of a query as search() does, the vector fusion and the
+	 * re-ranking included, but without reading the documents, e.g. to write
+	 * a TREC run.
+	 * 
+	 * @param queryString
+	 *            The Query string to process.
+	 * @param maxHits
+	 *            The maximum number of hits to return.
+	 * @return The ranked hits, the doc ids are the ids of the
+	 *         RelevanceJudgments.
+	 * @throws IllegalArgumentException
+	 *             If the query couldn't be parsed.
+	 * @throws UncheckedIOException
+	 *             If the index couldn't be read.
+	 */
+	public ScoreDoc[] rank(String queryString, int maxHits) {
+		try {
+			Query query = parseQuery(queryString);
+			String[] queryTerms = reranker != null || vectorIndex != null ? getQueryTerms(query) : null;
+			query = rewrite(query, queryString);
+			ScoreDoc[] scoreDocs = collect(searcher, query, maxHits, faceting).scoreDocs;
+			if (vectorIndex != null) {
+				scoreDocs = fuse(scoreDocs, queryTerms, maxHits);
+			}
+			if (reranker != null && featureExtractor != null) {
+				scoreDocs = reranker.rerank(featureExtractor, queryTerms, scoreDocs);
+			}
+			return scoreDocs;
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Couldn't parse : " + queryString, e);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Couldn't rank : " + queryString, e);
+		}
+	}
+
+	/**
+	 * Searches one page of the results. The next page starts after the last
+	 * hit of this one (Lucene's searchAfter), so only the hits of the page
+	 * are collected and read from the index whatever the page number, while
+	 * search() collects and reads every hit up to maxHits. The ranking is the
+	 * one of search(), with the proximity boost. The configurations using the
+	 * relevance feedback, the vector fusion or the re-ranking can't be
+	 * paginated (see isPaginated()): the vector fusion and the re-ranking
+	 * reorder the top hits of the first stage, which a page can't see, and the
+	 * expansion of a query may be rebuilt between two pages (a partial one
+	 * isn't cached), so the pages could be ranked by different queries.
+	 * 
+	 * @param queryString
+	 *            The Query string to process.
+	 * @param pageSize
+	 *            The number of results of the page.
+	 * @param cursor
+	 *            Page.getCursor() of the previous page, null for the first
+	 *            page.
+	 * @return The results of the page.
+	 * @throws IllegalStateException
+	 *             If the configuration can't be paginated.
+	 * @throws IllegalArgumentException
+	 *             If the query or the cursor couldn't be parsed.
+	 * @throws UncheckedIOException
+	 *             If the index couldn't be read.
+	 */
+	public Page searchPage(String queryString, int pageSize, String cursor) {
+		if (!isPaginated()) {
+			throw new IllegalStateException(
+					"The relevance feedback, the vector fusion and the re-ranking can't be paginated");
+		}
+		ScoreDoc after = Page.parseCursor(cursor);
+		try {
+			Query query = parseQuery(queryString);
+			String[] queryTerms = snippetPageSize > 0 ? getQueryTerms(query) : null;
+			query = rewrite(query, queryString);
+			TopDocs hits = after == null ? collect(searcher, query, pageSize, faceting)
+					: searcher.searchAfter(after, query, pageSize);
+			List<DocumentInCollection> results = new ArrayList<DocumentInCollection>(hits.scoreDocs.length);
+			addResults(results, hits.scoreDocs, queryString);
+			if (snippetPageSize > 0) {
+				addSnippets(results, hits.scoreDocs, queryTerms);
+			}
+			ScoreDoc last = hits.scoreDocs.length == pageSize ? hits.scoreDocs[pageSize - 1] : null;
+			if (queryLog != null && after == null) {
+				queryLog.record(queryString);
+			}
+			return new Page(results, hits.totalHits, last);
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Couldn't parse : " + queryString, e);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Couldn't search the page of : " + queryString, e);
+		}
+	}
+
+	/**
+	 * A page of results, see searchPage().
+	 */
+	public static class Page {
+		private List<DocumentInCollection> results;
+		private int totalHits;
+		private ScoreDoc last;
+
+		private Page(List<DocumentInCollection> results, int totalHits, ScoreDoc last) {
+			this.results = results;
+			this.totalHits = totalHits;
+			this.last = last;
+		}
+
+		public List<DocumentInCollection> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return The number of documents matching the query.
+		 */
+		public int getTotalHits() {
+			return totalHits;
+		}
+
+		/**
+		 * @return The cursor of the next page, the score and doc id of the
+		 *         last hit, null if this page is the last one. It is only
+		 *         valid for the index it was returned by.
+		 */
+		public String getCursor() {
+			return last == null ? null
+					: Integer.toHexString(Float.floatToIntBits(last.score)) + "-" + Integer.toHexString(last.doc);
+		}
+
+		static ScoreDoc parseCursor(String cursor) {
+			if (cursor == null) {
+				return null;
+			}
+			int dash = cursor.indexOf('-');
+			try {
+				return new ScoreDoc(Integer.parseUnsignedInt(cursor.substring(dash + 1), 16),
+						Float.intBitsToFloat(Integer.parseUnsignedInt(cursor.substring(0, Math.max(0, dash)), 16)));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor : " + cursor);
+			}
+		}
+	}
+
+	/**
+	 * A hit hydrated from the document store, the abstract is decoded on the
+	 * first call of getAbstractText(), with the cursor of the calling thread
+	 * (which likely still holds the block of the title). So the abstract must
+	 * be read before the engine is closed, afterwards the call fails with an
+	 * IllegalStateException.
+	 */
+	private static class StoredDocumentInCollection extends DocumentInCollection {
+		private DocumentStore store;
+		private ThreadLocal<DocumentStore.Cursor> cursors;
+		private int docId;
+		private boolean abstractLoaded;
+
+		StoredDocumentInCollection(DocumentStore store, ThreadLocal<DocumentStore.Cursor> cursors, int docId,
+				String title, String query, boolean relevant) {
+			super(title, null, RECOMMENDER_SYSTEM_TASK, query, relevant);
+			this.store = store;
+			this.cursors = cursors;
+			this.docId = docId;
+		}
+
+		@Override
+		public String getAbstractText() {
+			if (!abstractLoaded) {
+				try {
+					super.setAbstractText(
+							store.get(docId, Constants.ABSTRACT_TEXT, cursors.get()).toString());
+				} catch (IOException e) {
+					throw new IllegalStateException("Couldn't read the abstract of " + docId, e);
+				}
+				abstractLoaded = true;
+			}
+			return super.getAbstractText();
+		}
+
+		@Override
+		public void setAbstractText(String abstractText) {
+			super.setAbstractText(abstractText);
+			abstractLoaded = true;
+		}
+	}
+
+	// Expands the query with the relevance feedback and adds the proximity
+	// clauses
+	private Query rewrite(Query query, String queryString) throws IOException {
+		Query expanded = feedback != null ? feedback.getCached(queryString) : null;
+		if (expanded != null) {
+			// The expansion is known, skip the first pass.
+			query = expanded;
+		} else if (feedback != null) {
+			// Second pass with the expanded query.
+			// Only the top hits the model is built from
+			TopDocs firstPass = searcher.search(query, feedback.getFeedbackDocs());
+			query = feedback.expand(searcher, query, queryString, config.getSearchField(), firstPass, forwardIndex);
+		}
+		if (config.getProximityBoost() > 0) {
+			query = ProximityQueries.withProximityBoost(query, config.getSearchField(), analyze(queryString),
+					config.getProximitySlop(), config.getProximityBoost());
+		}
+		return query;
+	}
+
+	private void addResults(List<DocumentInCollection> results, ScoreDoc[] scoreDocs, String queryString)
+			throws IOException {
+		for (int n = 0; n < scoreDocs.length; ++n) {
+			int docid = scoreDocs[n].doc;
+			if (documentStore != null) {
+				results.add(new StoredDocumentInCollection(documentStore, storeCursors, docid,
+						documentStore.get(docid, Constants.TITLE, storeCursors.get()).toString(), queryString,
+						judgments.isRelevant(RECOMMENDER_SYSTEM_TASK, docid)));
+				continue;
+			}
+			Document doc = searcher.doc(docid);
+			results.add(new DocumentInCollection(doc.get(Constants.TITLE), doc.get(Constants.ABSTRACT_TEXT),
+					RECOMMENDER_SYSTEM_TASK, queryString, judgments.isRelevant(RECOMMENDER_SYSTEM_TASK, docid)));
+		}
+	}
+
+	// Hybrid ranking : the lexical hits and the approximate nearest neighbours
+	// of the query vector, scored by the weighted sum of the lexical score
+	// (divided by the best one) and the cosine similarity.
+	private ScoreDoc[] fuse(ScoreDoc[] lexicalHits, String[] queryTerms, int maxHits) throws IOException {
+		float weight = config.getVectorWeight();
+		VectorIndex.QueryVector queryVector = vectorIndex.embed(queryTerms);
+		float maxScore = lexicalHits.length > 0 ? lexicalHits[0].score : 1f;
+		Map<Integer, ScoreDoc> fused = new HashMap<Integer, ScoreDoc>();
+		for (ScoreDoc hit : lexicalHits) {
+			float similarity = Math.max(0f, vectorIndex.similarity(queryVector, hit.doc));
+			fused.put(hit.doc, new ScoreDoc(hit.doc, (1 - weight) * hit.score / maxScore + weight * similarity));
+		}
+		for (ScoreDoc neighbour : vectorIndex.search(queryVector, Math.min(maxHits, VECTOR_CANDIDATES))) {
+			if (!fused.containsKey(neighbour.doc)) {
+				fused.put(neighbour.doc, new ScoreDoc(neighbour.doc, weight * Math.max(0f, neighbour.score)));
+			}
+		}
+		ScoreDoc[] result = fused.values().toArray(new ScoreDoc[fused.size()]);
+		Arrays.sort(result, (a, b) -> a.score != b.score ? Float.compare(b.score, a.score) : a.doc - b.doc);
+		return Arrays.copyOf(result, Math.min(maxHits, result.length));
+	}
+
+	// Searches the query, counting the facets in the same pass if needed
+	private TopDocs collect(IndexSearcher searcher, Query query, int maxHits, boolean withFacets)
+			throws IOException {
+		if (!withFacets) {
+			facets.remove();
+			return searcher.search(query, maxHits);
+		}
+		RelevanceJudgments judgments = this.judgments;
+		long version = judgments.getVersion();
+		FacetCollector.Counts counts;
+		synchronized (facetCache) {
+			// The relevant counts of other judgments are stale
+			if (judgments != facetJudgments || version != facetJudgmentsVersion) {
+				facetCache.clear();
+				facetJudgments = judgments;
+				facetJudgmentsVersion = version;
+			}
+			counts = facetCache.get(query);
+		}
+		if (counts != null) {
+			facets.set(counts);
+			return searcher.search(query, maxHits);
+		}
+		TopScoreDocCollector topDocs = TopScoreDocCollector.create(Math.max(1, Math.min(maxHits, reader.maxDoc())));
+		FacetCollector facetCollector = new FacetCollector(judgments, taskByDoc);
+		searcher.search(query, MultiCollector.wrap(topDocs, facetCollector));
+		counts = facetCollector.getCounts();
+		synchronized (facetCache) {
+			// Not cached if the judgments changed during the search
+			if (judgments == facetJudgments && judgments.getVersion() == version) {
+				facetCache.put(query, counts);
+			}
+		}
+		facets.set(counts);
+		return topDocs.topDocs();
+	}
+
+	private void addSnippets(List<DocumentInCollection> results, ScoreDoc[] scoreDocs, String[] queryTerms)
+			throws IOException {
+		int pageSize = Math.min(snippetPageSize, results.size());
+		int[] docIds = new int[pageSize];
+		String[] titles = new String[pageSize];
+		String[] abstracts = new String[pageSize];
+		for (int i = 0; i < pageSize; i++) {
+			docIds[i] = scoreDocs[i].doc;
+			titles[i] = results.get(i).getTitle();
+			abstracts[i] = results.get(i).getAbstractText();
+		}
+		SnippetGenerator.Snippet[] page = getSnippetGenerator().generate(docIds, titles, abstracts, queryTerms);
+		for (int i = 0; i < pageSize; i++) {
+			results.get(i).setHighlightedTitle(page[i].getTitle());
+			results.get(i).setSnippet(page[i].getText());
+		}
+	}
+
+	// Created by the first search with snippets, once: every generator has
+	// its own thread pool
+	private synchronized SnippetGenerator getSnippetGenerator() {
+		if (snippets == null) {
+			snippets = new SnippetGenerator(reader, Runtime.getRuntime().availableProcessors(), 10000);
+		}
+		return snippets;
+	}
+
+	/**
+	 * Extracts the re-ranking features of the first stage top hits of a query,
+	 * e.g. to train a Reranker. Needs the forward index.
+	 * 
+	 * @param queryString
+	 *            The Query string to process.
+	 * @param k
+	 *            Number of top hits.
+	 * @return The features of the top hits, in first stage order.
+	 */
+	public FeatureExtractor.Batch extractFeatures(String queryString, int k) {
+		if (featureExtractor == null) {
+			throw new IllegalStateException("The forward index is not enabled");
+		}
+		try {
+			Query query = parseQuery(queryString);
+			TopDocs hits = searcher.search(query, k);
+			return featureExtractor.extract(getQueryTerms(query), hits.scoreDocs, k, Long.MAX_VALUE);
 		} catch (Exception e) {
-			System.out.println("Error in search" + e);
+			throw new IllegalArgumentException("Couldn't extract the features of : " + queryString, e);
 		}
+	}
 
-		return results;
+	/**
+	 * Corrects the misspelled terms of a query.
+	 * 
+	 * @param queryString
+	 *            The query string.
+	 * @return The analysed query terms, with the terms which are not in the
+	 *         index replaced by their closest indexed term. Null if nothing
+	 *         was corrected.
+	 */
+	public String suggest(String queryString) {
+		if (suggester == null) {
+			throw new IllegalStateException("The suggestions are not enabled");
+		}
+		List<String> terms = new ArrayList<String>();
+		boolean corrected = false;
+		for (String term : analyze(queryString)) {
+			String correction = suggester.correct(term);
+			corrected |= correction != null;
+			terms.add(correction != null ? correction : term);
+		}
+		return corrected ? String.join(" ", terms) : null;
+	}
+
+	// The analysed words of the query string, in order, the query syntax is
+	// not interpreted.
+	private List<String> analyze(String queryString) {
+		List<String> terms = new ArrayList<String>();
+		try (TokenStream tokens = analyzer.tokenStream(config.getSearchField(), queryString)) {
+			CharTermAttribute termAttribute = tokens.addAttribute(CharTermAttribute.class);
+			tokens.reset();
+			while (tokens.incrementToken()) {
+				terms.add(termAttribute.toString());
+			}
+			tokens.end();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Couldn't analyse : " + queryString, e);
+		}
+		return terms;
+	}
+
+	/**
+	 * @param prefix
+	 *            The start of a word.
+	 * @param count
+	 *            Maximum number of completions.
+	 * @return The most frequent indexed terms starting with the prefix
+	 *         (lower cased, not analysed further).
+	 */
+	public List<String> complete(String prefix, int count) {
+		if (suggester == null) {
+			throw new IllegalStateException("The suggestions are not enabled");
+		}
+		return suggester.complete(prefix.toLowerCase(), count);
+	}
+
+	private Query parseQuery(String queryString) throws ParseException {
+		QueryParser parser = new QueryParser(config.getSearchField(), analyzer);
+		return parser.parse(queryString);
+	}
+
+	// The distinct analysed terms of the query, whatever their field
+	private String[] getQueryTerms(Query query) throws IOException {
+		Set<Term> terms = new TreeSet<Term>();
+		searcher.createNormalizedWeight(query, false).extractTerms(terms);
+		return terms.stream().map(Term::text).distinct().toArray(String[]::new);
+	}
+
+	/**
+	 * Closes the index reader, the engine can't be searched afterwards. The
+	 * results don't outlive the engine: with the document store, the abstracts
+	 * of the results not read yet can't be read anymore.
+	 * 
+	 * @throws IOException
+	 *             If the reader couldn't be closed.
+	 */
+	public void close() throws IOException {
+		reader.close();
+		synchronized (this) {
+			if (snippets != null) {
+				snippets.close();
+			}
+		}
+		if (forwardIndex != null) {
+			forwardIndex.close();
+		}
+		if (documentStore != null) {
+			documentStore.close();
+		}
 	}
 
 	/**
@@ -140,9 +1021,14 @@ public class LuceneSearchApp {
 	 */
 	public void printResults(List<DocumentInCollection> results, int topK) {
 		if (results.size() > 0) {
-			for (int i = 0; i < Math.min(topK, results.size()); i++)
-				System.out.println(" " + (i + 1) + ". [" + (results.get(i).isRelevant() ? 1 : 0) + "] ."
-						+ results.get(i).getTitle());
+			for (int i = 0; i < Math.min(topK, results.size()); i++) {
+				DocumentInCollection result = results.get(i);
+				System.out.println(" " + (i + 1) + ". [" + (result.isRelevant() ? 1 : 0) + "] ."
+						+ (result.getHighlightedTitle() != null ? result.getHighlightedTitle() : result.getTitle()));
+				if (result.getSnippet() != null) {
+					System.out.println("     " + result.getSnippet());
+				}
+			}
 		} else
 			System.out.println(" no results");
 	}
@@ -158,23 +1044,138 @@ public class LuceneSearchApp {
 	 *             Directory.
 	 */
 	public void index(List<DocumentInCollection> docs) throws IOException {
+		if (lowMemory && positionFields == null) {
+			positionFields = config.getProximityBoost() > 0 ? Collections.singleton(config.getSearchField())
+					: Collections.<String> emptySet();
+		}
+		if (config.getProximityBoost() > 0 && positionFields != null
+				&& !positionFields.contains(config.getSearchField())) {
+			throw new IllegalStateException("The proximity scoring needs the positions of " + config.getSearchField());
+		}
+		// Without a forward index, relevance feedback reads the term vectors
+		// of the searched field.
+		boolean vectors = feedback != null && forwardIndexPath == null;
+		FieldType abstractType = getTextType(Constants.ABSTRACT_TEXT,
+				vectors && !config.isMultiField() ? STORED_TEXT_WITH_VECTORS : STORED_TEXT_WITH_OFFSETS);
+		FieldType titleType = getTextType(Constants.TITLE, STORED_TEXT_WITH_OFFSETS);
+		FieldType titleAbstractType = getTextType(Constants.TITLE_ABSTRACT,
+				vectors ? TEXT_WITH_VECTORS : TextField.TYPE_NOT_STORED);
 		for (DocumentInCollection doc : docs) {
 			// Each RSS Feed Document goes into a luceneDocument
 			Document luceneDoc = new Document();
-			luceneDoc.add(new TextField(Constants.ABSTRACT_TEXT, doc.getAbstractText(), Field.Store.YES));
-			luceneDoc.add(new TextField(Constants.TITLE, doc.getTitle(), Field.Store.YES));
-			luceneDoc.add(new TextField(Constants.RELEVANCE, Boolean.toString(doc.isRelevant()), Field.Store.YES));
-			// if required can add query and isrelevant
+			luceneDoc.add(new Field(Constants.ABSTRACT_TEXT, doc.getAbstractText(), abstractType));
+			luceneDoc.add(new Field(Constants.TITLE, doc.getTitle(), titleType));
+			if (config.isMultiField()) {
+				// Not stored, title and abstract_text are already stored.
+				for (String copy : getWeightedText(doc)) {
+					luceneDoc.add(new Field(Constants.TITLE_ABSTRACT, copy, titleAbstractType));
+				}
+			}
+			// Relevance is not indexed, see RelevanceJudgments
+			luceneDoc.add(new NumericDocValuesField(Constants.SEARCH_TASK_NUMBER, doc.getSearchTaskNumber()));
 			// Write the lucene document to the Index
 			writer.addDocument(luceneDoc);
 		}
+		// The index is read only from now on, a single segment is the fastest
+		// to search. The merge policy only merges adjacent segments, the doc
+		// ids don't change.
+		writer.forceMerge(1);
 		// Closing the Index is Important
 		writer.close();
+		if (judgments == null) {
+			judgments = RelevanceJudgments.fromDocuments(docs);
+		}
 		// Open the directory and create the searcher which will be used in the
 		// search method.
 		reader = DirectoryReader.open(dir);
 		searcher = new IndexSearcher(reader);
 		searcher.setSimilarity(config.getSimilarity());
+		taskByDoc = FacetCollector.loadTasks(reader);
+		// The counts of the previous index are stale
+		facetCache.clear();
+		if (suggestions) {
+			suggester = new QuerySuggester(Constants.TITLE, Constants.ABSTRACT_TEXT);
+			suggester.refresh(reader);
+		}
+		if (documentStorePath != null) {
+			DocumentStore.write(reader, new String[] { Constants.TITLE, Constants.ABSTRACT_TEXT }, documentStorePath);
+			documentStore = DocumentStore.open(documentStorePath);
+		}
+		if (forwardIndexPath != null) {
+			String[] fields = config.isMultiField()
+					? new String[] { Constants.TITLE, Constants.ABSTRACT_TEXT, Constants.TITLE_ABSTRACT }
+					: new String[] { Constants.TITLE, Constants.ABSTRACT_TEXT };
+			ForwardIndex.write(reader, fields, forwardIndexPath);
+			forwardIndex = ForwardIndex.open(forwardIndexPath);
+			featureExtractor = new FeatureExtractor(reader, forwardIndex);
+		}
+		if (config.getVectorWeight() > 0) {
+			if (forwardIndex == null) {
+				throw new IllegalStateException("The vector search needs the forward index, see enableForwardIndex()");
+			}
+			vectorIndex = VectorIndex.build(reader, forwardIndex, 256, 42);
+		}
+		warm();
+	}
+
+	// Replays the most frequent queries of the log, neither printed,
+	// profiled nor recorded, the facets of the calling thread are left as
+	// they were.
+	private void warm() {
+		QueryLog log = queryLog;
+		if (log == null) {
+			return;
+		}
+		FacetCollector.Counts lastFacets = facets.get();
+		try {
+			for (String queryString : log.getTopQueries(warmupQueries)) {
+				try {
+					search(queryString, WARMUP_HITS, faceting, true);
+				} catch (RuntimeException e) {
+					// A logged query which doesn't parse or run, skipped
+				}
+			}
+		} finally {
+			facets.set(lastFacets);
+		}
+	}
+
+	// The type as it is by default, otherwise a copy of it with positions
+	// for the position fields and only frequencies for the other ones, and
+	// in the low memory mode without norms if the field isn't searched.
+	private FieldType getTextType(String field, FieldType type) {
+		if (positionFields == null) {
+			return type;
+		}
+		FieldType restricted = new FieldType(type);
+		restricted.setIndexOptions(positionFields.contains(field) ? IndexOptions.DOCS_AND_FREQS_AND_POSITIONS
+				: IndexOptions.DOCS_AND_FREQS);
+		restricted.setOmitNorms(lowMemory && !field.equals(config.getSearchField()));
+		restricted.freeze();
+		return restricted;
+	}
+
+	/**
+	 * Builds the values of the Constants.TITLE_ABSTRACT field, the title is
+	 * repeated titleWeight times and the abstract abstractWeight times so that
+	 * the term frequencies (and the length) of the combined field are the
+	 * weighted sums of the per-field values. Each copy is a separate value,
+	 * the analyzer leaves a position gap between them so that phrases and
+	 * proximity clauses don't match across two copies.
+	 * 
+	 * @param doc
+	 *            The DocumentInCollection to index.
+	 * @return The weighted copies of title and abstract.
+	 */
+	private List<String> getWeightedText(DocumentInCollection doc) {
+		List<String> copies = new ArrayList<String>();
+		for (int i = 0; i < config.getTitleWeight(); i++) {
+			copies.add(doc.getTitle());
+		}
+		for (int i = 0; i < config.getAbstractWeight(); i++) {
+			copies.add(doc.getAbstractText());
+		}
+		return copies;
 	}
 
 	/**
@@ -257,11 +1258,39 @@ public class LuceneSearchApp {
 					.add(new Configuration(Constants.NO_REMOVE_STOP_WORDS, Constants.ENGLISH_STEMMER, Constants.BM25));
 			configurations
 					.add(new Configuration(Constants.NO_REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25));
+			// Multi-field (BM25F) ranking over title and abstract_text, to be
+			// compared against the single field configurations above.
+			configurations.add(
+					new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25, 2, 1));
+			configurations.add(
+					new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25, 3, 1));
+			// Two pass retrieval with pseudo relevance feedback.
+			Configuration feedbackConfig = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			feedbackConfig.setRelevanceFeedback(true);
+			configurations.add(feedbackConfig);
+			// Hybrid lexical + hashed vector ranking.
+			Configuration vectorConfig = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			vectorConfig.setVectorWeight(0.3f);
+			configurations.add(vectorConfig);
+			// Term pairs of the query close to each other score higher.
+			Configuration proximityConfig = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			proximityConfig.setProximity(2, 0.5f);
+			configurations.add(proximityConfig);
 
 			// Aggeregate data for average 11 point precision recall
 			Map<String, List<Double>> avg11ptPRByConfig = new HashMap<String, List<Double>>();
 			// Mean average precision per query
 			Map<String, List<Double>> mapByConfiguration = new HashMap<String, List<Double>>();
+			// Search latency in milliseconds per query
+			Map<String, List<Double>> latencyByConfiguration = new HashMap<String, List<Double>>();
+			// nDCG, P@k, R-precision... per query
+			EvaluationMetrics metrics = new EvaluationMetrics(5, 10, 20);
+			Map<String, EvaluationMetrics.Aggregate> metricsByConfiguration =
+					new LinkedHashMap<String, EvaluationMetrics.Aggregate>();
+			double[] metricValues = metrics.newValues();
 
 			for (String queryString : queryStrings) {
 				System.out.println("----------------------------------------------------------------------");
@@ -270,11 +1299,21 @@ public class LuceneSearchApp {
 				for (Configuration config : configurations) {
 					System.out.println("-----------------------------------");
 					LuceneSearchApp engine = new LuceneSearchApp(config);
+					if (config.isRelevanceFeedbackUsed() || config.getVectorWeight() > 0) {
+						// The feedback terms and the vectors are read from a
+						// forward index.
+						Path forwardIndexFile = Files.createTempFile("forward", ".idx");
+						forwardIndexFile.toFile().deleteOnExit();
+						engine.enableForwardIndex(forwardIndexFile);
+					}
 					engine.index(docs);
 					engine.printConfig();
 
+					long start = System.nanoTime();
 					List<DocumentInCollection> searchResults = engine.search(queryString,
 							docProcessor.getTotalDocCount());
+					double latencyMs = (System.nanoTime() - start) / 1e6;
+					engine.close();
 					SearchResultStats stats = docProcessor.getRankedSearchResultStats(searchResults);
 					System.out.println(stats);
 					System.out.println("Printing top 10 results:");
@@ -286,6 +1325,16 @@ public class LuceneSearchApp {
 							// stats.getAveragePrecisionAtK(20));
 							stats.getAverage_precision());
 					engine.addToAvg11ptPRByConfig(avg11ptPRByConfig, config.toString(), stats.getElevenPointPR());
+					if (!latencyByConfiguration.containsKey(config.toString())) {
+						latencyByConfiguration.put(config.toString(), new ArrayList<Double>());
+					}
+					latencyByConfiguration.get(config.toString()).add(latencyMs);
+					boolean[] relevance = new boolean[searchResults.size()];
+					for (int rank = 0; rank < relevance.length; rank++) {
+						relevance[rank] = searchResults.get(rank).isRelevant();
+					}
+					metricsByConfiguration.computeIfAbsent(config.toString(), k -> metrics.newAggregate()).add(metrics
+							.evaluate(relevance, relevance.length, docProcessor.getRelevantDocCount(), metricValues));
 				}
 			}
 			System.out.println("----------------------------------------------------------------------");
@@ -297,6 +1346,34 @@ public class LuceneSearchApp {
 							+ v.stream().collect(Collectors.summarizingDouble(Double::doubleValue)).getAverage()
 							+ " , for Config : " + k));
 			System.out.println("----------------------------------------------------------------------");
+			System.out.println("Mean Search Latency:");
+			System.out.println("----------------------------------------------------------------------");
+			// NOTE : the first configurations also pay for the JIT warmup.
+			latencyByConfiguration.forEach((k,
+					v) -> System.out.println("Latency = "
+							+ v.stream().collect(Collectors.summarizingDouble(Double::doubleValue)).getAverage()
+							+ " ms , MAP = "
+							+ mapByConfiguration.get(k).stream()
+									.collect(Collectors.summarizingDouble(Double::doubleValue)).getAverage()
+							+ " , for Config : " + k));
+			System.out.println("----------------------------------------------------------------------");
+			System.out.println("Evaluation Metrics:");
+			System.out.println("----------------------------------------------------------------------");
+			metricsByConfiguration.forEach((k, v) -> System.out.println(v + " , for Config : " + k));
+			System.out.println("----------------------------------------------------------------------");
+			System.out.println("Paired Significance against BM25 (randomization test, 95% bootstrap interval):");
+			System.out.println("----------------------------------------------------------------------");
+			// The average precisions of a configuration are in query order
+			Map<String, double[]> apByConfiguration = new HashMap<String, double[]>();
+			mapByConfiguration.forEach((k, v) -> apByConfiguration.put(k,
+					v.stream().mapToDouble(Double::doubleValue).toArray()));
+			String baseline = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25).toString();
+			// NOTE : with few queries the exact randomization test can't go
+			// below a p-value of 2 / 2^queries.
+			SignificanceTests.compareAll(apByConfiguration, baseline, 10000, 0.95, 42)
+					.forEach(System.out::println);
+			System.out.println("----------------------------------------------------------------------");
 			System.out.println("Averaged 11 Point Precision Recall Values:");
 			System.out.println("----------------------------------------------------------------------");
 			for (Map.Entry<String, List<Double>> entry : avg11ptPRByConfig.entrySet()) {
@@ -0,0 +1,129 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+
+/**
+ * Term order and adjacency for the bag of words queries. The original query
+ * is kept as it is (it decides which documents match), and every pair of
+ * adjacent query terms adds an ordered span near clause, so the documents
+ * where "collaborative" is followed by "filtering" within the slop score
+ * higher than the ones where both words only occur somewhere. Phrases and
+ * sloppy phrases can also be searched directly, the query parser turns
+ * "collaborative filtering"~2 into a PhraseQuery.
+ *
+ * Both need the positions of the searched field, see
+ * LuceneSearchApp.setPositionFields().
+ */
+public class ProximityQueries {
+
+	private ProximityQueries() {
+	}
+
+	/**
+	 * @param query
+	 *            The original query, required.
+	 * @param field
+	 *            Field of the term pairs.
+	 * @param terms
+	 *            The analysed query terms, in query order.
+	 * @param slop
+	 *            Maximum number of positions between the two terms of a pair.
+	 * @param boost
+	 *            Boost of every pair clause.
+	 * @return The query with optional pair clauses, the query itself if it
+	 *         has no pair of different terms.
+	 */
+	public static Query withProximityBoost(Query query, String field, List<String> terms, int slop, float boost) {
+		Set<List<String>> pairs = new LinkedHashSet<List<String>>();
+		for (int i = 0; i + 1 < terms.size(); i++) {
+			if (!terms.get(i).equals(terms.get(i + 1))) {
+				pairs.add(terms.subList(i, i + 2));
+			}
+		}
+		if (pairs.isEmpty()) {
+			return query;
+		}
+		BooleanQuery.Builder boosted = new BooleanQuery.Builder();
+		boosted.add(query, BooleanClause.Occur.MUST);
+		for (List<String> pair : pairs) {
+			SpanQuery near = new SpanNearQuery(new SpanQuery[] { new SpanTermQuery(new Term(field, pair.get(0))),
+					new SpanTermQuery(new Term(field, pair.get(1))) }, slop, true);
+			boosted.add(new BoostQuery(near, boost), BooleanClause.Occur.SHOULD);
+		}
+		return boosted.build();
+	}
+
+	/**
+	 * Measures the cost of the positions: the index size and time without
+	 * positions, with positions and offsets in all the fields (the default)
+	 * and with the positions of abstract_text only, then the latency of the
+	 * plain queries, of the proximity boosted queries and of the same words
+	 * searched as a sloppy phrase, for a 10 hit page.
+	 *
+	 * Usage: ProximityQueries corpus.(xml|bin) [queries]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+			List<String> queries = LoadGenerator.syntheticQueries(docs, numQueries, 3, 42);
+
+			Configuration plain = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			Configuration proximity = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			proximity.setProximity(2, 0.5f);
+			// null is the default, positions and offsets in all the fields
+			String[][] positionFields = { {}, null, { Constants.ABSTRACT_TEXT }, { Constants.ABSTRACT_TEXT },
+					{ Constants.ABSTRACT_TEXT } };
+			Configuration[] configs = { plain, plain, plain, proximity, plain };
+			String[] names = { "no positions", "positions + offsets (default)", "abstract positions",
+					"abstract positions, proximity", "abstract positions, phrase" };
+			// Warms up the JIT for the indexing times
+			new LuceneSearchApp(plain).index(docs);
+			for (int c = 0; c < configs.length; c++) {
+				LuceneSearchApp engine = new LuceneSearchApp(configs[c]);
+				if (positionFields[c] != null) {
+					engine.setPositionFields(positionFields[c]);
+				}
+				long start = System.nanoTime();
+				engine.index(docs);
+				double indexSeconds = (System.nanoTime() - start) / 1e9;
+				engine.setVerbose(false);
+				LatencyStats latencies = new LatencyStats();
+				// Twice, the first round warms up the JIT
+				for (int round = 0; round < 2; round++) {
+					for (String query : queries) {
+						String queryString = c == 4 ? "\"" + query + "\"~3" : query;
+						start = System.nanoTime();
+						engine.search(queryString, 10);
+						if (round == 1) {
+							latencies.record(System.nanoTime() - start);
+						}
+					}
+				}
+				System.out.println(String.format("%-30s : index = %.1f MB in %.1f s, search %s", names[c],
+						engine.getIndexSizeInBytes() / 1e6, indexSeconds, latencies));
+				engine.close();
+			}
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Counts of the searched queries, see LuceneSearchApp.setWarmup(). A log file
+ * line is the count of a query and the query string. The number of distinct
+ * queries is bounded: when the log is full, the counts are halved and the
+ * queries seen once are dropped, the frequent ones stay. The methods are
+ * thread safe, a log can be shared by several engines.
+ */
+public class QueryLog {
+	private int maxQueries;
+	// query -> number of searches, in first search order
+	private Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+
+	/**
+	 * @param maxQueries
+	 *            Maximum number of distinct queries kept.
+	 */
+	public QueryLog(int maxQueries) {
+		this.maxQueries = maxQueries;
+	}
+
+	/**
+	 * Reads a log file, one "count&lt;TAB&gt;query" line per query (see
+	 * write()), a line without a count is one search of the query, blank lines
+	 * are skipped.
+	 *
+	 * @param path
+	 *            The log file.
+	 * @param maxQueries
+	 *            Maximum number of distinct queries kept.
+	 * @return The log, with the counts of the file.
+	 * @throws IOException
+	 *             If the file couldn't be read.
+	 */
+	public static QueryLog read(Path path, int maxQueries) throws IOException {
+		QueryLog log = new QueryLog(maxQueries);
+		try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String query = line.trim();
+				int count = 1;
+				int tab = line.indexOf('\t');
+				if (tab > 0) {
+					try {
+						count = Integer.parseInt(line.substring(0, tab));
+						query = line.substring(tab + 1).trim();
+					} catch (NumberFormatException e) {
+						// Not a count, the tab is part of the query
+					}
+				}
+				if (!query.isEmpty() && count > 0) {
+					log.add(query, count);
+				}
+			}
+		}
+		return log;
+	}
+
+	/**
+	 * Writes the queries, the most frequent first, one "count&lt;TAB&gt;query"
+	 * line per query, so the file grows with the distinct queries and read()
+	 * gives back the same counts.
+	 *
+	 * @param path
+	 *            The log file.
+	 * @throws IOException
+	 *             If the file couldn't be written.
+	 */
+	public void write(Path path) throws IOException {
+		List<Map.Entry<String, Integer>> entries = getEntriesByCount();
+		try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Integer> entry : entries) {
+				out.write(entry.getValue() + "\t" + entry.getKey());
+				out.newLine();
+			}
+		}
+	}
+
+	/**
+	 * @param queryString
+	 *            A searched query.
+	 */
+	public void record(String queryString) {
+		add(queryString, 1);
+	}
+
+	private synchronized void add(String queryString, int searches) {
+		Integer count = counts.get(queryString);
+		if (count == null && counts.size() >= maxQueries) {
+			decay();
+		}
+		counts.put(queryString, count == null ? searches : count + searches);
+	}
+
+	// Halves the counts, the queries seen once go
+	private void decay() {
+		for (Iterator<Map.Entry<String, Integer>> entries = counts.entrySet().iterator(); entries.hasNext();) {
+			Map.Entry<String, Integer> entry = entries.next();
+			if (entry.getValue() <= 1) {
+				entries.remove();
+			} else {
+				entry.setValue(entry.getValue() / 2);
+			}
+		}
+	}
+
+	/**
+	 * @param n
+	 *            Number of queries.
+	 * @return The n most frequent queries, the most frequent first.
+	 */
+	public List<String> getTopQueries(int n) {
+		List<Map.Entry<String, Integer>> entries = getEntriesByCount();
+		List<String> top = new ArrayList<String>();
+		for (Map.Entry<String, Integer> entry : entries.subList(0, Math.min(n, entries.size()))) {
+			top.add(entry.getKey());
+		}
+		return top;
+	}
+
+	// Copy of the entries, the most frequent first, the ties in first search
+	// order (the sort is stable)
+	private List<Map.Entry<String, Integer>> getEntriesByCount() {
+		List<Map.Entry<String, Integer>> entries;
+		synchronized (this) {
+			entries = new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+		}
+		Collections.sort(entries, (a, b) -> b.getValue() - a.getValue());
+		return entries;
+	}
+
+	/**
+	 * @return The number of distinct queries.
+	 */
+	public synchronized int size() {
+		return counts.size();
+	}
+
+	/**
+	 * Simulates the start of a server with the log of its previous run:
+	 * indexes the corpus with BM25 and with RM3 and measures the first
+	 * searches of a Zipf distributed traffic against the steady state. Run it
+	 * in a fresh JVM with and without warmup to see the JIT compilation cost
+	 * too.
+	 *
+	 * Usage: QueryLog corpus.(xml|bin) [warmup queries]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int warmupQueries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+			List<String> distinct = LoadGenerator.syntheticQueries(docs, 500, 3, 42);
+			// Zipf : the query of rank r is searched in proportion to 1 / r
+			double[] cumulative = new double[distinct.size()];
+			for (int r = 0; r < cumulative.length; r++) {
+				cumulative[r] = (r == 0 ? 0 : cumulative[r - 1]) + 1.0 / (r + 1);
+			}
+			Random random = new Random(42);
+			List<String> traffic = new ArrayList<String>();
+			for (int i = 0; i < 6000; i++) {
+				int r = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+				traffic.add(distinct.get(r < 0 ? -r - 1 : r));
+			}
+			// The log of the previous run of the server
+			QueryLog log = new QueryLog(10000);
+			for (String query : traffic.subList(0, 3000)) {
+				log.record(query);
+			}
+			System.out.println(String.format("warmup with the top %d of %d logged queries", warmupQueries,
+					log.size()));
+
+			Configuration bm25 = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			Configuration rm3 = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			rm3.setRelevanceFeedback(true);
+			for (Configuration config : new Configuration[] { bm25, rm3 }) {
+				LuceneSearchApp engine = new LuceneSearchApp(config);
+				engine.setVerbose(false);
+				engine.setFaceting(true);
+				engine.setWarmup(log, warmupQueries);
+				long start = System.nanoTime();
+				engine.index(docs);
+				double indexMs = (System.nanoTime() - start) / 1e6;
+				LatencyStats first = new LatencyStats();
+				LatencyStats steady = new LatencyStats();
+				for (int i = 3000; i < traffic.size(); i++) {
+					start = System.nanoTime();
+					engine.search(traffic.get(i), 10);
+					(i < 3200 ? first : steady).record(System.nanoTime() - start);
+				}
+				System.out.println(config);
+				System.out.println(String.format("  index() %.1f ms, first 200 searches %s", indexMs, first));
+				System.out.println(String.format("  steady state %s", steady));
+				engine.close();
+			}
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+}
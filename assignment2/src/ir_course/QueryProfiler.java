@@ -0,0 +1,456 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.Similarity;
+
+/**
+ * Searcher timing the execution of a query clause by clause. Every weight
+ * it creates, those of the sub-queries included (a BooleanQuery creates the
+ * weights of its clauses through the searcher), is wrapped so that the
+ * scorers record the time and number of their nextDoc() / advance(), two
+ * phase matches() and score() calls. The profile is a tree of these
+ * counters mirroring the query, with the Lucene rewrite time, plus the stages
+ * of LuceneSearchApp.search() (see LuceneSearchApp.setProfiling()).
+ *
+ * The times are inclusive, a clause's time contains the time of its
+ * children. The measure costs two System.nanoTime() calls per call, and the
+ * top level query is always scored document at a time (no BooleanScorer
+ * bulk scoring), so the profiled search is slower than the plain one: the
+ * profile tells which clauses dominate, not the absolute latency. A profiler
+ * profiles one search, from one thread.
+ */
+public class QueryProfiler extends IndexSearcher {
+	private Profile profile;
+	// The nodes whose weight is being created, the parents of the new ones
+	private Deque<Node> building = new ArrayDeque<Node>();
+
+	/**
+	 * @param reader
+	 *            The reader to search.
+	 * @param similarity
+	 *            The similarity of the engine.
+	 * @param profile
+	 *            The profile the search is recorded into.
+	 */
+	public QueryProfiler(IndexReader reader, Similarity similarity, Profile profile) {
+		super(reader);
+		setSimilarity(similarity);
+		// The cached clauses would hide their cost
+		setQueryCache(null);
+		this.profile = profile;
+	}
+
+	@Override
+	public Query rewrite(Query original) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return super.rewrite(original);
+		} finally {
+			profile.rewriteNanos += System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	public Weight createWeight(Query query, boolean needsScores) throws IOException {
+		Node node = new Node(query);
+		if (building.isEmpty()) {
+			profile.root = node;
+		} else {
+			building.peek().children.add(node);
+		}
+		building.push(node);
+		long start = System.nanoTime();
+		try {
+			return new ProfileWeight(super.createWeight(query, needsScores), node);
+		} finally {
+			node.weightNanos += System.nanoTime() - start;
+			building.pop();
+		}
+	}
+
+	/**
+	 * The counters of one query clause.
+	 */
+	public static class Node {
+		private Query query;
+		private List<Node> children = new ArrayList<Node>();
+		private long weightNanos;
+		private long scorerNanos;
+		private long iterateNanos;
+		private long nextDocs;
+		private long advances;
+		private long visited;
+		private long matchNanos;
+		private long matches;
+		private long scoreNanos;
+		private long scores;
+
+		private Node(Query query) {
+			this.query = query;
+		}
+
+		public Query getQuery() {
+			return query;
+		}
+
+		public List<Node> getChildren() {
+			return children;
+		}
+
+		/**
+		 * @return Time spent in nextDoc(), advance() and matches(), and in
+		 *         score().
+		 */
+		public long getTotalNanos() {
+			return iterateNanos + matchNanos + scoreNanos;
+		}
+
+		/**
+		 * @return Number of documents the clause stopped on.
+		 */
+		public long getVisited() {
+			return visited;
+		}
+
+		private void append(StringBuilder out, String indent) {
+			String text = query.toString();
+			out.append(String.format(
+					"%s%s %s : weight %.3f ms, scorer %.3f ms, iterate %.3f ms (%d nextDoc, %d advance, %d visited), "
+							+ "match %.3f ms (%d), score %.3f ms (%d)%n",
+					indent, query.getClass().getSimpleName(), text.length() > 60 ? text.substring(0, 57) + "..." : text,
+					weightNanos / 1e6, scorerNanos / 1e6, iterateNanos / 1e6, nextDocs, advances, visited,
+					matchNanos / 1e6, matches, scoreNanos / 1e6, scores));
+			for (Node child : children) {
+				child.append(out, indent + "  ");
+			}
+		}
+	}
+
+	/**
+	 * The profile of one search: the time of the search stages and the clause
+	 * tree of the query.
+	 */
+	public static class Profile {
+		private String queryString;
+		private Map<String, Long> stageNanos = new LinkedHashMap<String, Long>();
+		private long rewriteNanos;
+		private Node root;
+
+		/**
+		 * @param queryString
+		 *            The profiled query.
+		 */
+		public Profile(String queryString) {
+			this.queryString = queryString;
+		}
+
+		/**
+		 * Records a stage which started at the given time and ends now.
+		 *
+		 * @return The end of the stage, the start of the next one.
+		 */
+		public long addStage(String stage, long startNanos) {
+			long now = System.nanoTime();
+			stageNanos.merge(stage, now - startNanos, Long::sum);
+			return now;
+		}
+
+		/**
+		 * @return The time of the stages, in order.
+		 */
+		public Map<String, Long> getStageNanos() {
+			return stageNanos;
+		}
+
+		/**
+		 * @return The time of the Lucene rewrite (multi term queries...).
+		 */
+		public long getRewriteNanos() {
+			return rewriteNanos;
+		}
+
+		/**
+		 * @return The clause tree of the executed query, null if the search
+		 *         wasn't profiled.
+		 */
+		public Node getRoot() {
+			return root;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder("Profile of : " + queryString + System.lineSeparator() + " ");
+			for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+				out.append(String.format(" %s %.3f ms", stage.getKey(), stage.getValue() / 1e6));
+			}
+			out.append(String.format(", lucene rewrite %.3f ms%n", rewriteNanos / 1e6));
+			if (root != null) {
+				root.append(out, "  ");
+			}
+			return out.toString();
+		}
+	}
+
+	/**
+	 * Profiles the synthetic queries with several configurations: the latency
+	 * with and without profiling, the mean time of the search stages, the
+	 * number of queries whose top 10 changed under profiling, and the profile
+	 * of the slowest query. Then explains the top hit of the first query.
+	 *
+	 * Usage: QueryProfiler corpus.(xml|bin) [queries]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+			List<String> queries = LoadGenerator.syntheticQueries(docs, numQueries, 3, 42);
+
+			List<Configuration> configs = new ArrayList<Configuration>();
+			configs.add(new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25));
+			configs.add(new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25, 2, 1));
+			Configuration rm3 = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			rm3.setRelevanceFeedback(true);
+			configs.add(rm3);
+			Configuration proximity = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			proximity.setProximity(2, 0.5f);
+			configs.add(proximity);
+
+			LuceneSearchApp first = null;
+			for (Configuration config : configs) {
+				LuceneSearchApp engine = new LuceneSearchApp(config);
+				engine.index(docs);
+				engine.setVerbose(false);
+				LatencyStats[] latencies = new LatencyStats[2];
+				List<List<String>> topTitles = new ArrayList<List<String>>();
+				Map<String, Long> stageNanos = new LinkedHashMap<String, Long>();
+				Profile slowest = null;
+				long slowestNanos = -1;
+				for (int profiled = 0; profiled < 2; profiled++) {
+					engine.setProfiling(profiled == 1);
+					List<String> titles = new ArrayList<String>();
+					// Twice, the first round warms up the JIT
+					for (int round = 0; round < 2; round++) {
+						latencies[profiled] = new LatencyStats();
+						titles.clear();
+						for (String query : queries) {
+							long start = System.nanoTime();
+							List<DocumentInCollection> results = engine.search(query, 10);
+							long nanos = System.nanoTime() - start;
+							latencies[profiled].record(nanos);
+							StringBuilder top = new StringBuilder();
+							for (DocumentInCollection result : results) {
+								top.append(result.getTitle()).append('\n');
+							}
+							titles.add(top.toString());
+							if (profiled == 1 && round == 1) {
+								Profile profile = engine.getProfile();
+								for (Map.Entry<String, Long> stage : profile.getStageNanos().entrySet()) {
+									stageNanos.merge(stage.getKey(), stage.getValue(), Long::sum);
+								}
+								if (nanos > slowestNanos) {
+									slowest = profile;
+									slowestNanos = nanos;
+								}
+							}
+						}
+					}
+					topTitles.add(new ArrayList<String>(titles));
+				}
+				int changed = 0;
+				for (int q = 0; q < queries.size(); q++) {
+					changed += topTitles.get(0).get(q).equals(topTitles.get(1).get(q)) ? 0 : 1;
+				}
+				System.out.println(config);
+				System.out.println("  plain    " + latencies[0]);
+				System.out.println("  profiled " + latencies[1]);
+				StringBuilder stages = new StringBuilder("  mean stages :");
+				for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+					stages.append(String.format(" %s %.3f ms", stage.getKey(), stage.getValue() / 1e6 / queries.size()));
+				}
+				System.out.println(stages + ", top 10 changed for " + changed + " queries");
+				System.out.print("  slowest : " + slowest);
+				System.out.println();
+				if (first == null) {
+					first = engine;
+				} else {
+					engine.close();
+				}
+			}
+			System.out.println("Explanation of the top hit of : " + queries.get(0));
+			for (Explanation explanation : first.explain(queries.get(0), 1)) {
+				System.out.print(explanation);
+			}
+			first.close();
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+
+	private static class ProfileWeight extends Weight {
+		private Weight weight;
+		private Node node;
+
+		ProfileWeight(Weight weight, Node node) {
+			super(weight.getQuery());
+			this.weight = weight;
+			this.node = node;
+		}
+
+		@Override
+		public Scorer scorer(LeafReaderContext context) throws IOException {
+			long start = System.nanoTime();
+			Scorer scorer = weight.scorer(context);
+			node.scorerNanos += System.nanoTime() - start;
+			return scorer == null ? null : new ProfileScorer(this, scorer, node);
+		}
+
+		@Override
+		public void extractTerms(Set<Term> terms) {
+			weight.extractTerms(terms);
+		}
+
+		@Override
+		public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+			return weight.explain(context, doc);
+		}
+
+		@Override
+		public float getValueForNormalization() throws IOException {
+			return weight.getValueForNormalization();
+		}
+
+		@Override
+		public void normalize(float norm, float boost) {
+			weight.normalize(norm, boost);
+		}
+	}
+
+	private static class ProfileScorer extends Scorer {
+		private Scorer scorer;
+		private Node node;
+		private DocIdSetIterator iterator;
+		private TwoPhaseIterator twoPhase;
+
+		ProfileScorer(Weight weight, Scorer scorer, Node node) {
+			super(weight);
+			this.scorer = scorer;
+			this.node = node;
+			iterator = new ProfileIterator(scorer.iterator(), node);
+			TwoPhaseIterator delegate = scorer.twoPhaseIterator();
+			if (delegate != null) {
+				twoPhase = new TwoPhaseIterator(new ProfileIterator(delegate.approximation(), node)) {
+					@Override
+					public boolean matches() throws IOException {
+						long start = System.nanoTime();
+						try {
+							return delegate.matches();
+						} finally {
+							node.matchNanos += System.nanoTime() - start;
+							node.matches++;
+						}
+					}
+
+					@Override
+					public float matchCost() {
+						return delegate.matchCost();
+					}
+				};
+			}
+		}
+
+		@Override
+		public int docID() {
+			return scorer.docID();
+		}
+
+		@Override
+		public float score() throws IOException {
+			long start = System.nanoTime();
+			try {
+				return scorer.score();
+			} finally {
+				node.scoreNanos += System.nanoTime() - start;
+				node.scores++;
+			}
+		}
+
+		@Override
+		public int freq() throws IOException {
+			return scorer.freq();
+		}
+
+		@Override
+		public DocIdSetIterator iterator() {
+			return iterator;
+		}
+
+		@Override
+		public TwoPhaseIterator twoPhaseIterator() {
+			return twoPhase;
+		}
+	}
+
+	private static class ProfileIterator extends DocIdSetIterator {
+		private DocIdSetIterator iterator;
+		private Node node;
+
+		ProfileIterator(DocIdSetIterator iterator, Node node) {
+			this.iterator = iterator;
+			this.node = node;
+		}
+
+		@Override
+		public int docID() {
+			return iterator.docID();
+		}
+
+		@Override
+		public int nextDoc() throws IOException {
+			long start = System.nanoTime();
+			int doc = iterator.nextDoc();
+			node.iterateNanos += System.nanoTime() - start;
+			node.nextDocs++;
+			node.visited += doc != NO_MORE_DOCS ? 1 : 0;
+			return doc;
+		}
+
+		@Override
+		public int advance(int target) throws IOException {
+			long start = System.nanoTime();
+			int doc = iterator.advance(target);
+			node.iterateNanos += System.nanoTime() - start;
+			node.advances++;
+			node.visited += doc != NO_MORE_DOCS ? 1 : 0;
+			return doc;
+		}
+
+		@Override
+		public long cost() {
+			return iterator.cost();
+		}
+	}
+}
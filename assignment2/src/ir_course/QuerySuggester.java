@@ -0,0 +1,386 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Spelling corrections ("did you mean") and prefix completions from the
+ * vocabulary of the index, the analysed terms of title and abstract_text
+ * weighted by their document frequency.
+ *
+ * The corrections use a SymSpell deletion dictionary: every term is stored
+ * under all the strings obtained by deleting up to two characters of its
+ * first PREFIX_LENGTH characters, a misspelled term is looked up under its
+ * own deletions and the candidates are checked with the (optimal string
+ * alignment) edit distance. The closest candidate wins, then the most
+ * frequent one. The completions are a range of a sorted map.
+ *
+ * The vocabulary is kept per segment, refresh() only reads the segments it
+ * doesn't know yet and drops the ones that are gone, so reopening the reader
+ * after adding documents doesn't read the whole index again.
+ */
+public class QuerySuggester {
+	private static final int MAX_EDIT_DISTANCE = 2;
+	// Only the start of the terms is indexed, it bounds the number of
+	// deletions of the long terms.
+	private static final int PREFIX_LENGTH = 7;
+
+	private String[] fields;
+	// Document frequencies of the terms by segment core
+	private Map<Object, Map<String, Integer>> segments = new HashMap<Object, Map<String, Integer>>();
+	// Summed over the segments and the fields
+	private TreeMap<String, Integer> docFreqs = new TreeMap<String, Integer>();
+	// Deletion -> terms whose prefix gives that deletion
+	private Map<String, List<String>> deletes = new HashMap<String, List<String>>();
+
+	/**
+	 * @param fields
+	 *            The fields whose terms are suggested.
+	 */
+	public QuerySuggester(String... fields) {
+		this.fields = fields;
+	}
+
+	/**
+	 * Brings the vocabulary up to date with the reader: the terms of the new
+	 * segments are added, the terms of the segments no longer in the reader
+	 * are removed.
+	 *
+	 * @param reader
+	 *            The current reader of the index.
+	 * @return The number of segments read.
+	 * @throws IOException
+	 *             If the terms couldn't be read.
+	 */
+	public synchronized int refresh(IndexReader reader) throws IOException {
+		Set<Object> current = new HashSet<Object>();
+		int read = 0;
+		for (LeafReaderContext leaf : reader.leaves()) {
+			Object key = leaf.reader().getCoreCacheKey();
+			current.add(key);
+			if (segments.containsKey(key)) {
+				continue;
+			}
+			Map<String, Integer> segment = new HashMap<String, Integer>();
+			for (String field : fields) {
+				Terms terms = leaf.reader().terms(field);
+				if (terms == null) {
+					continue;
+				}
+				TermsEnum termsEnum = terms.iterator();
+				BytesRef term;
+				while ((term = termsEnum.next()) != null) {
+					segment.merge(term.utf8ToString(), termsEnum.docFreq(), Integer::sum);
+				}
+			}
+			segments.put(key, segment);
+			segment.forEach((term, docFreq) -> add(term, docFreq));
+			read++;
+		}
+		for (Object key : new ArrayList<Object>(segments.keySet())) {
+			if (!current.contains(key)) {
+				segments.remove(key).forEach((term, docFreq) -> add(term, -docFreq));
+			}
+		}
+		return read;
+	}
+
+	private void add(String term, int docFreq) {
+		Integer previous = docFreqs.get(term);
+		int updated = (previous == null ? 0 : previous) + docFreq;
+		if (updated > 0) {
+			docFreqs.put(term, updated);
+			if (previous == null) {
+				for (String deletion : getDeletions(term)) {
+					deletes.computeIfAbsent(deletion, d -> new ArrayList<String>(1)).add(term);
+				}
+			}
+		} else {
+			docFreqs.remove(term);
+			for (String deletion : getDeletions(term)) {
+				List<String> terms = deletes.get(deletion);
+				terms.remove(term);
+				if (terms.isEmpty()) {
+					deletes.remove(deletion);
+				}
+			}
+		}
+	}
+
+	// The prefix of the term and everything it gives with up to
+	// MAX_EDIT_DISTANCE deletions.
+	private static Set<String> getDeletions(String term) {
+		Set<String> deletions = new HashSet<String>();
+		String prefix = term.length() > PREFIX_LENGTH ? term.substring(0, PREFIX_LENGTH) : term;
+		deletions.add(prefix);
+		List<String> level = Collections.singletonList(prefix);
+		for (int distance = 0; distance < MAX_EDIT_DISTANCE; distance++) {
+			List<String> next = new ArrayList<String>();
+			for (String word : level) {
+				for (int i = 0; i < word.length(); i++) {
+					String deletion = word.substring(0, i) + word.substring(i + 1);
+					if (deletions.add(deletion)) {
+						next.add(deletion);
+					}
+				}
+			}
+			level = next;
+		}
+		return deletions;
+	}
+
+	/**
+	 * @return The number of distinct terms.
+	 */
+	public synchronized int size() {
+		return docFreqs.size();
+	}
+
+	/**
+	 * @param term
+	 *            An analysed term.
+	 * @return The document frequency of the term, summed over the fields, 0
+	 *         if it isn't in the index.
+	 */
+	public synchronized int getDocFreq(String term) {
+		Integer docFreq = docFreqs.get(term);
+		return docFreq == null ? 0 : docFreq;
+	}
+
+	/**
+	 * @param term
+	 *            An analysed term.
+	 * @return The closest indexed term, the most frequent one on a tie, null
+	 *         if the term is in the index or nothing is close enough. Terms
+	 *         up to 4 characters are allowed one edit, longer ones two.
+	 */
+	public synchronized String correct(String term) {
+		if (term.isEmpty() || docFreqs.containsKey(term)) {
+			return null;
+		}
+		int maxDistance = term.length() <= 4 ? 1 : MAX_EDIT_DISTANCE;
+		String best = null;
+		int bestDistance = maxDistance + 1;
+		int bestDocFreq = 0;
+		Set<String> checked = new HashSet<String>();
+		for (String deletion : getDeletions(term)) {
+			List<String> candidates = deletes.get(deletion);
+			if (candidates == null) {
+				continue;
+			}
+			for (String candidate : candidates) {
+				if (!checked.add(candidate) || Math.abs(candidate.length() - term.length()) > maxDistance) {
+					continue;
+				}
+				int distance = getEditDistance(term, candidate, Math.min(maxDistance, bestDistance));
+				if (distance > maxDistance) {
+					continue;
+				}
+				int docFreq = docFreqs.get(candidate);
+				if (distance < bestDistance || (distance == bestDistance
+						&& (docFreq > bestDocFreq || (docFreq == bestDocFreq && candidate.compareTo(best) < 0)))) {
+					best = candidate;
+					bestDistance = distance;
+					bestDocFreq = docFreq;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Optimal string alignment distance (insertions, deletions,
+	 * substitutions and transpositions of adjacent characters).
+	 *
+	 * @return The distance, or max + 1 as soon as it is known to be larger
+	 *         than max.
+	 */
+	static int getEditDistance(String a, String b, int max) {
+		int[] previous2 = new int[b.length() + 1];
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int rowMin = i;
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+					current[j] = Math.min(current[j], previous2[j - 2] + 1);
+				}
+				rowMin = Math.min(rowMin, current[j]);
+			}
+			if (rowMin > max) {
+				return max + 1;
+			}
+			int[] swap = previous2;
+			previous2 = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.min(previous[b.length()], max + 1);
+	}
+
+	/**
+	 * @param prefix
+	 *            Start of an analysed term.
+	 * @param count
+	 *            Maximum number of completions.
+	 * @return The most frequent terms starting with the prefix, most frequent
+	 *         first.
+	 */
+	public synchronized List<String> complete(String prefix, int count) {
+		PriorityQueue<Map.Entry<String, Integer>> top = new PriorityQueue<Map.Entry<String, Integer>>(count + 1,
+				(a, b) -> a.getValue().equals(b.getValue()) ? b.getKey().compareTo(a.getKey())
+						: Integer.compare(a.getValue(), b.getValue()));
+		for (Map.Entry<String, Integer> entry : docFreqs.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+			top.add(entry);
+			if (top.size() > count) {
+				top.poll();
+			}
+		}
+		List<String> completions = new ArrayList<String>(top.size());
+		while (!top.isEmpty()) {
+			completions.add(top.poll().getKey());
+		}
+		Collections.reverse(completions);
+		return completions;
+	}
+
+	/**
+	 * Measures the suggestions: the vocabulary is built for half of the
+	 * documents, then refreshed after the other half is added. Vocabulary
+	 * terms with one or two random edits are corrected, and the completions
+	 * of 3 character prefixes are timed.
+	 *
+	 * Usage: QuerySuggester corpus.(xml|bin) [terms]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int numTerms = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+			Configuration config = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			Directory dir = new RAMDirectory();
+			IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(config.getAnalyzer()));
+			QuerySuggester suggester = new QuerySuggester(Constants.TITLE, Constants.ABSTRACT_TEXT);
+			IndexReader reader = null;
+			for (List<DocumentInCollection> half : Arrays.asList(docs.subList(0, docs.size() / 2),
+					docs.subList(docs.size() / 2, docs.size()))) {
+				for (DocumentInCollection doc : half) {
+					Document luceneDoc = new Document();
+					luceneDoc.add(new TextField(Constants.TITLE, doc.getTitle(), Field.Store.NO));
+					luceneDoc.add(new TextField(Constants.ABSTRACT_TEXT, doc.getAbstractText(), Field.Store.NO));
+					writer.addDocument(luceneDoc);
+				}
+				writer.commit();
+				if (reader == null) {
+					reader = DirectoryReader.open(dir);
+				} else {
+					IndexReader reopened = DirectoryReader.openIfChanged((DirectoryReader) reader);
+					reader.close();
+					reader = reopened;
+				}
+				long start = System.nanoTime();
+				int read = suggester.refresh(reader);
+				System.out.println(String.format("Refresh : %d of %d segments read, %d terms, %.1f ms", read,
+						reader.leaves().size(), suggester.size(), (System.nanoTime() - start) / 1e6));
+			}
+			writer.close();
+
+			// Misspell the terms of length 5 or more seen in at least 2 documents
+			List<String> vocabulary = new ArrayList<String>();
+			for (Map.Entry<String, Integer> entry : suggester.docFreqs.entrySet()) {
+				if (entry.getKey().length() >= 5 && entry.getValue() >= 2 && entry.getKey().matches("[a-z]+")) {
+					vocabulary.add(entry.getKey());
+				}
+			}
+			Random random = new Random(42);
+			String[] originals = new String[numTerms];
+			String[] typos = new String[numTerms];
+			for (int i = 0; i < numTerms; i++) {
+				originals[i] = vocabulary.get(random.nextInt(vocabulary.size()));
+				String typo = originals[i];
+				for (int edit = 1 + random.nextInt(2); edit > 0 || suggester.getDocFreq(typo) > 0; edit--) {
+					typo = misspell(typo, random);
+				}
+				typos[i] = typo;
+			}
+			LatencyStats correctLatencies = new LatencyStats();
+			LatencyStats completeLatencies = new LatencyStats();
+			int corrected = 0;
+			int found = 0;
+			// Twice, the first round warms up the JIT
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < numTerms; i++) {
+					long start = System.nanoTime();
+					String correction = suggester.correct(typos[i]);
+					long correctNanos = System.nanoTime() - start;
+					start = System.nanoTime();
+					suggester.complete(originals[i].substring(0, 3), 10);
+					long completeNanos = System.nanoTime() - start;
+					if (round == 1) {
+						correctLatencies.record(correctNanos);
+						completeLatencies.record(completeNanos);
+						found += correction != null ? 1 : 0;
+						corrected += originals[i].equals(correction) ? 1 : 0;
+					}
+				}
+			}
+			System.out.println(String.format("Did you mean : %d misspelled terms, %.1f%% with a suggestion, %.1f%% "
+					+ "back to the original term", numTerms, 100.0 * found / numTerms, 100.0 * corrected / numTerms));
+			System.out.println("Did you mean " + correctLatencies);
+			System.out.println("Completion " + completeLatencies);
+			reader.close();
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+
+	private static String misspell(String term, Random random) {
+		int i = random.nextInt(term.length());
+		char letter = (char) ('a' + random.nextInt(26));
+		switch (random.nextInt(4)) {
+		case 0:
+			return term.substring(0, i) + term.substring(i + 1);
+		case 1:
+			return term.substring(0, i) + letter + term.substring(i);
+		case 2:
+			return term.substring(0, i) + letter + term.substring(i + 1);
+		default:
+			return i + 1 < term.length()
+					? term.substring(0, i) + term.charAt(i + 1) + term.charAt(i) + term.substring(i + 2) : term;
+		}
+	}
+}
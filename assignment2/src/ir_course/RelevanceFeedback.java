@@ -0,0 +1,235 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Pseudo relevance feedback (RM3). The top documents of a first search are
+ * assumed relevant, a relevance model P(w|R) is estimated from their terms
+ * (each document weighted by its share of the top scores) and the
+ * query is expanded with the best terms of the model, interpolated with the
+ * original query. The original query is kept as it is (its phrases, its
+ * fields and its prohibited clauses still apply), the expansion terms are
+ * optional clauses next to it. The forward index is used instead of the term
+ * vectors when the engine has one.
+ *
+ * Expanded queries are cached by the text of the original query, a cached
+ * query is searched directly without the first pass. Building the model stops
+ * at the latency budget, using the documents processed so far, and such a
+ * partial expansion isn't cached: the next search of the query tries again.
+ */
+public class RelevanceFeedback {
+	private int feedbackDocs = 10;
+	private int feedbackTerms = 20;
+	private float originalQueryWeight = 0.5f;
+	// Terms in more than this fraction of the documents don't discriminate
+	private float maxDocFreqRatio = 0.5f;
+	private long budgetNanos = 20000000L;
+	private Map<String, Query> cache;
+
+	public RelevanceFeedback() {
+		this(256);
+	}
+
+	/**
+	 * @param cacheSize
+	 *            Number of expanded queries kept in the cache.
+	 */
+	public RelevanceFeedback(final int cacheSize) {
+		cache = Collections.synchronizedMap(new LinkedHashMap<String, Query>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+				return size() > cacheSize;
+			}
+		});
+	}
+
+	/**
+	 * @param feedbackDocs
+	 *            Number of top documents the relevance model is built from.
+	 * @param feedbackTerms
+	 *            Number of expansion terms.
+	 * @param originalQueryWeight
+	 *            Weight of the original query in [0, 1], the expansion terms
+	 *            get the rest.
+	 */
+	public void setParameters(int feedbackDocs, int feedbackTerms, float originalQueryWeight) {
+		this.feedbackDocs = feedbackDocs;
+		this.feedbackTerms = feedbackTerms;
+		this.originalQueryWeight = originalQueryWeight;
+		// The expansions built with the previous parameters
+		cache.clear();
+	}
+
+	/**
+	 * @return Number of top documents the relevance model is built from.
+	 */
+	public int getFeedbackDocs() {
+		return feedbackDocs;
+	}
+
+	/**
+	 * @param budgetMs
+	 *            Time allowed for building the relevance model of one query.
+	 */
+	public void setBudgetMs(long budgetMs) {
+		this.budgetNanos = budgetMs * 1000000L;
+	}
+
+	/**
+	 * @param queryString
+	 *            The text of the original query.
+	 * @return The cached expansion of the query, null if not cached.
+	 */
+	public Query getCached(String queryString) {
+		return cache.get(normalize(queryString));
+	}
+
+	// The cache key, the query text with its whitespace collapsed
+	private static String normalize(String queryString) {
+		return queryString.trim().replaceAll("\\s+", " ");
+	}
+
+	/**
+	 * Expands the query with the relevance model of the first pass results.
+	 * The document terms are read from the forward index if there is one,
+	 * otherwise the term vectors of the field must have been stored at
+	 * indexing time.
+	 *
+	 * @param searcher
+	 *            The searcher of the first pass.
+	 * @param query
+	 *            The original query.
+	 * @param queryString
+	 *            The text of the original query, the cache key.
+	 * @param field
+	 *            Field the query searches and the term vectors are read from.
+	 * @param firstPass
+	 *            The top getFeedbackDocs() results of the original query.
+	 * @param forwardIndex
+	 *            Forward index containing the field, may be null.
+	 * @return The expanded query, or the original query if there was nothing
+	 *         to expand it with.
+	 * @throws IOException
+	 *             If the term vectors couldn't be read.
+	 */
+	public Query expand(IndexSearcher searcher, Query query, String queryString, String field, TopDocs firstPass,
+			ForwardIndex forwardIndex) throws IOException {
+		long deadline = System.nanoTime() + budgetNanos;
+		IndexReader reader = searcher.getIndexReader();
+		ScoreDoc[] top = firstPass.scoreDocs;
+		int docs = Math.min(feedbackDocs, top.length);
+		float scoreSum = 0;
+		for (int i = 0; i < docs; i++) {
+			scoreSum += top[i].score;
+		}
+
+		// P(w|R) = sum over the feedback docs of P(w|D) * P(D|Q)
+		Map<String, Double> model = new HashMap<String, Double>();
+		boolean complete = true;
+		for (int i = 0; i < docs && scoreSum > 0; i++) {
+			if (i > 0 && System.nanoTime() > deadline) {
+				complete = false;
+				break;
+			}
+			double docWeight = top[i].score / scoreSum;
+			if (forwardIndex != null) {
+				int docLength = forwardIndex.getLength(field, top[i].doc);
+				int termCount = forwardIndex.getTermCount(field, top[i].doc);
+				for (int t = 0; t < termCount && docLength > 0; t++) {
+					model.merge(forwardIndex.getTerm(field, forwardIndex.getTermId(field, top[i].doc, t)),
+							docWeight * forwardIndex.getFreq(field, top[i].doc, t) / docLength, Double::sum);
+				}
+				continue;
+			}
+			Terms vector = reader.getTermVector(top[i].doc, field);
+			if (vector == null) {
+				continue;
+			}
+			// NOTE : term vectors don't have the sum of the term frequencies
+			// (getSumTotalTermFreq() is -1), so the length is counted here.
+			List<String> docTerms = new ArrayList<String>();
+			List<Long> docFreqs = new ArrayList<Long>();
+			long docLength = 0;
+			TermsEnum termsEnum = vector.iterator();
+			BytesRef term;
+			while ((term = termsEnum.next()) != null) {
+				docTerms.add(term.utf8ToString());
+				docFreqs.add(termsEnum.totalTermFreq());
+				docLength += termsEnum.totalTermFreq();
+			}
+			for (int t = 0; t < docTerms.size(); t++) {
+				model.merge(docTerms.get(t), docWeight * docFreqs.get(t) / docLength, Double::sum);
+			}
+		}
+
+		List<Map.Entry<String, Double>> candidates = new ArrayList<Map.Entry<String, Double>>(model.entrySet());
+		candidates.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+		Map<String, Double> expansion = new LinkedHashMap<String, Double>();
+		double expansionSum = 0;
+		int maxDocFreq = (int) (maxDocFreqRatio * reader.numDocs());
+		for (Map.Entry<String, Double> candidate : candidates) {
+			if (expansion.size() == feedbackTerms) {
+				break;
+			}
+			if (reader.docFreq(new Term(field, candidate.getKey())) <= maxDocFreq) {
+				expansion.put(candidate.getKey(), candidate.getValue());
+				expansionSum += candidate.getValue();
+			}
+		}
+		if (expansion.isEmpty()) {
+			return query;
+		}
+
+		// Interpolate the original query with the normalised model. A query
+		// with required clauses keeps them, otherwise the expansion terms can
+		// match documents of their own, but never the prohibited ones.
+		BooleanQuery.Builder expanded = new BooleanQuery.Builder();
+		boolean required = false;
+		if (query instanceof BooleanQuery) {
+			for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+				required |= clause.isRequired();
+				if (clause.isProhibited()) {
+					expanded.add(clause.getQuery(), BooleanClause.Occur.MUST_NOT);
+				}
+			}
+		}
+		expanded.add(new BoostQuery(query, originalQueryWeight),
+				required ? BooleanClause.Occur.MUST : BooleanClause.Occur.SHOULD);
+		for (Map.Entry<String, Double> entry : expansion.entrySet()) {
+			expanded.add(new BoostQuery(new TermQuery(new Term(field, entry.getKey())),
+					(float) ((1 - originalQueryWeight) * entry.getValue() / expansionSum)), BooleanClause.Occur.SHOULD);
+		}
+		Query result = expanded.build();
+		if (complete) {
+			cache.put(normalize(queryString), result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Ground truth relevance judgments (qrels), kept outside of the index as one
+ * bitset of relevant document ids per search task. Document ids are the
+ * positions of the documents in the list given to LuceneSearchApp.index(),
+ * which are also their Lucene doc ids. Looking up a hit is O(1) and the
+ * judgments can be replaced (e.g. from a TREC qrels file) without
+ * reindexing. The reads take no lock: the bitsets are an immutable snapshot,
+ * which setRelevant() copies, changes and publishes, so the judgments can be
+ * changed while concurrent searches read them (a change copies the bitset of
+ * the task, it is meant for occasional edits, not for loading judgments).
+ */
+public class RelevanceJudgments {
+	private volatile Snapshot snapshot;
+
+	// The judgments at one version, never modified once published
+	private static final class Snapshot {
+		// search task number -> relevant document ids
+		private final Map<Integer, BitSet> relevantByTask;
+		// Copies of the bitsets as words, for getRelevantCount(task, long[])
+		private final Map<Integer, long[]> wordsByTask = new ConcurrentHashMap<Integer, long[]>();
+		private final long version;
+
+		Snapshot(Map<Integer, BitSet> relevantByTask, long version) {
+			this.relevantByTask = relevantByTask;
+			this.version = version;
+		}
+	}
+
+	private RelevanceJudgments(Map<Integer, BitSet> relevantByTask) {
+		this.snapshot = new Snapshot(relevantByTask, 0);
+	}
+
+	/**
+	 * Judgments without any relevant document.
+	 */
+	public RelevanceJudgments() {
+		this(new TreeMap<Integer, BitSet>());
+	}
+
+	/**
+	 * Judgments taken from the relevance labels of the collection, the id of a
+	 * document is its position in the list.
+	 *
+	 * @param docs
+	 *            List of DocumentInCollection objects, in indexing order.
+	 * @return The judgments of the collection.
+	 */
+	public static RelevanceJudgments fromDocuments(List<DocumentInCollection> docs) {
+		Map<Integer, BitSet> relevantByTask = new TreeMap<Integer, BitSet>();
+		int docId = 0;
+		for (DocumentInCollection doc : docs) {
+			if (doc.isRelevant()) {
+				relevantByTask.computeIfAbsent(doc.getSearchTaskNumber(), t -> new BitSet()).set(docId);
+			}
+			docId++;
+		}
+		return new RelevanceJudgments(relevantByTask);
+	}
+
+	/**
+	 * @param task
+	 *            Search task number.
+	 * @param docId
+	 *            Document id.
+	 * @param relevant
+	 *            Whether the document is relevant to the task.
+	 */
+	public synchronized void setRelevant(int task, int docId, boolean relevant) {
+		Snapshot current = snapshot;
+		Map<Integer, BitSet> relevantByTask = new TreeMap<Integer, BitSet>(current.relevantByTask);
+		BitSet relevantDocs = relevantByTask.get(task);
+		relevantDocs = relevantDocs == null ? new BitSet() : (BitSet) relevantDocs.clone();
+		relevantDocs.set(docId, relevant);
+		relevantByTask.put(task, relevantDocs);
+		snapshot = new Snapshot(relevantByTask, current.version + 1);
+	}
+
+	/**
+	 * @return A number which changes whenever a judgment is changed, e.g. to
+	 *         invalidate the counts computed from the previous judgments.
+	 */
+	public long getVersion() {
+		return snapshot.version;
+	}
+
+	/**
+	 * @param task
+	 *            Search task number.
+	 * @param docId
+	 *            Document id.
+	 * @return true if the document is judged relevant to the task.
+	 */
+	public boolean isRelevant(int task, int docId) {
+		BitSet relevantDocs = snapshot.relevantByTask.get(task);
+		return relevantDocs != null && relevantDocs.get(docId);
+	}
+
+	/**
+	 * @param task
+	 *            Search task number.
+	 * @return Number of documents judged relevant to the task.
+	 */
+	public int getRelevantCount(int task) {
+		BitSet relevantDocs = snapshot.relevantByTask.get(task);
+		return relevantDocs == null ? 0 : relevantDocs.cardinality();
+	}
+
+	/**
+	 * @param task
+	 *            Search task number.
+	 * @param docs
+	 *            Set of document ids, e.g. the hits of a search.
+	 * @return Number of the documents judged relevant to the task.
+	 */
+	public int getRelevantCount(int task, BitSet docs) {
+		BitSet relevantDocs = snapshot.relevantByTask.get(task);
+		if (relevantDocs == null) {
+			return 0;
+		}
+		BitSet relevantInDocs = (BitSet) relevantDocs.clone();
+		relevantInDocs.and(docs);
+		return relevantInDocs.cardinality();
+	}
+
+	/**
+	 * @param task
+	 *            Search task number.
+	 * @param docs
+	 *            Bits of a set of document ids (bit d % 64 of docs[d / 64]),
+	 *            e.g. the hits of a search.
+	 * @return Number of the documents judged relevant to the task.
+	 */
+	public int getRelevantCount(int task, long[] docs) {
+		Snapshot current = snapshot;
+		BitSet relevantDocs = current.relevantByTask.get(task);
+		if (relevantDocs == null) {
+			return 0;
+		}
+		long[] relevantWords = current.wordsByTask.computeIfAbsent(task, t -> relevantDocs.toLongArray());
+		int count = 0;
+		for (int i = 0, n = Math.min(docs.length, relevantWords.length); i < n; i++) {
+			count += Long.bitCount(docs[i] & relevantWords[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a TREC style qrels file, lines of "task iteration docId relevance".
+	 * A relevance > 0 means relevant.
+	 *
+	 * @param path
+	 *            Path of the qrels file.
+	 * @return The judgments of the file.
+	 * @throws IOException
+	 *             If the file couldn't be read or a line is malformed.
+	 */
+	public static RelevanceJudgments readQrels(String path) throws IOException {
+		return readQrels(path, docNo -> {
+			try {
+				return Integer.parseInt(docNo);
+			} catch (NumberFormatException e) {
+				return -2;
+			}
+		});
+	}
+
+	/**
+	 * Reads a TREC qrels file of an external collection, streamed line by
+	 * line: only the relevant documents are kept, one bitset per topic.
+	 *
+	 * @param path
+	 *            Path of the qrels file.
+	 * @param docIds
+	 *            Maps a docno to its document id, -1 for a document which
+	 *            isn't indexed (its judgment is skipped), -2 for an invalid
+	 *            docno.
+	 * @return The judgments of the file.
+	 * @throws IOException
+	 *             If the file couldn't be read or a line is malformed.
+	 */
+	public static RelevanceJudgments readQrels(String path, ToIntFunction<String> docIds) throws IOException {
+		Map<Integer, BitSet> relevantByTask = new TreeMap<Integer, BitSet>();
+		try (TrecFormat.QrelsReader qrels = new TrecFormat.QrelsReader(path)) {
+			int task = 0;
+			String topic = null;
+			BitSet relevantDocs = null;
+			while (qrels.next()) {
+				if (!qrels.getTopic().equals(topic)) {
+					// The lines of a topic are usually consecutive
+					topic = qrels.getTopic();
+					try {
+						task = Integer.parseInt(topic);
+					} catch (NumberFormatException e) {
+						throw new IOException("Malformed qrels " + qrels.getLine(), e);
+					}
+					relevantDocs = relevantByTask.computeIfAbsent(task, t -> new BitSet());
+				}
+				int docId = docIds.applyAsInt(qrels.getDocNo());
+				if (docId < -1) {
+					throw new IOException("Malformed qrels " + qrels.getLine());
+				}
+				if (docId >= 0) {
+					relevantDocs.set(docId, qrels.getRelevance() > 0);
+				}
+			}
+		}
+		return new RelevanceJudgments(relevantByTask);
+	}
+
+	/**
+	 * Writes the relevant documents as a TREC style qrels file.
+	 *
+	 * @param path
+	 *            Path of the qrels file.
+	 * @throws IOException
+	 *             If the file couldn't be written.
+	 */
+	public void writeQrels(String path) throws IOException {
+		try (TrecFormat.QrelsWriter qrels = new TrecFormat.QrelsWriter(path)) {
+			for (Map.Entry<Integer, BitSet> entry : snapshot.relevantByTask.entrySet()) {
+				String task = entry.getKey().toString();
+				BitSet relevantDocs = entry.getValue();
+				for (int docId = relevantDocs.nextSetBit(0); docId >= 0; docId = relevantDocs.nextSetBit(docId + 1)) {
+					qrels.write(task, Integer.toString(docId), 1);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Second stage re-ranker. The features of the top k hits (see
+ * FeatureExtractor) are standardised and scored with a linear model, a
+ * logistic regression trained offline on the relevance judgments of the
+ * collection. The top k hits are re-ordered by the model score, the hits
+ * after them keep their first stage order.
+ *
+ * Feature extraction stops at the latency budget, only the hits processed so
+ * far are re-ordered.
+ */
+public class Reranker {
+	private double[] weights = new double[FeatureExtractor.NUM_FEATURES];
+	private double bias = 0.0;
+	private double[] mean = new double[FeatureExtractor.NUM_FEATURES];
+	private double[] std = new double[FeatureExtractor.NUM_FEATURES];
+	private int k = 100;
+	private long budgetNanos = 10000000L;
+
+	/**
+	 * @param k
+	 *            Number of top hits to re-rank.
+	 * @param budgetMs
+	 *            Time allowed for the feature extraction of one query,
+	 *            Long.MAX_VALUE for no limit.
+	 */
+	public void setParameters(int k, long budgetMs) {
+		if (budgetMs < 0) {
+			throw new IllegalArgumentException("Budget must be >= 0 : " + budgetMs);
+		}
+		this.k = k;
+		this.budgetNanos = budgetMs > Long.MAX_VALUE / 1000000L ? Long.MAX_VALUE : budgetMs * 1000000L;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * Re-orders the top k hits.
+	 *
+	 * @param extractor
+	 *            Feature extractor of the index the hits come from.
+	 * @param queryTerms
+	 *            The analysed query terms.
+	 * @param hits
+	 *            The first stage hits, best first.
+	 * @return The re-ranked hits, the scores are the model scores for the
+	 *         re-ranked prefix.
+	 * @throws IOException
+	 *             If the features couldn't be extracted.
+	 */
+	public ScoreDoc[] rerank(FeatureExtractor extractor, String[] queryTerms, ScoreDoc[] hits) throws IOException {
+		// The deadline saturates, a large budget must not overflow
+		long now = System.nanoTime();
+		long deadline = budgetNanos > Long.MAX_VALUE - Math.max(0, now) ? Long.MAX_VALUE : now + budgetNanos;
+		FeatureExtractor.Batch batch = extractor.extract(queryTerms, hits, k, deadline);
+		int n = batch.docIds.length;
+		ScoreDoc[] reranked = new ScoreDoc[n];
+		for (int i = 0; i < n; i++) {
+			reranked[i] = new ScoreDoc(batch.docIds[i], (float) score(batch.features[i]));
+		}
+		// Stable, ties keep the first stage order
+		Arrays.sort(reranked, (a, b) -> Float.compare(b.score, a.score));
+		ScoreDoc[] result = hits.clone();
+		System.arraycopy(reranked, 0, result, 0, n);
+		return result;
+	}
+
+	/**
+	 * @param features
+	 *            Raw (not standardised) features of a hit.
+	 * @return The linear model score.
+	 */
+	public double score(double[] features) {
+		double score = bias;
+		for (int f = 0; f < weights.length; f++) {
+			score += weights[f] * (features[f] - mean[f]) / std[f];
+		}
+		return score;
+	}
+
+	/**
+	 * Trains a logistic regression with batch gradient descent.
+	 *
+	 * @param features
+	 *            Feature rows of the training hits.
+	 * @param labels
+	 *            Relevance of the training hits.
+	 * @param epochs
+	 *            Number of gradient descent steps.
+	 * @param learningRate
+	 *            Step size.
+	 * @return The trained re-ranker.
+	 */
+	public static Reranker train(List<double[]> features, List<Boolean> labels, int epochs, double learningRate) {
+		if (features.isEmpty()) {
+			throw new IllegalArgumentException("No training data");
+		}
+		Reranker model = new Reranker();
+		int numFeatures = FeatureExtractor.NUM_FEATURES;
+		int n = features.size();
+		for (double[] row : features) {
+			for (int f = 0; f < numFeatures; f++) {
+				model.mean[f] += row[f] / n;
+			}
+		}
+		for (double[] row : features) {
+			for (int f = 0; f < numFeatures; f++) {
+				model.std[f] += (row[f] - model.mean[f]) * (row[f] - model.mean[f]) / n;
+			}
+		}
+		for (int f = 0; f < numFeatures; f++) {
+			// Constant features are left alone
+			model.std[f] = model.std[f] > 0 ? Math.sqrt(model.std[f]) : 1.0;
+		}
+		// L2 regularisation, the training sets are small
+		double lambda = 0.01;
+		for (int epoch = 0; epoch < epochs; epoch++) {
+			double[] gradient = new double[numFeatures];
+			double biasGradient = 0;
+			for (int i = 0; i < n; i++) {
+				double[] row = features.get(i);
+				double error = sigmoid(model.score(row)) - (labels.get(i) ? 1 : 0);
+				for (int f = 0; f < numFeatures; f++) {
+					gradient[f] += error * (row[f] - model.mean[f]) / model.std[f] / n;
+				}
+				biasGradient += error / n;
+			}
+			for (int f = 0; f < numFeatures; f++) {
+				model.weights[f] -= learningRate * (gradient[f] + lambda * model.weights[f]);
+			}
+			model.bias -= learningRate * biasGradient;
+		}
+		return model;
+	}
+
+	private static double sigmoid(double x) {
+		return 1.0 / (1.0 + Math.exp(-x));
+	}
+
+	/**
+	 * Saves the model as text, one "name value" line per parameter.
+	 *
+	 * @param path
+	 *            The model file.
+	 * @throws IOException
+	 *             If the file couldn't be written.
+	 */
+	public void save(Path path) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		lines.add("bias " + bias);
+		for (int f = 0; f < weights.length; f++) {
+			lines.add("feature" + f + " " + weights[f] + " " + mean[f] + " " + std[f]);
+		}
+		Files.write(path, lines, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Loads a model written by save().
+	 *
+	 * @param path
+	 *            The model file.
+	 * @return The loaded model.
+	 * @throws IOException
+	 *             If the file couldn't be read or doesn't match the features.
+	 */
+	public static Reranker load(Path path) throws IOException {
+		List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+		if (lines.size() != FeatureExtractor.NUM_FEATURES + 1) {
+			throw new IOException("Model doesn't match the " + FeatureExtractor.NUM_FEATURES + " features : " + path);
+		}
+		Reranker model = new Reranker();
+		model.bias = Double.parseDouble(lines.get(0).split(" ")[1]);
+		for (int f = 0; f < FeatureExtractor.NUM_FEATURES; f++) {
+			String[] columns = lines.get(f + 1).split(" ");
+			model.weights[f] = Double.parseDouble(columns[1]);
+			model.mean[f] = Double.parseDouble(columns[2]);
+			model.std[f] = Double.parseDouble(columns[3]);
+		}
+		return model;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("[Reranker: k = " + k + ", bias = " + bias);
+		for (int f = 0; f < weights.length; f++) {
+			result.append(", ").append(FeatureExtractor.FEATURE_NAMES[f]).append(" = ")
+					.append(String.format("%.3f", weights[f]));
+		}
+		return result.append("]").toString();
+	}
+
+	/**
+	 * Trains the model on the labelled hits of the given queries.
+	 *
+	 * @param engine
+	 *            Engine with a forward index, whose index() has been called.
+	 * @param queries
+	 *            Training queries.
+	 * @param task
+	 *            Search task the queries belong to, for the judgments.
+	 * @param k
+	 *            Number of top hits per query used for training.
+	 * @return The trained model.
+	 */
+	public static Reranker train(LuceneSearchApp engine, List<String> queries, int task, int k) {
+		List<double[]> features = new ArrayList<double[]>();
+		List<Boolean> labels = new ArrayList<Boolean>();
+		for (String query : queries) {
+			FeatureExtractor.Batch batch = engine.extractFeatures(query, k);
+			for (int i = 0; i < batch.docIds.length; i++) {
+				features.add(batch.features[i]);
+				labels.add(engine.getRelevanceJudgments().isRelevant(task, batch.docIds[i]));
+			}
+		}
+		Reranker model = train(features, labels, 500, 0.5);
+		model.k = k;
+		return model;
+	}
+
+	/**
+	 * Leave one query out evaluation of the re-ranker on the recommender
+	 * systems task, then a throughput benchmark of search() at k = 100 and
+	 * 1000 on the whole collection, without and with the re-ranker.
+	 *
+	 * Usage: Reranker corpus.(xml|bin)
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> allDocs = CorpusScaler.readCorpus(args[0]);
+			int task = 2;
+			DocumentCollectionProcessor docProcessor = new DocumentCollectionProcessor(allDocs, task);
+			List<String> queryStrings = Arrays.asList("information retrieval system recommendation",
+					"recommender systems information retrieval recommendation",
+					"systems collaborative filtering recommendation", "systems recommendation systems classification");
+			Configuration config = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+
+			System.out.println("----------------------------------------------------------------------");
+			System.out.println("Leave one query out, task " + task);
+			System.out.println("----------------------------------------------------------------------");
+			LuceneSearchApp engine = newEngine(config, docProcessor.getFilteredDocuments());
+			double baselineSum = 0;
+			double rerankedSum = 0;
+			for (String heldOut : queryStrings) {
+				List<String> training = new ArrayList<String>(queryStrings);
+				training.remove(heldOut);
+				Reranker model = train(engine, training, task, docProcessor.getTotalDocCount());
+				engine.setReranker(null);
+				double baseline = docProcessor
+						.getRankedSearchResultStats(engine.search(heldOut, docProcessor.getTotalDocCount()))
+						.getAverage_precision();
+				engine.setReranker(model);
+				double reranked = docProcessor
+						.getRankedSearchResultStats(engine.search(heldOut, docProcessor.getTotalDocCount()))
+						.getAverage_precision();
+				System.out.println("AP = " + baseline + " -> " + reranked + " , for Query : " + heldOut);
+				baselineSum += baseline;
+				rerankedSum += reranked;
+			}
+			System.out.println("MAP = " + baselineSum / queryStrings.size() + " -> " + rerankedSum / queryStrings.size());
+			engine.close();
+
+			System.out.println("----------------------------------------------------------------------");
+			System.out.println("Throughput, " + allDocs.size() + " documents");
+			System.out.println("----------------------------------------------------------------------");
+			engine = newEngine(config, allDocs);
+			Reranker model = train(engine, queryStrings, task, 100);
+			List<String> queries = LoadGenerator.syntheticQueries(allDocs, 500, 3, 42);
+			for (int k : new int[] { 100, 1000 }) {
+				// No budget, every one of the k hits is re-ranked
+				model.setParameters(k, Long.MAX_VALUE);
+				LatencyStats[] latencies = measure(engine, model, queries, k);
+				System.out.println("k = " + k + " : first stage " + String.format("%.0f", 1000 / latencies[0].getMeanMs())
+						+ " queries/s " + latencies[0]);
+				System.out.println("k = " + k + " : re-ranked   " + String.format("%.0f", 1000 / latencies[1].getMeanMs())
+						+ " queries/s " + latencies[1]);
+			}
+			engine.close();
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+
+	// Latencies of search() without and with the re-ranker, alternated query
+	// by query so that both warm up alike
+	private static LatencyStats[] measure(LuceneSearchApp engine, Reranker model, List<String> queries, int k) {
+		LatencyStats[] latencies = null;
+		// Twice, the first round warms up the JIT
+		for (int round = 0; round < 2; round++) {
+			latencies = new LatencyStats[] { new LatencyStats(), new LatencyStats() };
+			for (String query : queries) {
+				for (int i = 0; i < 2; i++) {
+					engine.setReranker(i == 0 ? null : model);
+					long start = System.nanoTime();
+					engine.search(query, k);
+					latencies[i].record(System.nanoTime() - start);
+				}
+			}
+		}
+		engine.setReranker(null);
+		return latencies;
+	}
+
+	private static LuceneSearchApp newEngine(Configuration config, List<DocumentInCollection> docs)
+			throws IOException {
+		LuceneSearchApp engine = new LuceneSearchApp(config);
+		Path forwardIndexFile = Files.createTempFile("forward", ".idx");
+		forwardIndexFile.toFile().deleteOnExit();
+		engine.enableForwardIndex(forwardIndexFile);
+		engine.index(docs);
+		engine.setVerbose(false);
+		return engine;
+	}
+}
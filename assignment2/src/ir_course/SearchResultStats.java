@@ -139,7 +139,7 @@ public class SearchResultStats {
 		Double[] ElevenPointPR = new Double[11];
 		Integer relevantsInsearchResult = (int) relevanceOfResults.stream().filter(p -> p == true).count();
 		Double recallInPercent = (relevantsInsearchResult * 100) / relevantsInCorpus.doubleValue();
-		if (relevantsInsearchResult != relevantsInCorpus) {
+		if (relevantsInsearchResult.intValue() != relevantsInCorpus.intValue()) {
 			throw new IllegalArgumentException(
 					"To Calculate 11 Point Precision Recall Curve. You must have 100% Recall, Current = "
 							+ String.valueOf(recallInPercent.intValue())
@@ -0,0 +1,404 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the free text search of the collection over HTTP with JSON
+ * responses, using the HTTP server of the JDK. One engine is indexed per
+ * configuration, the request picks one:
+ * <ul>
+ * <li>GET /search?q=collaborative+filtering&amp;k=10&amp;config=bm25, k and
+ * config are optional (10 and the first configuration). The response has a
+ * next cursor when there are more results, the next page is
+ * /search?q=...&amp;cursor=... (with the same k and config). The rm3 and
+ * hybrid configurations only have a first page.</li>
+ * <li>GET /configs, the configuration names,</li>
+ * <li>GET /stats, the request counters and the latencies of the last
+ * requests.</li>
+ * </ul>
+ * The handlers never wait for a search: they run the admission control (at
+ * most maxConcurrent searches running or queued, the other requests get a 503
+ * at once), hand the search to a pool of one thread per core and return. A
+ * timer answers 504 to the requests whose search isn't done within the
+ * timeout, a search whose request already timed out is skipped. So many
+ * concurrent requests only cost their connections, not a thread each. The
+ * handlers run on virtual threads when the JVM has them (Java 21), on a few
+ * platform threads otherwise.
+ */
+public class SearchServer {
+	private static final int DEFAULT_K = 10;
+	private static final int MAX_K = 1000;
+	// Number of the last requests the latency percentiles are computed from
+	private static final int LATENCY_WINDOW = 10000;
+
+	private Map<String, LuceneSearchApp> engines;
+	private String defaultConfig;
+	private HttpServer server;
+	private ExecutorService handlers;
+	private ExecutorService searches;
+	private ScheduledExecutorService timer;
+	private Semaphore admission;
+	private long timeoutMs;
+	private boolean virtualThreads;
+	private AtomicLong rejected = new AtomicLong();
+	private AtomicLong timedOut = new AtomicLong();
+	private LatencyStats latencies = new LatencyStats(LATENCY_WINDOW);
+
+	/**
+	 * @param engines
+	 *            The engines by configuration name, index() must have been
+	 *            called. The first one is the default.
+	 * @param port
+	 *            The port to listen on, 0 for any free port.
+	 * @param maxConcurrent
+	 *            Maximum number of searches running or waiting.
+	 * @param timeoutMs
+	 *            Time after which a request is answered 504.
+	 * @throws IOException
+	 *             If the port couldn't be bound.
+	 */
+	public SearchServer(Map<String, LuceneSearchApp> engines, int port, int maxConcurrent, long timeoutMs)
+			throws IOException {
+		if (engines.isEmpty()) {
+			throw new IllegalArgumentException("No engine to serve");
+		}
+		this.engines = new LinkedHashMap<String, LuceneSearchApp>(engines);
+		this.defaultConfig = engines.keySet().iterator().next();
+		this.admission = new Semaphore(maxConcurrent);
+		this.timeoutMs = timeoutMs;
+		ExecutorService virtual = newVirtualThreadExecutor();
+		this.virtualThreads = virtual != null;
+		this.handlers = virtual != null ? virtual : Executors.newFixedThreadPool(4, daemon("handler"));
+		this.searches = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemon("search"));
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, daemon("timeout"));
+		// The timeouts cancelled by the searches answered in time leave the queue
+		timer.setRemoveOnCancelPolicy(true);
+		this.timer = timer;
+		server = HttpServer.create(new InetSocketAddress(port), 1024);
+		server.setExecutor(handlers);
+		server.createContext("/search", this::search);
+		server.createContext("/configs", this::configs);
+		server.createContext("/stats", this::stats);
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor() through reflection, the code
+	// is compiled for Java 8. Null if the JVM has no virtual threads.
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static ThreadFactory daemon(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops listening, the searches running are abandoned.
+	 */
+	public void stop() {
+		server.stop(0);
+		handlers.shutdownNow();
+		searches.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void search(HttpExchange exchange) {
+		Map<String, List<String>> params = parseParameters(exchange.getRequestURI().getRawQuery());
+		String queryString = getFirst(params, "q", "");
+		String config = getFirst(params, "config", defaultConfig);
+		LuceneSearchApp engine = engines.get(config);
+		int k;
+		try {
+			k = Integer.parseInt(getFirst(params, "k", String.valueOf(DEFAULT_K)));
+		} catch (NumberFormatException e) {
+			k = -1;
+		}
+		if (queryString.trim().isEmpty() || engine == null || k < 1 || k > MAX_K) {
+			send(exchange, 400, "{\"error\":" + quote(engine == null ? "unknown config : " + config
+					: "q must be set and k in [1, " + MAX_K + "]") + "}");
+			return;
+		}
+		if (!admission.tryAcquire()) {
+			rejected.incrementAndGet();
+			send(exchange, 503, "{\"error\":\"overloaded\"}");
+			return;
+		}
+		long start = System.nanoTime();
+		AtomicBoolean answered = new AtomicBoolean();
+		// Answers 504 unless the search answers first and cancels it
+		ScheduledFuture<?> timeout = timer.schedule(() -> {
+			if (answered.compareAndSet(false, true)) {
+				timedOut.incrementAndGet();
+				send(exchange, 504, "{\"error\":\"timeout\"}");
+			}
+		}, timeoutMs, TimeUnit.MILLISECONDS);
+		int maxHits = k;
+		String cursor = getFirst(params, "cursor", null);
+		try {
+			searches.execute(() -> {
+				try {
+					if (answered.get()) {
+						return;
+					}
+					String response;
+					int status = 200;
+					try {
+						List<DocumentInCollection> results;
+						String next = null;
+						if (engine.isPaginated()) {
+							LuceneSearchApp.Page page = engine.searchPage(queryString, maxHits, cursor);
+							results = page.getResults();
+							next = page.getCursor();
+						} else if (cursor == null) {
+							results = engine.search(queryString, maxHits);
+						} else {
+							throw new IllegalArgumentException("The " + config + " configuration has no cursors");
+						}
+						response = "{\"config\":" + quote(config) + ",\"count\":" + results.size() + ",\"tookMs\":"
+								+ String.format("%.3f", (System.nanoTime() - start) / 1e6) + ",\"results\":"
+								+ toJson(results) + (next != null ? ",\"next\":" + quote(next) : "") + "}";
+					} catch (IllegalArgumentException e) {
+						status = 400;
+						response = "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}";
+					} catch (RuntimeException e) {
+						// The index couldn't be read (UncheckedIOException) or the engine failed
+						status = 500;
+						response = "{\"error\":" + quote(e.toString()) + "}";
+					}
+					long nanos = System.nanoTime() - start;
+					if (answered.compareAndSet(false, true)) {
+						timeout.cancel(false);
+						latencies.record(nanos);
+						send(exchange, status, response);
+					}
+				} finally {
+					admission.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			timeout.cancel(false);
+			admission.release();
+			if (answered.compareAndSet(false, true)) {
+				send(exchange, 503, "{\"error\":\"stopping\"}");
+			}
+		}
+	}
+
+	private void configs(HttpExchange exchange) {
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, LuceneSearchApp> entry : engines.entrySet()) {
+			json.append(json.length() > 1 ? "," : "").append(quote(entry.getKey())).append(':')
+					.append(quote(entry.getValue().getConfiguration().toString()));
+		}
+		send(exchange, 200, json.append("}").toString());
+	}
+
+	private void stats(HttpExchange exchange) {
+		double[] percentiles = latencies.getPercentilesMs(50, 99, 99.9);
+		send(exchange, 200,
+				"{\"served\":" + latencies.getCount() + ",\"rejected\":" + rejected.get() + ",\"timedOut\":"
+						+ timedOut.get() + ",\"available\":" + admission.availablePermits() + ",\"virtualThreads\":"
+						+ virtualThreads + String.format(",\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f}",
+								percentiles[0], percentiles[1], percentiles[2]));
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		try {
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (IOException e) {
+			// The client went away
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @param rawQuery
+	 *            The URL encoded query string, may be null.
+	 * @return The values of every parameter, in order.
+	 */
+	static Map<String, List<String>> parseParameters(String rawQuery) {
+		Map<String, List<String>> params = new HashMap<String, List<String>>();
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return params;
+		}
+		try {
+			for (String pair : rawQuery.split("&")) {
+				int equals = pair.indexOf('=');
+				String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+				String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+				params.computeIfAbsent(name, n -> new ArrayList<String>()).add(value);
+			}
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			// Malformed escapes, the parameters read so far are kept
+		}
+		return params;
+	}
+
+	private static String getFirst(Map<String, List<String>> params, String name, String defaultValue) {
+		List<String> values = params.get(name);
+		return values == null ? defaultValue : values.get(0);
+	}
+
+	private static String toJson(List<DocumentInCollection> results) {
+		StringBuilder json = new StringBuilder("[");
+		for (DocumentInCollection result : results) {
+			json.append(json.length() > 1 ? "," : "").append("{\"title\":").append(quote(result.getTitle()));
+			if (result.getSnippet() != null) {
+				json.append(",\"snippet\":").append(quote(result.getSnippet()));
+			}
+			json.append('}');
+		}
+		return json.append("]").toString();
+	}
+
+	static String quote(String value) {
+		StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+		for (char c : value.toCharArray()) {
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * Indexes the corpus once per configuration and serves it. With a query
+	 * log file, the engines are warmed up with the most frequent queries of
+	 * the log, and the log of this run is written back to the file on exit
+	 * for the next start.
+	 *
+	 * Usage: SearchServer corpus.(xml|bin) [port] [maxConcurrent] [timeoutMs]
+	 * [queryLog]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			Map<String, Configuration> configs = new LinkedHashMap<String, Configuration>();
+			configs.put("bm25",
+					new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25));
+			configs.put("tfidf",
+					new Configuration(Constants.NO_REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.TFIDF));
+			configs.put("bm25f",
+					new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25, 2, 1));
+			Configuration rm3 = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			rm3.setRelevanceFeedback(true);
+			configs.put("rm3", rm3);
+			Configuration hybrid = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			hybrid.setVectorWeight(0.3f);
+			configs.put("hybrid", hybrid);
+
+			QueryLog log = null;
+			if (args.length > 4) {
+				Path logPath = Paths.get(args[4]);
+				log = Files.exists(logPath) ? QueryLog.read(logPath, 10000) : new QueryLog(10000);
+				QueryLog runLog = log;
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						runLog.write(logPath);
+					} catch (IOException e) {
+						System.out.println("Couldn't write the query log : " + e);
+					}
+				}));
+			}
+			Map<String, LuceneSearchApp> engines = new LinkedHashMap<String, LuceneSearchApp>();
+			for (Map.Entry<String, Configuration> entry : configs.entrySet()) {
+				LuceneSearchApp engine = new LuceneSearchApp(entry.getValue());
+				// The engines share the log
+				engine.setWarmup(log, 200);
+				if (entry.getValue().isRelevanceFeedbackUsed() || entry.getValue().getVectorWeight() > 0) {
+					Path forwardIndexFile = Files.createTempFile("forward", ".idx");
+					forwardIndexFile.toFile().deleteOnExit();
+					engine.enableForwardIndex(forwardIndexFile);
+				}
+				engine.index(docs);
+				engine.setVerbose(false);
+				engines.put(entry.getKey(), engine);
+			}
+			int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+			int maxConcurrent = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+			long timeoutMs = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+			SearchServer server = new SearchServer(engines, port, maxConcurrent, timeoutMs);
+			server.start();
+			System.out.println("Listening on http://localhost:" + server.getPort() + "/search, configs "
+					+ engines.keySet() + (server.virtualThreads ? " (virtual threads)" : ""));
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+}
@@ -0,0 +1,396 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Paired significance tests between two configurations evaluated on the same
+ * queries, from the per query scores (e.g. the average precision): the
+ * randomization (sign flip permutation) test of the mean difference and the
+ * bootstrap confidence interval of the mean difference.
+ *
+ * The resamples are run in parallel (common ForkJoinPool) by chunks of
+ * CHUNK_SIZE, each chunk with its own random generator derived from the seed
+ * and the chunk number, so the results only depend on the seed, not on the
+ * number of threads. The scores stay in primitive arrays, a resample
+ * allocates nothing.
+ */
+public class SignificanceTests {
+	// Resamples per parallel task
+	private static final int CHUNK_SIZE = 64;
+	// Above it, the exact permutation test would enumerate too many sign
+	// vectors
+	private static final int MAX_EXACT_QUERIES = 20;
+
+	private SignificanceTests() {
+	}
+
+	/**
+	 * Two sided paired randomization test: under the null hypothesis the sign
+	 * of every per query difference is random. When there are less sign
+	 * vectors than resamples (few queries), all of them are enumerated and
+	 * the p-value is exact.
+	 *
+	 * @param scores
+	 *            Per query scores of the tested configuration.
+	 * @param baseline
+	 *            Per query scores of the baseline, same queries in the same
+	 *            order.
+	 * @param resamples
+	 *            Number of random sign vectors, e.g. 10000.
+	 * @param seed
+	 *            Seed of the random generators.
+	 * @return The p-value, the probability of a mean difference at least as
+	 *         large (in absolute value) as the observed one.
+	 */
+	public static double permutationTest(double[] scores, double[] baseline, int resamples, long seed) {
+		double[] diffs = getDiffs(scores, baseline);
+		int n = diffs.length;
+		double observed = Math.abs(sum(diffs, 0, n));
+		// Tolerance for the rounding errors of the sums, the permutation
+		// equal to the observed one must count
+		double threshold = observed - 1e-9 * Math.max(1, observed);
+		if (n <= MAX_EXACT_QUERIES && (1L << n) <= resamples) {
+			long permutations = 1L << n;
+			long extreme = IntStream.range(0, (int) ((permutations + CHUNK_SIZE - 1) / CHUNK_SIZE)).parallel()
+					.mapToLong(chunk -> {
+						long count = 0;
+						long end = Math.min(permutations, (long) (chunk + 1) * CHUNK_SIZE);
+						for (long signs = (long) chunk * CHUNK_SIZE; signs < end; signs++) {
+							count += Math.abs(flippedSum(diffs, signs)) >= threshold ? 1 : 0;
+						}
+						return count;
+					}).sum();
+			return (double) extreme / permutations;
+		}
+		long extreme = IntStream.range(0, getChunks(resamples)).parallel().mapToLong(chunk -> {
+			SplittableRandom random = newRandom(seed, chunk);
+			long count = 0;
+			for (int r = chunk * CHUNK_SIZE; r < Math.min(resamples, (chunk + 1) * CHUNK_SIZE); r++) {
+				double sum = 0;
+				// 64 signs per random long
+				for (int start = 0; start < n; start += 64) {
+					sum += flippedSum(diffs, start, Math.min(n, start + 64), random.nextLong());
+				}
+				count += Math.abs(sum) >= threshold ? 1 : 0;
+			}
+			return count;
+		}).sum();
+		// The observed sign vector counts as one of the resamples
+		return (extreme + 1.0) / (resamples + 1.0);
+	}
+
+	/**
+	 * Percentile bootstrap confidence interval of the mean difference: the
+	 * queries are resampled with replacement.
+	 *
+	 * @param scores
+	 *            Per query scores of the tested configuration.
+	 * @param baseline
+	 *            Per query scores of the baseline, same queries in the same
+	 *            order.
+	 * @param resamples
+	 *            Number of bootstrap samples, e.g. 10000.
+	 * @param confidence
+	 *            Confidence level in (0, 1), e.g. 0.95.
+	 * @param seed
+	 *            Seed of the random generators.
+	 * @return The lower and upper bounds of the interval.
+	 */
+	public static double[] bootstrapInterval(double[] scores, double[] baseline, int resamples, double confidence,
+			long seed) {
+		double[] diffs = getDiffs(scores, baseline);
+		int n = diffs.length;
+		double[] means = new double[resamples];
+		// Every chunk writes its own range of means
+		IntStream.range(0, getChunks(resamples)).parallel().forEach(chunk -> {
+			SplittableRandom random = newRandom(seed, chunk);
+			for (int r = chunk * CHUNK_SIZE; r < Math.min(resamples, (chunk + 1) * CHUNK_SIZE); r++) {
+				double sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += diffs[random.nextInt(n)];
+				}
+				means[r] = sum / n;
+			}
+		});
+		Arrays.sort(means);
+		double alpha = (1 - confidence) / 2;
+		return new double[] { means[(int) Math.floor(alpha * (resamples - 1))],
+				means[(int) Math.ceil((1 - alpha) * (resamples - 1))] };
+	}
+
+	/**
+	 * Runs both tests.
+	 *
+	 * @param name
+	 *            Name of the tested configuration.
+	 * @param scores
+	 *            Per query scores of the tested configuration.
+	 * @param baselineName
+	 *            Name of the baseline.
+	 * @param baseline
+	 *            Per query scores of the baseline.
+	 * @param resamples
+	 *            Number of resamples of each test.
+	 * @param confidence
+	 *            Confidence level of the interval.
+	 * @param seed
+	 *            Seed of the random generators.
+	 * @return The comparison, its adjusted p-value is the raw one.
+	 */
+	public static Comparison compare(String name, double[] scores, String baselineName, double[] baseline,
+			int resamples, double confidence, long seed) {
+		Comparison comparison = new Comparison(name, baselineName);
+		comparison.mean = sum(scores, 0, scores.length) / scores.length;
+		comparison.baselineMean = sum(baseline, 0, baseline.length) / baseline.length;
+		comparison.pValue = permutationTest(scores, baseline, resamples, seed);
+		comparison.adjustedPValue = comparison.pValue;
+		double[] interval = bootstrapInterval(scores, baseline, resamples, confidence, seed);
+		comparison.lower = interval[0];
+		comparison.upper = interval[1];
+		return comparison;
+	}
+
+	/**
+	 * Compares every configuration with the baseline. The comparisons run in
+	 * parallel on top of their resamples. As many configurations are tested,
+	 * the p-values are adjusted with the Holm-Bonferroni method: the smallest
+	 * Monte Carlo p-value is 1 / (resamples + 1), so the resamples must be
+	 * well above the number of configurations divided by the level (e.g.
+	 * 10000 resamples for 100 configurations at 0.05).
+	 *
+	 * @param scoresByConfig
+	 *            Per query scores of every configuration, the baseline
+	 *            included, same queries in the same order.
+	 * @param baselineName
+	 *            The key of the baseline.
+	 * @param resamples
+	 *            Number of resamples of each test.
+	 * @param confidence
+	 *            Confidence level of the intervals.
+	 * @param seed
+	 *            Seed of the random generators.
+	 * @return The comparisons, by decreasing mean difference.
+	 */
+	public static List<Comparison> compareAll(Map<String, double[]> scoresByConfig, String baselineName,
+			int resamples, double confidence, long seed) {
+		double[] baseline = scoresByConfig.get(baselineName);
+		if (baseline == null) {
+			throw new IllegalArgumentException("Unknown baseline : " + baselineName);
+		}
+		List<Comparison> comparisons = scoresByConfig.entrySet().parallelStream()
+				.filter(entry -> !entry.getKey().equals(baselineName))
+				.map(entry -> compare(entry.getKey(), entry.getValue(), baselineName, baseline, resamples,
+						confidence, seed))
+				.collect(Collectors.toList());
+
+		// Holm : the i-th smallest p-value is multiplied by (m - i), and the
+		// adjusted p-values are kept non decreasing
+		List<Comparison> byPValue = new ArrayList<Comparison>(comparisons);
+		byPValue.sort(Comparator.comparingDouble(Comparison::getPValue));
+		double max = 0;
+		for (int i = 0; i < byPValue.size(); i++) {
+			Comparison comparison = byPValue.get(i);
+			max = Math.max(max, Math.min(1, comparison.pValue * (byPValue.size() - i)));
+			comparison.adjustedPValue = max;
+		}
+		comparisons.sort(Comparator.comparingDouble(Comparison::getDelta).reversed());
+		return comparisons;
+	}
+
+	private static double[] getDiffs(double[] scores, double[] baseline) {
+		if (scores.length != baseline.length || scores.length == 0) {
+			throw new IllegalArgumentException(
+					"Not the same queries : " + scores.length + " and " + baseline.length + " scores");
+		}
+		double[] diffs = new double[scores.length];
+		for (int i = 0; i < diffs.length; i++) {
+			diffs[i] = scores[i] - baseline[i];
+		}
+		return diffs;
+	}
+
+	private static double sum(double[] values, int from, int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	// The sum of the differences, the i-th negated if the bit i of signs is
+	// set
+	private static double flippedSum(double[] diffs, long signs) {
+		return flippedSum(diffs, 0, diffs.length, signs);
+	}
+
+	private static double flippedSum(double[] diffs, int from, int to, long signs) {
+		double sum = 0;
+		for (int i = from; i < to; i++, signs >>>= 1) {
+			sum += (signs & 1) == 0 ? diffs[i] : -diffs[i];
+		}
+		return sum;
+	}
+
+	private static int getChunks(int resamples) {
+		return (resamples + CHUNK_SIZE - 1) / CHUNK_SIZE;
+	}
+
+	private static SplittableRandom newRandom(long seed, int chunk) {
+		return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + chunk);
+	}
+
+	/**
+	 * The comparison of a configuration with the baseline.
+	 */
+	public static class Comparison {
+		private String name;
+		private String baselineName;
+		private double mean;
+		private double baselineMean;
+		private double pValue;
+		private double adjustedPValue;
+		private double lower;
+		private double upper;
+
+		private Comparison(String name, String baselineName) {
+			this.name = name;
+			this.baselineName = baselineName;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getBaselineName() {
+			return baselineName;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public double getBaselineMean() {
+			return baselineMean;
+		}
+
+		/**
+		 * @return The mean difference with the baseline.
+		 */
+		public double getDelta() {
+			return mean - baselineMean;
+		}
+
+		/**
+		 * @return The p-value of the randomization test.
+		 */
+		public double getPValue() {
+			return pValue;
+		}
+
+		/**
+		 * @return The p-value corrected for the multiple comparisons of
+		 *         compareAll().
+		 */
+		public double getAdjustedPValue() {
+			return adjustedPValue;
+		}
+
+		/**
+		 * @return The lower bound of the confidence interval of the mean
+		 *         difference.
+		 */
+		public double getLower() {
+			return lower;
+		}
+
+		/**
+		 * @return The upper bound of the confidence interval of the mean
+		 *         difference.
+		 */
+		public double getUpper() {
+			return upper;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("delta = %+.4f [%+.4f, %+.4f], p = %.4f (adjusted %.4f), mean = %.4f , for Config : %s",
+					getDelta(), lower, upper, pValue, adjustedPValue, mean, name);
+		}
+	}
+
+	/**
+	 * Compares synthetic configurations with a baseline: half of them are
+	 * the baseline plus noise, the others are better by a small effect.
+	 * Prints the time of compareAll() on one thread and in parallel, and the
+	 * number of configurations found significantly different at the 0.05
+	 * level.
+	 *
+	 * Usage: SignificanceTests [configs] [queries] [resamples]
+	 */
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		int numConfigs = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int resamples = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+		double effect = 0.01;
+
+		Random random = new Random(42);
+		Map<String, double[]> scoresByConfig = new LinkedHashMap<String, double[]>();
+		double[] baseline = new double[numQueries];
+		for (int q = 0; q < numQueries; q++) {
+			baseline[q] = random.nextDouble();
+		}
+		scoresByConfig.put("baseline", baseline);
+		for (int c = 0; c < numConfigs; c++) {
+			double[] scores = new double[numQueries];
+			for (int q = 0; q < numQueries; q++) {
+				double score = baseline[q] + 0.1 * random.nextGaussian() + (c % 2 == 1 ? effect : 0);
+				scores[q] = Math.min(1, Math.max(0, score));
+			}
+			scoresByConfig.put((c % 2 == 1 ? "better " : "same ") + c, scores);
+		}
+
+		// Twice, the first round warms up the JIT
+		for (int round = 0; round < 2; round++) {
+			ForkJoinPool single = new ForkJoinPool(1);
+			long start = System.nanoTime();
+			// The parallel streams run in the pool of the calling task
+			single.submit(() -> compareAll(scoresByConfig, "baseline", resamples, 0.95, 42)).get();
+			double singleMs = (System.nanoTime() - start) / 1e6;
+			single.shutdown();
+			start = System.nanoTime();
+			List<Comparison> comparisons = compareAll(scoresByConfig, "baseline", resamples, 0.95, 42);
+			double parallelMs = (System.nanoTime() - start) / 1e6;
+			if (round == 1) {
+				System.out.println(String.format(
+						"%d configs x %d queries x %d resamples : 1 thread %.0f ms, %d threads %.0f ms", numConfigs,
+						numQueries, resamples, singleMs, ForkJoinPool.getCommonPoolParallelism(), parallelMs));
+				for (String prefix : new String[] { "same", "better" }) {
+					List<Comparison> group = comparisons.stream().filter(c -> c.getName().startsWith(prefix))
+							.collect(Collectors.toList());
+					System.out.println(String.format(
+							"%-6s : %d configs, %d with p < 0.05, %d with adjusted p < 0.05, %d intervals excluding 0",
+							prefix, group.size(), group.stream().filter(c -> c.getPValue() < 0.05).count(),
+							group.stream().filter(c -> c.getAdjustedPValue() < 0.05).count(),
+							group.stream().filter(c -> c.getLower() > 0 || c.getUpper() < 0).count()));
+				}
+				System.out.println("best : " + comparisons.get(0));
+			}
+		}
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Query biased snippets for a result page. The positions of the query terms
+ * in the title and abstract_text come from the offsets stored in the postings
+ * (the fields are indexed with DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS), so
+ * the stored text is never re-analysed: the abstract passage with the most
+ * (idf weighted) distinct query terms is cut out of the stored text and the
+ * matches are highlighted.
+ *
+ * The hits of a page are processed in parallel and the snippets are cached
+ * per (doc, query terms). A snippet not ready at the page budget falls back to
+ * the beginning of the abstract.
+ */
+public class SnippetGenerator implements Closeable {
+	public static final String PRE_TAG = "<b>";
+	public static final String POST_TAG = "</b>";
+	public static final String ELLIPSIS = "...";
+
+	private IndexReader reader;
+	private ExecutorService workers;
+	private Map<String, Snippet> cache;
+	private int maxLength = 200;
+	// At most this many occurrences of a term are read per document
+	private int maxMatchesPerTerm = 64;
+	private long budgetNanos = 20000000L;
+
+	/**
+	 * A highlighted title and abstract passage.
+	 */
+	public static class Snippet {
+		private String title;
+		private String text;
+
+		public Snippet(String title, String text) {
+			this.title = title;
+			this.text = text;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public String getText() {
+			return text;
+		}
+	}
+
+	private static class Match {
+		int start;
+		int end;
+		int term;
+
+		Match(int start, int end, int term) {
+			this.start = start;
+			this.end = end;
+			this.term = term;
+		}
+	}
+
+	/**
+	 * @param reader
+	 *            Reader of the index, the title and abstract_text must have
+	 *            been indexed with offsets.
+	 * @param threads
+	 *            Number of threads the hits of a page are processed with.
+	 * @param cacheSize
+	 *            Number of snippets kept in the cache.
+	 */
+	public SnippetGenerator(IndexReader reader, int threads, final int cacheSize) {
+		this.reader = reader;
+		this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "snippets");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.cache = Collections.synchronizedMap(new LinkedHashMap<String, Snippet>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Snippet> eldest) {
+				return size() > cacheSize;
+			}
+		});
+	}
+
+	/**
+	 * @param maxLength
+	 *            Maximum number of characters of an abstract passage.
+	 * @param budgetMs
+	 *            Time allowed for the snippets of a page.
+	 */
+	public void setParameters(int maxLength, long budgetMs) {
+		this.maxLength = maxLength;
+		this.budgetNanos = budgetMs * 1000000L;
+	}
+
+	/**
+	 * Generates the snippets of a result page.
+	 *
+	 * @param docIds
+	 *            Doc ids of the hits of the page.
+	 * @param titles
+	 *            Stored titles of the hits.
+	 * @param abstracts
+	 *            Stored abstracts of the hits.
+	 * @param queryTerms
+	 *            The analysed query terms.
+	 * @return The snippets, in the order of the hits.
+	 * @throws IOException
+	 *             If the document frequencies couldn't be read.
+	 */
+	public Snippet[] generate(int[] docIds, String[] titles, String[] abstracts, String[] queryTerms)
+			throws IOException {
+		long deadline = System.nanoTime() + budgetNanos;
+		String[] terms = queryTerms.clone();
+		Arrays.sort(terms);
+		String termsKey = String.join(" ", terms);
+		// idf of the terms in the abstracts, shared by the hits of the page
+		final double[] weights = new double[terms.length];
+		for (int t = 0; t < terms.length; t++) {
+			int docFreq = reader.docFreq(new Term(Constants.ABSTRACT_TEXT, terms[t]));
+			weights[t] = Math.log(1 + reader.numDocs() / (docFreq + 1.0));
+		}
+
+		Snippet[] snippets = new Snippet[docIds.length];
+		List<Future<Snippet>> pending = new ArrayList<Future<Snippet>>();
+		List<Integer> pendingHits = new ArrayList<Integer>();
+		for (int i = 0; i < docIds.length; i++) {
+			snippets[i] = cache.get(docIds[i] + ":" + termsKey);
+			if (snippets[i] == null) {
+				final int hit = i;
+				pending.add(workers.submit(() -> highlight(docIds[hit], titles[hit], abstracts[hit], terms, weights)));
+				pendingHits.add(hit);
+			}
+		}
+		for (int p = 0; p < pending.size(); p++) {
+			int hit = pendingHits.get(p);
+			try {
+				snippets[hit] = pending.get(p).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				cache.put(docIds[hit] + ":" + termsKey, snippets[hit]);
+			} catch (TimeoutException e) {
+				pending.get(p).cancel(true);
+				snippets[hit] = new Snippet(titles[hit], cut(abstracts[hit], 0, Collections.<Match> emptyList(),
+						Collections.<Match> emptyList()));
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IOException("Couldn't generate the snippet of doc " + docIds[hit], e);
+			}
+		}
+		return snippets;
+	}
+
+	private Snippet highlight(int docId, String title, String text, String[] terms, double[] weights)
+			throws IOException {
+		List<Match> titleMatches = getMatches(Constants.TITLE, docId, terms);
+		List<Match> matches = getMatches(Constants.ABSTRACT_TEXT, docId, terms);
+
+		// Best window : the most weight of distinct terms, then the most matches
+		int bestFirst = 0;
+		int bestLast = -1;
+		double bestScore = 0;
+		int[] counts = new int[terms.length];
+		double score = 0;
+		int last = 0;
+		for (int first = 0; first < matches.size(); first++) {
+			if (last == first) {
+				// A match is always in its own window
+				score += counts[matches.get(last).term]++ == 0 ? weights[matches.get(last).term] : 0;
+				last++;
+			}
+			while (last < matches.size() && matches.get(last).end - matches.get(first).start <= maxLength) {
+				if (counts[matches.get(last).term]++ == 0) {
+					score += weights[matches.get(last).term];
+				}
+				last++;
+			}
+			double windowScore = score + 0.01 * (last - first);
+			if (windowScore > bestScore) {
+				bestScore = windowScore;
+				bestFirst = first;
+				bestLast = last - 1;
+			}
+			if (--counts[matches.get(first).term] == 0) {
+				score -= weights[matches.get(first).term];
+			}
+		}
+
+		int start = 0;
+		if (bestLast >= bestFirst) {
+			// Centre the matches in the passage
+			int span = matches.get(bestLast).end - matches.get(bestFirst).start;
+			start = Math.max(0, matches.get(bestFirst).start - (maxLength - span) / 2);
+		}
+		return new Snippet(mark(title, 0, title.length(), titleMatches), cut(text, start,
+				bestLast >= bestFirst ? matches.subList(bestFirst, bestLast + 1) : matches, matches));
+	}
+
+	// The occurrences of the terms in the field of the document, by offset
+	private List<Match> getMatches(String field, int docId, String[] terms) throws IOException {
+		List<Match> matches = new ArrayList<Match>();
+		LeafReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(docId, reader.leaves()));
+		Terms fieldTerms = leaf.reader().terms(field);
+		if (fieldTerms == null || !fieldTerms.hasOffsets()) {
+			return matches;
+		}
+		TermsEnum termsEnum = fieldTerms.iterator();
+		PostingsEnum postings = null;
+		int target = docId - leaf.docBase;
+		for (int t = 0; t < terms.length; t++) {
+			if (!termsEnum.seekExact(new BytesRef(terms[t]))) {
+				continue;
+			}
+			postings = termsEnum.postings(postings, PostingsEnum.OFFSETS);
+			if (postings.advance(target) != target) {
+				continue;
+			}
+			int freq = Math.min(postings.freq(), maxMatchesPerTerm);
+			for (int i = 0; i < freq; i++) {
+				postings.nextPosition();
+				matches.add(new Match(postings.startOffset(), postings.endOffset(), t));
+			}
+		}
+		matches.sort((a, b) -> Integer.compare(a.start, b.start));
+		return matches;
+	}
+
+	// The passage of at most maxLength characters from start, on word
+	// boundaries and keeping the window matches, with the matches highlighted.
+	private String cut(String text, int start, List<Match> window, List<Match> matches) {
+		if (text == null) {
+			return "";
+		}
+		int end = Math.min(text.length(), start + maxLength);
+		if (start > 0) {
+			int space = text.indexOf(' ', start);
+			int firstMatch = window.isEmpty() ? end : window.get(0).start;
+			start = space >= 0 && space < firstMatch ? space + 1 : start;
+		}
+		if (end < text.length()) {
+			int space = text.lastIndexOf(' ', end);
+			int lastMatch = window.isEmpty() ? start : window.get(window.size() - 1).end;
+			end = space > lastMatch ? space : end;
+		}
+		return (start > 0 ? ELLIPSIS : "") + mark(text, start, end, matches).trim()
+				+ (end < text.length() ? ELLIPSIS : "");
+	}
+
+	private static String mark(String text, int start, int end, List<Match> matches) {
+		StringBuilder result = new StringBuilder(end - start + 16);
+		int position = start;
+		for (Match match : matches) {
+			if (match.start < position || match.end > end) {
+				continue;
+			}
+			result.append(text, position, match.start).append(PRE_TAG).append(text, match.start, match.end)
+					.append(POST_TAG);
+			position = match.end;
+		}
+		return result.append(text, position, end).toString();
+	}
+
+	@Override
+	public void close() {
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Measures the latency added by the snippets of a 10 hit page, searching
+	 * the same synthetic queries with and without snippets. The queries are run
+	 * twice with snippets, the second time from the cache.
+	 *
+	 * Usage: SnippetGenerator corpus.(xml|bin) [queries]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+			List<String> queries = LoadGenerator.syntheticQueries(docs, numQueries, 3, 42);
+			LuceneSearchApp engine = new LuceneSearchApp(
+					new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25));
+			engine.index(docs);
+			engine.setVerbose(false);
+			// JIT warmup, on other queries than the measured ones
+			engine.setSnippetPageSize(10);
+			for (String query : LoadGenerator.syntheticQueries(docs, 500, 3, 7)) {
+				engine.search(query, 10);
+			}
+
+			LatencyStats plain = new LatencyStats();
+			LatencyStats cold = new LatencyStats();
+			LatencyStats cached = new LatencyStats();
+			for (String query : queries) {
+				engine.setSnippetPageSize(0);
+				long start = System.nanoTime();
+				engine.search(query, 10);
+				plain.record(System.nanoTime() - start);
+				engine.setSnippetPageSize(10);
+				start = System.nanoTime();
+				engine.search(query, 10);
+				cold.record(System.nanoTime() - start);
+			}
+			for (String query : queries) {
+				long start = System.nanoTime();
+				engine.search(query, 10);
+				cached.record(System.nanoTime() - start);
+			}
+			System.out.println("Search : " + plain);
+			System.out.println("Search + snippets : " + cold);
+			System.out.println("Search + cached snippets : " + cached);
+			System.out.println(String.format("p99 added by the snippets of a 10 hit page : %.3f ms (%.3f ms cached)",
+					cold.getPercentileMs(99) - plain.getPercentileMs(99),
+					cached.getPercentileMs(99) - plain.getPercentileMs(99)));
+			engine.close();
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+
+/**
+ * Bounded LRU cache from token to stem in front of a stemming filter
+ * (SnowballFilter, KStemFilter, EnglishMinimalStemFilter). These stemmers
+ * look at one term at a time, so the stem of a frequent word is computed
+ * once: on a miss the term goes through the stemmer, on a hit the cached stem
+ * is copied into the term without stemming and without allocation. Keyword
+ * tokens are left alone, as the stemmers do.
+ *
+ * The cache belongs to the filter, and the Analyzer reuses the filters of a
+ * thread across documents, so there is one cache per thread and no locking.
+ * Each entry costs about 100 bytes plus twice the term and stem lengths.
+ */
+public final class StemCacheFilter extends TokenFilter {
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
+	// The stemmer reads from its own one term source
+	private final TermSource source = new TermSource();
+	private final TokenStream stemmer;
+	private final CharTermAttribute stemAtt;
+	private final Map<Term, char[]> cache;
+	// Lookup key, refilled with every term
+	private final Term probe = new Term();
+
+	/**
+	 * @param input
+	 *            The stream to stem.
+	 * @param stemmer
+	 *            Builds the stemming filter over the given stream, e.g.
+	 *            KStemFilter::new.
+	 * @param maxEntries
+	 *            Maximum number of cached stems (>= 1), the least recently
+	 *            used are evicted.
+	 */
+	public StemCacheFilter(TokenStream input, Function<TokenStream, TokenStream> stemmer, final int maxEntries) {
+		super(input);
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Stem cache size must be >= 1 : " + maxEntries);
+		}
+		this.stemmer = stemmer.apply(source);
+		this.stemAtt = source.getAttribute(CharTermAttribute.class);
+		this.cache = new LinkedHashMap<Term, char[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Term, char[]> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (!input.incrementToken()) {
+			return false;
+		}
+		if (keywordAtt.isKeyword()) {
+			return true;
+		}
+		probe.set(termAtt.buffer(), termAtt.length());
+		char[] stem = cache.get(probe);
+		if (stem == null) {
+			source.set(termAtt.buffer(), termAtt.length());
+			stemmer.incrementToken();
+			stem = Arrays.copyOf(stemAtt.buffer(), stemAtt.length());
+			cache.put(probe.copy(), stem);
+		}
+		termAtt.copyBuffer(stem, 0, stem.length);
+		return true;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		stemmer.reset();
+	}
+
+	@Override
+	public void close() throws IOException {
+		super.close();
+		stemmer.close();
+	}
+
+	// Emits the term it was last set to, once
+	private static final class TermSource extends TokenStream {
+		private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+		private boolean pending = false;
+
+		void set(char[] buffer, int length) {
+			clearAttributes();
+			termAtt.copyBuffer(buffer, 0, length);
+			pending = true;
+		}
+
+		@Override
+		public boolean incrementToken() {
+			boolean next = pending;
+			pending = false;
+			return next;
+		}
+	}
+
+	// Term text as a map key, compared by content
+	private static final class Term {
+		private char[] chars = new char[16];
+		private int length;
+		private int hash;
+
+		void set(char[] buffer, int length) {
+			if (chars.length < length) {
+				chars = new char[Math.max(length, 2 * chars.length)];
+			}
+			System.arraycopy(buffer, 0, chars, 0, length);
+			this.length = length;
+			int h = 0;
+			for (int i = 0; i < length; i++) {
+				h = 31 * h + buffer[i];
+			}
+			this.hash = h;
+		}
+
+		Term copy() {
+			Term term = new Term();
+			term.chars = Arrays.copyOf(chars, length);
+			term.length = length;
+			term.hash = hash;
+			return term;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Term)) {
+				return false;
+			}
+			Term other = (Term) obj;
+			if (other.length != length || other.hash != hash) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (other.chars[i] != chars[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Analyzes the title and abstract of every document of the corpus with
+	 * each stemmer of Constants, stop words removed, and prints the tokens per
+	 * second of three pipelines: a new Analyzer for every document (the
+	 * components are built each time), the reused components of one Analyzer,
+	 * and the reused components with the stem cache (the same as without it
+	 * for kstemmer and english_min, see Configuration.setStemCache()). The
+	 * token streams of the three must be the same.
+	 *
+	 * Usage: StemCacheFilter corpus.(xml|bin) [passes] [cache size]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+			int cacheSize = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+			String[] stemmers = { Constants.NO_STEMMER, Constants.PORTER_STEMMER, Constants.ENGLISH_STEMMER,
+					Constants.K_STEMMER, Constants.ENG_MIN_STEMMER };
+			System.out.println(String.format("%d documents x %d passes, stem cache of %d entries", docs.size(),
+					passes, cacheSize));
+			for (String stemmer : stemmers) {
+				Configuration plain = new Configuration(Constants.REMOVE_STOP_WORDS, stemmer, Constants.BM25);
+				Configuration cached = new Configuration(Constants.REMOVE_STOP_WORDS, stemmer, Constants.BM25);
+				cached.setStemCache(cacheSize);
+				// Twice, the first round warms up the JIT
+				for (int round = 0; round < 2; round++) {
+					long[] perDocument = analyze(docs, passes, plain, true);
+					long[] reused = analyze(docs, passes, plain, false);
+					long[] withCache = analyze(docs, passes, cached, false);
+					if (perDocument[1] != reused[1] || reused[1] != withCache[1]) {
+						throw new IllegalStateException("Different tokens with stemmer " + stemmer);
+					}
+					if (round == 1) {
+						System.out.println(String.format(
+								"%-12s %,d tokens : new analyzer %.2f M tokens/s, reused %.2f M tokens/s, "
+										+ "reused + stem cache %.2f M tokens/s",
+								stemmer, reused[0], perDocument[0] / (perDocument[2] / 1e3),
+								reused[0] / (reused[2] / 1e3), withCache[0] / (withCache[2] / 1e3)));
+					}
+				}
+			}
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+
+	// Number of tokens, hash of their terms in order and nanoseconds
+	private static long[] analyze(List<DocumentInCollection> docs, int passes, Configuration config,
+			boolean analyzerPerDocument) throws IOException {
+		long tokens = 0;
+		long hash = 0;
+		Analyzer analyzer = config.getAnalyzer();
+		long start = System.nanoTime();
+		for (int pass = 0; pass < passes; pass++) {
+			for (DocumentInCollection doc : docs) {
+				if (analyzerPerDocument) {
+					analyzer.close();
+					analyzer = config.getAnalyzer();
+				}
+				for (String text : new String[] { doc.getTitle(), doc.getAbstractText() }) {
+					try (TokenStream stream = analyzer.tokenStream(Constants.ABSTRACT_TEXT, text)) {
+						CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+						stream.reset();
+						while (stream.incrementToken()) {
+							tokens++;
+							for (int i = 0; i < term.length(); i++) {
+								hash = 31 * hash + term.buffer()[i];
+							}
+							hash = 31 * hash + ' ';
+						}
+						stream.end();
+					}
+				}
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		analyzer.close();
+		return new long[] { tokens, hash, nanos };
+	}
+
+}
@@ -0,0 +1,561 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Streaming readers and writers of the TREC evaluation files, one record at
+ * a time so that large test collections are never materialised:
+ *
+ * <pre>
+ * topics : &lt;top&gt; &lt;num&gt; Number: 401 &lt;title&gt; ... &lt;desc&gt; Description: ... &lt;narr&gt; Narrative: ... &lt;/top&gt;
+ * qrels  : topic iteration docno relevance
+ * run    : topic Q0 docno rank score tag
+ * </pre>
+ *
+ * The documents of this collection have no docno, their id (position in the
+ * list given to LuceneSearchApp.index()) is used instead, as in
+ * RelevanceJudgments. The run files can be evaluated with trec_eval.
+ */
+public class TrecFormat {
+
+	private TrecFormat() {
+	}
+
+	// Splits the line on whitespace into columns, returns the number of
+	// columns (which can be more than columns.length)
+	private static int split(String line, String[] columns) {
+		int count = 0;
+		int i = 0;
+		int length = line.length();
+		while (i < length) {
+			while (i < length && Character.isWhitespace(line.charAt(i))) {
+				i++;
+			}
+			if (i == length) {
+				break;
+			}
+			int start = i;
+			while (i < length && !Character.isWhitespace(line.charAt(i))) {
+				i++;
+			}
+			if (count < columns.length) {
+				columns[count] = line.substring(start, i);
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * A TREC topic.
+	 */
+	public static class Topic {
+		private String number;
+		private String title;
+		private String description;
+		private String narrative;
+
+		/**
+		 * @param number
+		 *            The topic number.
+		 * @param title
+		 *            The title, the usual query.
+		 * @param description
+		 *            The description, may be empty.
+		 * @param narrative
+		 *            The narrative, may be empty.
+		 */
+		public Topic(String number, String title, String description, String narrative) {
+			this.number = number;
+			this.title = title;
+			this.description = description;
+			this.narrative = narrative;
+		}
+
+		public String getNumber() {
+			return number;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public String getNarrative() {
+			return narrative;
+		}
+	}
+
+	/**
+	 * Reads the topics of a TREC topics file one by one. The text of a field
+	 * runs until the next tag and can span several lines, the "Number:",
+	 * "Description:" and "Narrative:" prefixes are removed.
+	 */
+	public static class TopicReader implements Closeable {
+		private BufferedReader in;
+		private int lineNumber;
+
+		/**
+		 * @param path
+		 *            Path of the topics file.
+		 * @throws IOException
+		 *             If the file couldn't be opened.
+		 */
+		public TopicReader(String path) throws IOException {
+			in = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return The next topic, null at the end of the file.
+		 * @throws IOException
+		 *             If the file couldn't be read or a topic has no number.
+		 */
+		public Topic next() throws IOException {
+			String[] fields = null;
+			int field = -1;
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.startsWith("<top>")) {
+					fields = new String[] { "", "", "", "" };
+					field = -1;
+					continue;
+				}
+				if (fields == null) {
+					continue;
+				}
+				if (line.startsWith("</top>")) {
+					if (fields[0].isEmpty()) {
+						throw new IOException("Topic without number before line " + lineNumber);
+					}
+					return new Topic(fields[0], fields[1], fields[2], fields[3]);
+				}
+				int tag = line.startsWith("<num>") ? 0
+						: line.startsWith("<title>") ? 1
+								: line.startsWith("<desc>") ? 2 : line.startsWith("<narr>") ? 3 : -1;
+				if (tag >= 0) {
+					field = tag;
+					line = line.substring(line.indexOf('>') + 1).trim();
+					for (String prefix : new String[] { "Number:", "Description:", "Narrative:" }) {
+						if (line.startsWith(prefix)) {
+							line = line.substring(prefix.length()).trim();
+						}
+					}
+				}
+				if (field >= 0 && !line.isEmpty()) {
+					fields[field] = fields[field].isEmpty() ? line : fields[field] + " " + line;
+				}
+			}
+			if (fields != null) {
+				throw new IOException("Unterminated topic at line " + lineNumber);
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a TREC topics file.
+	 */
+	public static class TopicWriter implements Closeable {
+		private Writer out;
+
+		/**
+		 * @param path
+		 *            Path of the topics file.
+		 * @throws IOException
+		 *             If the file couldn't be created.
+		 */
+		public TopicWriter(String path) throws IOException {
+			out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @param topic
+		 *            The topic to append.
+		 * @throws IOException
+		 *             If the file couldn't be written.
+		 */
+		public void write(Topic topic) throws IOException {
+			out.write("<top>\n<num> Number: " + topic.getNumber() + "\n<title> " + topic.getTitle()
+					+ "\n<desc> Description:\n" + topic.getDescription() + "\n<narr> Narrative:\n"
+					+ topic.getNarrative() + "\n</top>\n\n");
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a qrels file line by line: next() moves to the next judgment.
+	 */
+	public static class QrelsReader implements Closeable {
+		private BufferedReader in;
+		private String[] columns = new String[4];
+		private String line;
+		private int lineNumber;
+		private int relevance;
+
+		/**
+		 * @param path
+		 *            Path of the qrels file.
+		 * @throws IOException
+		 *             If the file couldn't be opened.
+		 */
+		public QrelsReader(String path) throws IOException {
+			in = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return false at the end of the file.
+		 * @throws IOException
+		 *             If the file couldn't be read or the line is malformed.
+		 */
+		public boolean next() throws IOException {
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				int count = split(line, columns);
+				if (count == 0) {
+					continue;
+				}
+				if (count != 4) {
+					throw new IOException("Malformed qrels line " + lineNumber + " : " + line);
+				}
+				try {
+					relevance = Integer.parseInt(columns[3]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed qrels line " + lineNumber + " : " + line, e);
+				}
+				return true;
+			}
+			return false;
+		}
+
+		public String getTopic() {
+			return columns[0];
+		}
+
+		public String getDocNo() {
+			return columns[2];
+		}
+
+		/**
+		 * @return The relevance grade, > 0 for a relevant document.
+		 */
+		public int getRelevance() {
+			return relevance;
+		}
+
+		/**
+		 * @return The current line, for the error messages.
+		 */
+		public String getLine() {
+			return "line " + lineNumber + " : " + line;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a qrels file.
+	 */
+	public static class QrelsWriter implements Closeable {
+		private Writer out;
+
+		/**
+		 * @param path
+		 *            Path of the qrels file.
+		 * @throws IOException
+		 *             If the file couldn't be created.
+		 */
+		public QrelsWriter(String path) throws IOException {
+			out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @param topic
+		 *            The topic number.
+		 * @param docNo
+		 *            The document.
+		 * @param relevance
+		 *            The relevance grade, > 0 for a relevant document.
+		 * @throws IOException
+		 *             If the file couldn't be written.
+		 */
+		public void write(String topic, String docNo, int relevance) throws IOException {
+			out.write(topic + " 0 " + docNo + " " + relevance + "\n");
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a run file line by line: next() moves to the next result.
+	 */
+	public static class RunReader implements Closeable {
+		private BufferedReader in;
+		private String[] columns = new String[6];
+		private int lineNumber;
+		private int rank;
+		private float score;
+
+		/**
+		 * @param path
+		 *            Path of the run file.
+		 * @throws IOException
+		 *             If the file couldn't be opened.
+		 */
+		public RunReader(String path) throws IOException {
+			in = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return false at the end of the file.
+		 * @throws IOException
+		 *             If the file couldn't be read or the line is malformed.
+		 */
+		public boolean next() throws IOException {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				int count = split(line, columns);
+				if (count == 0) {
+					continue;
+				}
+				if (count != 6) {
+					throw new IOException("Malformed run line " + lineNumber + " : " + line);
+				}
+				try {
+					rank = Integer.parseInt(columns[3]);
+					score = Float.parseFloat(columns[4]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed run line " + lineNumber + " : " + line, e);
+				}
+				return true;
+			}
+			return false;
+		}
+
+		public String getTopic() {
+			return columns[0];
+		}
+
+		public String getDocNo() {
+			return columns[2];
+		}
+
+		public int getRank() {
+			return rank;
+		}
+
+		public float getScore() {
+			return score;
+		}
+
+		public String getTag() {
+			return columns[5];
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a run file.
+	 */
+	public static class RunWriter implements Closeable {
+		private Writer out;
+		private String tag;
+
+		/**
+		 * @param path
+		 *            Path of the run file.
+		 * @param tag
+		 *            The name of the run, without whitespace.
+		 * @throws IOException
+		 *             If the file couldn't be created.
+		 */
+		public RunWriter(String path, String tag) throws IOException {
+			out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+			this.tag = tag;
+		}
+
+		/**
+		 * @param topic
+		 *            The topic number.
+		 * @param docNo
+		 *            The document.
+		 * @param rank
+		 *            The rank, from 1.
+		 * @param score
+		 *            The score, decreasing with the rank (trec_eval ranks by
+		 *            score).
+		 * @throws IOException
+		 *             If the file couldn't be written.
+		 */
+		public void write(String topic, String docNo, int rank, float score) throws IOException {
+			out.write(topic + " Q0 " + docNo + " " + rank + " " + score + " " + tag + "\n");
+		}
+
+		/**
+		 * Writes the hits of a topic, the doc ids being the docnos.
+		 *
+		 * @param topic
+		 *            The topic number.
+		 * @param hits
+		 *            The ranked hits, e.g. from LuceneSearchApp.rank().
+		 * @throws IOException
+		 *             If the file couldn't be written.
+		 */
+		public void write(String topic, ScoreDoc[] hits) throws IOException {
+			for (int i = 0; i < hits.length; i++) {
+				write(topic, Integer.toString(hits[i].doc), i + 1, hits[i].score);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Runs the evaluation through TREC files: writes the queries of the
+	 * recommender task as topics and the judgments as qrels, reads them back,
+	 * writes the BM25 run of the topics, and reads the run back to compute
+	 * the MAP. Then times the loading of a large synthetic qrels file.
+	 *
+	 * Usage: TrecFormat corpus.xml directory [qrels lines]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 1) {
+			DocumentCollectionParser parser = new DocumentCollectionParser();
+			parser.parse(args[0]);
+			// The recommender systems task, as in LuceneSearchApp.main()
+			int task = 2;
+			List<DocumentInCollection> docs = new DocumentCollectionProcessor(parser.getDocuments(), task)
+					.getFilteredDocuments();
+			Path dir = Paths.get(args[1]);
+			Files.createDirectories(dir);
+			String topicsPath = dir.resolve("topics.txt").toString();
+			String qrelsPath = dir.resolve("qrels.txt").toString();
+			String runPath = dir.resolve("run.txt").toString();
+
+			String[] queries = { "information retrieval system recommendation",
+					"recommender systems information retrieval recommendation",
+					"systems collaborative filtering recommendation", "systems recommendation systems classification" };
+			RelevanceJudgments collection = RelevanceJudgments.fromDocuments(docs);
+			try (TopicWriter topics = new TopicWriter(topicsPath); QrelsWriter qrels = new QrelsWriter(qrelsPath)) {
+				for (int i = 0; i < queries.length; i++) {
+					String number = Integer.toString(i + 1);
+					topics.write(new Topic(number, queries[i], "", ""));
+					for (int docId = 0; docId < docs.size(); docId++) {
+						qrels.write(number, Integer.toString(docId), collection.isRelevant(task, docId) ? 1 : 0);
+					}
+				}
+			}
+
+			RelevanceJudgments judgments = RelevanceJudgments.readQrels(qrelsPath);
+			LuceneSearchApp engine = new LuceneSearchApp(
+					new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER, Constants.BM25));
+			engine.setRelevanceJudgments(judgments);
+			engine.index(docs);
+			engine.setVerbose(false);
+			try (TopicReader topics = new TopicReader(topicsPath); RunWriter run = new RunWriter(runPath, "bm25")) {
+				Topic topic;
+				while ((topic = topics.next()) != null) {
+					run.write(topic.getNumber(), engine.rank(topic.getTitle(), docs.size()));
+				}
+			}
+			engine.close();
+
+			// The results of a topic are consecutive in the run
+			EvaluationMetrics metrics = new EvaluationMetrics(10);
+			EvaluationMetrics.Aggregate aggregate = metrics.newAggregate();
+			double[] values = metrics.newValues();
+			boolean[] relevance = new boolean[docs.size()];
+			try (RunReader run = new RunReader(runPath)) {
+				String topic = null;
+				int length = 0;
+				while (true) {
+					boolean more = run.next();
+					if (topic != null && (!more || !run.getTopic().equals(topic))) {
+						aggregate.add(metrics.evaluate(relevance, length,
+								judgments.getRelevantCount(Integer.parseInt(topic)), values));
+						length = 0;
+					}
+					if (!more) {
+						break;
+					}
+					topic = run.getTopic();
+					if (length == relevance.length) {
+						relevance = Arrays.copyOf(relevance, 2 * length);
+					}
+					relevance[length++] = judgments.isRelevant(Integer.parseInt(topic),
+							Integer.parseInt(run.getDocNo()));
+				}
+			}
+			System.out.println(String.format("%s, %s and %s : MAP = %.16f, P@10 = %.4f over %d topics", topicsPath,
+					qrelsPath, runPath, aggregate.getMean(EvaluationMetrics.AP),
+					aggregate.getMean(metrics.getPrecisionIndex(10)), aggregate.getCount()));
+
+			int lines = args.length > 2 ? Integer.parseInt(args[2]) : 2000000;
+			Path largeQrels = dir.resolve("large-qrels.txt");
+			Random random = new Random(42);
+			try (QrelsWriter qrels = new QrelsWriter(largeQrels.toString())) {
+				for (int i = 0; i < lines; i++) {
+					qrels.write(Integer.toString(i / 1000), Integer.toString(random.nextInt(100000)),
+							random.nextInt(10) == 0 ? 1 : 0);
+				}
+			}
+			// Twice, the first round warms up the JIT
+			for (int round = 0; round < 2; round++) {
+				long start = System.nanoTime();
+				RelevanceJudgments large = RelevanceJudgments.readQrels(largeQrels.toString());
+				double ms = (System.nanoTime() - start) / 1e6;
+				if (round == 1) {
+					System.out.println(String.format("%s : %d lines (%.1f MB) loaded in %.0f ms, %.1f M lines/s, "
+							+ "%d relevant in topic 0", largeQrels, lines, Files.size(largeQrels) / 1e6, ms,
+							lines / ms / 1e3, large.getRelevantCount(0)));
+				}
+			}
+			Files.delete(largeQrels);
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+}
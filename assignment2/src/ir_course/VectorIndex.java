@@ -0,0 +1,532 @@
+/*
+ * Created on 19 October 2026
+ *
+ */
+
+package ir_course;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Dense vectors of the documents for approximate semantic search, computed
+ * without any model: every analysed term of the title and abstract_text
+ * (read from the forward index) is hashed, as a whole and as character
+ * trigrams, into a fixed number of signed dimensions, weighted by its idf and
+ * (log) frequency, so that terms sharing most of their trigrams (e.g.
+ * "recommender" and "recommendation") get close vectors.
+ *
+ * The normalised vectors are quantised to one byte per dimension with a scale
+ * per document, the query vector too, so a similarity is an integer dot
+ * product (about three times faster than bytes times floats). The
+ * approximate search is an IVF index: the vectors are clustered with
+ * spherical k-means (on a sample) and a query only scores the documents of
+ * the nprobe clusters closest to it.
+ */
+public class VectorIndex {
+	private static final int TITLE_WEIGHT = 2;
+
+	private IndexReader reader;
+	private int dimensions;
+	private int numDocs;
+	// numDocs x dimensions, vector[doc][i] = vectors[doc * dimensions + i] * scales[doc]
+	private byte[] vectors;
+	private float[] scales;
+	// IVF : the documents of cluster c are listDocs[listOffsets[c]] ...
+	// listDocs[listOffsets[c + 1] - 1]
+	private float[][] centroids;
+	// The centroids quantised like the documents, for the assignment
+	private byte[][] quantisedCentroids;
+	private int[] listOffsets;
+	private int[] listDocs;
+	private int nprobe = 8;
+
+	/**
+	 * A query vector, see embed().
+	 */
+	public static class QueryVector {
+		private float[] values;
+		private byte[] quantised;
+		private float scale;
+	}
+
+	private VectorIndex(IndexReader reader, int dimensions, int numDocs) {
+		this.reader = reader;
+		this.dimensions = dimensions;
+		this.numDocs = numDocs;
+		long size = (long) numDocs * dimensions;
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException(
+					"Too many vector bytes : " + numDocs + " documents x " + dimensions + " dimensions = " + size);
+		}
+		this.vectors = new byte[(int) size];
+		this.scales = new float[numDocs];
+	}
+
+	/**
+	 * Computes the vectors of all the documents and clusters them.
+	 *
+	 * @param reader
+	 *            Reader of the index, for the document frequencies.
+	 * @param forwardIndex
+	 *            Forward index with the title and abstract_text fields.
+	 * @param dimensions
+	 *            Number of dimensions of the vectors.
+	 * @param seed
+	 *            Seed of the clustering.
+	 * @return The vector index.
+	 * @throws IOException
+	 *             If the document frequencies couldn't be read.
+	 */
+	public static VectorIndex build(IndexReader reader, ForwardIndex forwardIndex, int dimensions, long seed)
+			throws IOException {
+		VectorIndex index = new VectorIndex(reader, dimensions, forwardIndex.getNumDocs());
+		String[] fields = { Constants.TITLE, Constants.ABSTRACT_TEXT };
+		// Features of every term of the dictionaries, computed once
+		TermFeatures[][] termFeatures = new TermFeatures[fields.length][];
+		for (int f = 0; f < fields.length; f++) {
+			termFeatures[f] = new TermFeatures[forwardIndex.getNumTerms(fields[f])];
+		}
+		float[] vector = new float[dimensions];
+		for (int doc = 0; doc < index.numDocs; doc++) {
+			Arrays.fill(vector, 0f);
+			for (int f = 0; f < fields.length; f++) {
+				int termCount = forwardIndex.getTermCount(fields[f], doc);
+				for (int i = 0; i < termCount; i++) {
+					int termId = forwardIndex.getTermId(fields[f], doc, i);
+					if (termFeatures[f][termId] == null) {
+						termFeatures[f][termId] = index.getTermFeatures(forwardIndex.getTerm(fields[f], termId));
+					}
+					float weight = (float) (1 + Math.log(forwardIndex.getFreq(fields[f], doc, i)))
+							* (fields[f].equals(Constants.TITLE) ? TITLE_WEIGHT : 1);
+					termFeatures[f][termId].addTo(vector, weight);
+				}
+			}
+			index.quantise(doc, vector);
+		}
+		index.cluster(seed);
+		return index;
+	}
+
+	/**
+	 * The idf weighted hashed features of a term, a sparse vector.
+	 */
+	private static class TermFeatures {
+		int[] dimensions;
+		float[] weights;
+
+		void addTo(float[] vector, float weight) {
+			for (int i = 0; i < dimensions.length; i++) {
+				vector[dimensions[i]] += weight * weights[i];
+			}
+		}
+	}
+
+	private TermFeatures getTermFeatures(String term) throws IOException {
+		int docFreq = reader.docFreq(new Term(Constants.ABSTRACT_TEXT, term));
+		float idf = (float) Math.log((reader.numDocs() + 1.0) / (docFreq + 1.0));
+		String padded = "<" + term + ">";
+		int trigrams = Math.max(0, padded.length() - 2);
+		TermFeatures features = new TermFeatures();
+		features.dimensions = new int[trigrams + 1];
+		features.weights = new float[trigrams + 1];
+		setFeature(features, 0, hash(term), idf);
+		float trigramWeight = idf / (float) Math.sqrt(Math.max(1, trigrams));
+		for (int i = 0; i < trigrams; i++) {
+			setFeature(features, i + 1, hash(padded.substring(i, i + 3)), trigramWeight);
+		}
+		return features;
+	}
+
+	// The hash picks the dimension and the sign of the feature
+	private void setFeature(TermFeatures features, int i, long hash, float weight) {
+		features.dimensions[i] = (int) ((hash >>> 1) % dimensions);
+		features.weights[i] = (hash & 1) == 0 ? weight : -weight;
+	}
+
+	// FNV-1a over the characters, finalised with the MurmurHash3 mix
+	private static long hash(String text) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB93FE1A85A93L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private void quantise(int doc, float[] vector) {
+		normalise(vector);
+		float max = 0f;
+		for (float value : vector) {
+			max = Math.max(max, Math.abs(value));
+		}
+		scales[doc] = max / 127f;
+		for (int d = 0; d < dimensions; d++) {
+			vectors[doc * dimensions + d] = max == 0 ? 0 : (byte) Math.round(vector[d] / scales[doc]);
+		}
+	}
+
+	private static void normalise(float[] vector) {
+		double norm = 0;
+		for (float value : vector) {
+			norm += value * value;
+		}
+		if (norm > 0) {
+			float inverse = (float) (1 / Math.sqrt(norm));
+			for (int d = 0; d < vector.length; d++) {
+				vector[d] *= inverse;
+			}
+		}
+	}
+
+	// Spherical k-means on a sample, then every document goes to its closest
+	// centroid.
+	private void cluster(long seed) {
+		if (numDocs == 0) {
+			centroids = new float[0][];
+			listOffsets = new int[1];
+			listDocs = new int[0];
+			return;
+		}
+		int numLists = Math.max(1, (int) Math.sqrt(numDocs));
+		Random random = new Random(seed);
+		int[] sample = new int[Math.min(numDocs, 32 * numLists)];
+		int[] shuffled = new int[numDocs];
+		for (int doc = 0; doc < numDocs; doc++) {
+			shuffled[doc] = doc;
+		}
+		for (int i = 0; i < sample.length; i++) {
+			int j = i + random.nextInt(numDocs - i);
+			int swap = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = swap;
+			sample[i] = shuffled[i];
+		}
+
+		centroids = new float[numLists][];
+		for (int c = 0; c < numLists; c++) {
+			centroids[c] = getVector(sample[c % sample.length]);
+		}
+		for (int iteration = 0; iteration < 8; iteration++) {
+			quantiseCentroids();
+			float[][] sums = new float[numLists][dimensions];
+			int[] sizes = new int[numLists];
+			for (int i = 0; i < sample.length; i++) {
+				int closest = getClosestCentroid(sample[i]);
+				sizes[closest]++;
+				float[] sum = sums[closest];
+				int offset = sample[i] * dimensions;
+				for (int d = 0; d < dimensions; d++) {
+					sum[d] += vectors[offset + d] * scales[sample[i]];
+				}
+			}
+			for (int c = 0; c < numLists; c++) {
+				if (sizes[c] == 0) {
+					// Empty cluster, restart it from a random document
+					sums[c] = getVector(sample[random.nextInt(sample.length)]);
+				}
+				normalise(sums[c]);
+				centroids[c] = sums[c];
+			}
+		}
+		quantiseCentroids();
+
+		// Inverted lists, by counting sort of the assignments
+		int[] lists = new int[numDocs];
+		listOffsets = new int[numLists + 1];
+		for (int doc = 0; doc < numDocs; doc++) {
+			lists[doc] = getClosestCentroid(doc);
+			listOffsets[lists[doc] + 1]++;
+		}
+		for (int c = 0; c < numLists; c++) {
+			listOffsets[c + 1] += listOffsets[c];
+		}
+		listDocs = new int[numDocs];
+		int[] next = Arrays.copyOf(listOffsets, numLists);
+		for (int doc = 0; doc < numDocs; doc++) {
+			listDocs[next[lists[doc]]++] = doc;
+		}
+	}
+
+	private float[] getVector(int doc) {
+		float[] vector = new float[dimensions];
+		for (int d = 0; d < dimensions; d++) {
+			vector[d] = vectors[doc * dimensions + d] * scales[doc];
+		}
+		return vector;
+	}
+
+	private void quantiseCentroids() {
+		quantisedCentroids = new byte[centroids.length][];
+		for (int c = 0; c < centroids.length; c++) {
+			quantisedCentroids[c] = quantise(centroids[c]).quantised;
+		}
+	}
+
+	// The scales of the quantised centroids are left out, they are all
+	// normalised so the ranking barely changes.
+	private int getClosestCentroid(int doc) {
+		int best = 0;
+		int bestScore = Integer.MIN_VALUE;
+		for (int c = 0; c < quantisedCentroids.length; c++) {
+			int score = dot(vectors, doc * dimensions, quantisedCentroids[c]);
+			if (score > bestScore) {
+				bestScore = score;
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param nprobe
+	 *            Number of clusters searched by search(), more is slower and
+	 *            closer to the exact search.
+	 */
+	public void setNprobe(int nprobe) {
+		this.nprobe = nprobe;
+	}
+
+	/**
+	 * @return Number of clusters of the IVF index.
+	 */
+	public int getNumLists() {
+		return centroids.length;
+	}
+
+	/**
+	 * Computes the vector of a query, in the same space as the documents.
+	 *
+	 * @param queryTerms
+	 *            The analysed query terms.
+	 * @return The normalised query vector.
+	 * @throws IOException
+	 *             If the document frequencies couldn't be read.
+	 */
+	public QueryVector embed(String[] queryTerms) throws IOException {
+		float[] vector = new float[dimensions];
+		for (String term : queryTerms) {
+			getTermFeatures(term).addTo(vector, 1f);
+		}
+		normalise(vector);
+		return quantise(vector);
+	}
+
+	private static QueryVector quantise(float[] vector) {
+		QueryVector query = new QueryVector();
+		query.values = vector;
+		query.quantised = new byte[vector.length];
+		float max = 0f;
+		for (float value : vector) {
+			max = Math.max(max, Math.abs(value));
+		}
+		query.scale = max / 127f;
+		for (int d = 0; d < vector.length; d++) {
+			query.quantised[d] = max == 0 ? 0 : (byte) Math.round(vector[d] / query.scale);
+		}
+		return query;
+	}
+
+	/**
+	 * @return The cosine similarity of the query vector and the document
+	 *         vector, both quantised.
+	 */
+	public float similarity(QueryVector query, int doc) {
+		return dot(vectors, doc * dimensions, query.quantised) * query.scale * scales[doc];
+	}
+
+	// Integer dot product, several times faster than on floats
+	private static int dot(byte[] a, int offset, byte[] b) {
+		int sum = 0;
+		for (int d = 0; d < b.length; d++) {
+			sum += a[offset + d] * b[d];
+		}
+		return sum;
+	}
+
+	private static float dot(float[] a, float[] b) {
+		float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int d = 0;
+		for (; d + 3 < a.length; d += 4) {
+			sum0 += a[d] * b[d];
+			sum1 += a[d + 1] * b[d + 1];
+			sum2 += a[d + 2] * b[d + 2];
+			sum3 += a[d + 3] * b[d + 3];
+		}
+		for (; d < a.length; d++) {
+			sum0 += a[d] * b[d];
+		}
+		return sum0 + sum1 + sum2 + sum3;
+	}
+
+	/**
+	 * Approximate search, only the documents of the nprobe closest clusters
+	 * are scored.
+	 *
+	 * @param query
+	 *            The query vector, see embed().
+	 * @param k
+	 *            Number of documents to return.
+	 * @return The k most similar documents found, most similar first.
+	 */
+	public ScoreDoc[] search(QueryVector query, int k) {
+		Integer[] lists = new Integer[centroids.length];
+		final float[] centroidScores = new float[centroids.length];
+		for (int c = 0; c < centroids.length; c++) {
+			lists[c] = c;
+			centroidScores[c] = dot(centroids[c], query.values);
+		}
+		Arrays.sort(lists, (a, b) -> Float.compare(centroidScores[b], centroidScores[a]));
+		PriorityQueue<ScoreDoc> top = new PriorityQueue<ScoreDoc>(k + 1, (a, b) -> Float.compare(a.score, b.score));
+		for (int p = 0; p < Math.min(nprobe, lists.length); p++) {
+			for (int i = listOffsets[lists[p]]; i < listOffsets[lists[p] + 1]; i++) {
+				collect(top, k, listDocs[i], similarity(query, listDocs[i]));
+			}
+		}
+		return toArray(top);
+	}
+
+	/**
+	 * Exact search, every document is scored.
+	 *
+	 * @param query
+	 *            The query vector, see embed().
+	 * @param k
+	 *            Number of documents to return.
+	 * @return The k most similar documents, most similar first.
+	 */
+	public ScoreDoc[] searchExact(QueryVector query, int k) {
+		PriorityQueue<ScoreDoc> top = new PriorityQueue<ScoreDoc>(k + 1, (a, b) -> Float.compare(a.score, b.score));
+		for (int doc = 0; doc < numDocs; doc++) {
+			collect(top, k, doc, similarity(query, doc));
+		}
+		return toArray(top);
+	}
+
+	private static void collect(PriorityQueue<ScoreDoc> top, int k, int doc, float score) {
+		if (top.size() < k) {
+			top.add(new ScoreDoc(doc, score));
+		} else if (score > top.peek().score) {
+			top.poll();
+			top.add(new ScoreDoc(doc, score));
+		}
+	}
+
+	private static ScoreDoc[] toArray(PriorityQueue<ScoreDoc> top) {
+		ScoreDoc[] result = new ScoreDoc[top.size()];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = top.poll();
+		}
+		return result;
+	}
+
+	/**
+	 * @return Memory used by the quantised vectors and the IVF lists, in
+	 *         bytes.
+	 */
+	public long getSizeInBytes() {
+		return vectors.length + 4L * scales.length + 4L * centroids.length * dimensions + 4L * listOffsets.length
+				+ 4L * listDocs.length;
+	}
+
+	/**
+	 * Recall@10 and latency of the approximate search against the exact
+	 * search, for increasing nprobe.
+	 *
+	 * Usage: VectorIndex corpus.(xml|bin) [queries]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) {
+			List<DocumentInCollection> docs = CorpusScaler.readCorpus(args[0]);
+			int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+			int k = 10;
+			Configuration config = new Configuration(Constants.REMOVE_STOP_WORDS, Constants.ENG_MIN_STEMMER,
+					Constants.BM25);
+			config.setVectorWeight(0.3f);
+			LuceneSearchApp engine = new LuceneSearchApp(config);
+			Path forwardIndexFile = Files.createTempFile("forward", ".idx");
+			forwardIndexFile.toFile().deleteOnExit();
+			engine.enableForwardIndex(forwardIndexFile);
+			engine.index(docs);
+			VectorIndex index = engine.getVectorIndex();
+			System.out.println("Indexed " + docs.size() + " documents, vectors : " + index.getSizeInBytes() / 1024
+					+ " kB, " + index.getNumLists() + " lists");
+
+			Analyzer analyzer = config.getAnalyzer();
+			List<String> queries = LoadGenerator.syntheticQueries(docs, numQueries, 3, 42);
+			QueryVector[] queryVectors = new QueryVector[numQueries];
+			for (int q = 0; q < numQueries; q++) {
+				queryVectors[q] = index.embed(analyze(analyzer, queries.get(q)));
+			}
+			ScoreDoc[][] exact = new ScoreDoc[numQueries][];
+			LatencyStats exactLatencies = new LatencyStats();
+			// Twice, the first round warms up the JIT
+			for (int round = 0; round < 2; round++) {
+				for (int q = 0; q < numQueries; q++) {
+					long queryStart = System.nanoTime();
+					exact[q] = index.searchExact(queryVectors[q], k);
+					if (round == 1) {
+						exactLatencies.record(System.nanoTime() - queryStart);
+					}
+				}
+			}
+			System.out.println("Exact : " + exactLatencies);
+			for (int nprobe = 1; nprobe <= index.getNumLists(); nprobe *= 2) {
+				index.setNprobe(nprobe);
+				LatencyStats latencies = new LatencyStats();
+				double recall = 0;
+				for (int q = 0; q < numQueries; q++) {
+					long queryStart = System.nanoTime();
+					ScoreDoc[] approximate = index.search(queryVectors[q], k);
+					latencies.record(System.nanoTime() - queryStart);
+					Set<Integer> found = new HashSet<Integer>();
+					for (ScoreDoc hit : approximate) {
+						found.add(hit.doc);
+					}
+					int relevant = 0;
+					for (ScoreDoc hit : exact[q]) {
+						relevant += found.contains(hit.doc) ? 1 : 0;
+					}
+					recall += exact[q].length == 0 ? 1 : relevant / (double) exact[q].length;
+				}
+				System.out.println(String.format("nprobe = %d : recall@%d = %.3f, ", nprobe, k, recall / numQueries)
+						+ latencies);
+			}
+			engine.close();
+		} else
+			System.out.println("ERROR: File path not found.");
+	}
+
+	private static String[] analyze(Analyzer analyzer, String text) throws IOException {
+		List<String> terms = new ArrayList<String>();
+		try (TokenStream stream = analyzer.tokenStream(Constants.ABSTRACT_TEXT, text)) {
+			CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+			stream.reset();
+			while (stream.incrementToken()) {
+				terms.add(term.toString());
+			}
+			stream.end();
+		}
+		return terms.toArray(new String[terms.size()]);
+	}
+}